@@ -0,0 +1,53 @@
+package com.example.expense.benchmark;
+
+import com.example.expense.dto.CategoryTotal;
+import com.example.expense.dto.DateRange;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.model.Expense;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// запросы ExpenseRepository напрямую, без логики сервиса
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ExpenseRepositoryBenchmark {
+    private static final PageRequest FIRST_PAGE = PageRequest.of(0, 101);
+
+    @Benchmark
+    public List<Expense> findByUserIdAndCategoryAndDateBetween(SeededApplication app) {
+        return app.repository.findByUserIdAndCategoryAndDateBetween(SeededApplication.USER_ID, "Еда",
+                app.today.minusDays(30), app.today);
+    }
+
+    @Benchmark
+    public List<ExpenseView> findPage(SeededApplication app) {
+        return app.repository.findPage(SeededApplication.USER_ID, app.today.plusDays(1), Long.MAX_VALUE, FIRST_PAGE);
+    }
+
+    @Benchmark
+    public List<ExpenseView> findPageByCategoryAndPeriod(SeededApplication app) {
+        return app.repository.findPageByCategoryAndPeriod(SeededApplication.USER_ID, "Еда",
+                app.today.minusDays(365), app.today, app.today.plusDays(1), Long.MAX_VALUE, FIRST_PAGE);
+    }
+
+    @Benchmark
+    public List<ExpenseView> findRecentViews(SeededApplication app) {
+        return app.repository.findRecentViews(SeededApplication.USER_ID, app.today.minusDays(30));
+    }
+
+    @Benchmark
+    public List<CategoryTotal> sumByCategory(SeededApplication app) {
+        return app.repository.sumByCategory(SeededApplication.USER_ID);
+    }
+
+    @Benchmark
+    public DateRange findDateRange(SeededApplication app) {
+        return app.repository.findDateRange(SeededApplication.USER_ID);
+    }
+}
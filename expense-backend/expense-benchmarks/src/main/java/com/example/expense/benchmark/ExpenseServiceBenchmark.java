@@ -0,0 +1,107 @@
+package com.example.expense.benchmark;
+
+import com.example.expense.dto.AmountDistribution;
+import com.example.expense.dto.Dashboard;
+import com.example.expense.dto.ExpensePage;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.model.Expense;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// горячие пути ExpenseService: чтение списков, все ветки filterExpenses, аналитика и запись
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ExpenseServiceBenchmark {
+
+    @Benchmark
+    public List<Expense> getAll(SeededApplication app) {
+        return app.service.getAll(SeededApplication.USER_ID);
+    }
+
+    @Benchmark
+    public List<Expense> filterByCategoryAndPeriod(SeededApplication app) {
+        return app.service.filterExpenses(SeededApplication.USER_ID, "Еда", app.today.minusDays(30),
+                app.today);
+    }
+
+    @Benchmark
+    public List<Expense> filterByCategory(SeededApplication app) {
+        return app.service.filterExpenses(SeededApplication.USER_ID, "Еда", null, null);
+    }
+
+    @Benchmark
+    public List<Expense> filterByPeriod(SeededApplication app) {
+        return app.service.filterExpenses(SeededApplication.USER_ID, null, app.today.minusDays(30), app.today);
+    }
+
+    @Benchmark
+    public List<Expense> filterWithoutParams(SeededApplication app) {
+        return app.service.filterExpenses(SeededApplication.USER_ID, null, null, null);
+    }
+
+    // "комментарий" есть у каждой десятой строки: индекс + чтение одной страницы из базы
+    @Benchmark
+    public ExpensePage searchWord(SeededApplication app) {
+        return app.service.search(SeededApplication.USER_ID, "комментарий", null, null, null, null, 100);
+    }
+
+    @Benchmark
+    public ExpensePage searchPrefixWithFilters(SeededApplication app) {
+        return app.service.search(SeededApplication.USER_ID, "расх комм", "Еда", app.today.minusDays(30), app.today,
+                null, 100);
+    }
+
+    // 20 крупнейших: без периода - индекс по сумме и LIMIT в базе, с периодом - поток строк через кучу
+    @Benchmark
+    public List<ExpenseView> topByCategory(SeededApplication app) {
+        return app.service.getTop(SeededApplication.USER_ID, "Еда", null, null, 20);
+    }
+
+    @Benchmark
+    public List<ExpenseView> topByPeriod(SeededApplication app) {
+        return app.service.getTop(SeededApplication.USER_ID, null, app.today.minusDays(30), app.today, 20);
+    }
+
+    @Benchmark
+    public Map<String, Double> getAnalyticsByCategory(SeededApplication app) {
+        return app.service.getAnalyticsByCategory(SeededApplication.USER_ID);
+    }
+
+    @Benchmark
+    public Double getTotalAmount(SeededApplication app) {
+        return app.service.getTotalAmount(SeededApplication.USER_ID);
+    }
+
+    @Benchmark
+    public Double getAveragePerDay(SeededApplication app) {
+        return app.service.getAveragePerDay(SeededApplication.USER_ID);
+    }
+
+    @Benchmark
+    public List<ExpenseView> getRecentExpenses(SeededApplication app) {
+        return app.service.getRecentExpenses(SeededApplication.USER_ID);
+    }
+
+    // то, что раньше было пятью запросами страницы: аналитика, категории, расходы за 30 дней
+    @Benchmark
+    public Dashboard getDashboard(SeededApplication app) {
+        return app.dashboard.getDashboard(SeededApplication.USER_ID);
+    }
+
+    // медиана/p90/p99 и число названий по категориям: сложение месячных скетчей, таблица не читается
+    @Benchmark
+    public Map<String, AmountDistribution> getDistribution(SeededApplication app) {
+        return app.sketches.getByCategory(SeededApplication.USER_ID, null, null);
+    }
+
+    @Benchmark
+    public Expense save(SeededApplication app) {
+        return app.service.save(SeededApplication.USER_ID, new Expense("Кофе", 200.0, app.today, "Еда", null));
+    }
+}
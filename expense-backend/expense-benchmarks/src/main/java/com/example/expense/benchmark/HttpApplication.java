@@ -0,0 +1,75 @@
+package com.example.expense.benchmark;
+
+import com.example.expense.ExpenseApplication;
+import com.example.expense.model.User;
+import com.example.expense.service.ExpenseService;
+import com.example.expense.service.SessionStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.LocalDate;
+
+// приложение с Tomcat на случайном порту: обработка запросов на платформенных или виртуальных потоках
+@State(Scope.Benchmark)
+public class HttpApplication {
+
+    @Param({"100000"})
+    public int rows;
+
+    // platform - пул Tomcat (200 потоков), virtual - поток на запрос (нужна Java 21+)
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    public ConfigurableApplicationContext context;
+    public HttpClient client;
+    public URI baseUri;
+    public LocalDate today;
+    // Bearer-токен пользователя, которому принадлежат все строки
+    public String token;
+
+    @Setup(Level.Trial)
+    public void start() {
+        boolean virtual = "virtual".equals(threads);
+        // на Java 17 Spring Boot молча игнорирует spring.threads.virtual.enabled
+        if (virtual && Runtime.version().feature() < 21) {
+            throw new IllegalStateException("threads=virtual требует Java 21+ (сборка с -P java21)");
+        }
+
+        context = new SpringApplicationBuilder(ExpenseApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .properties(
+                        "server.port=0",
+                        "management.server.port=-1",
+                        "spring.datasource.url=jdbc:h2:mem:bench-http-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.open-in-view=false",
+                        "logging.level.root=WARN",
+                        // одинаковый пул соединений в обоих режимах, как в профиле virtual
+                        "spring.datasource.hikari.maximum-pool-size=50",
+                        "spring.threads.virtual.enabled=" + virtual)
+                .run();
+        today = LocalDate.now();
+        SeededApplication.seed(context.getBean(JdbcTemplate.class), rows, 1, today);
+        context.getBean(ExpenseService.class).rebuild();
+        User user = new User();
+        user.setId(SeededApplication.USER_ID);
+        user.setUsername("bench");
+        token = context.getBean(SessionStore.class).create(user);
+
+        baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+}
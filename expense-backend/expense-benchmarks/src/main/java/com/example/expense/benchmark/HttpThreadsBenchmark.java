@@ -0,0 +1,45 @@
+package com.example.expense.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// 1024 одновременных клиента против платформенных и виртуальных потоков Tomcat.
+// SampleTime дает p99, Throughput - запросы в секунду по всем клиентам.
+// -Djdk.tracePinnedThreads печатает стек, если виртуальный поток закрепился (pinning) на мониторе
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(1024)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-Djdk.tracePinnedThreads=short"})
+public class HttpThreadsBenchmark {
+
+    @Benchmark
+    public int firstPage(HttpApplication app) throws IOException, InterruptedException {
+        return get(app, "/expenses?limit=100");
+    }
+
+    @Benchmark
+    public int filterByCategoryAndPeriod(HttpApplication app) throws IOException, InterruptedException {
+        return get(app, "/expenses/filter?category=" + URLEncoder.encode("Еда", StandardCharsets.UTF_8)
+                + "&startDate=" + app.today.minusDays(30) + "&endDate=" + app.today);
+    }
+
+    private static int get(HttpApplication app, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(app.baseUri.resolve(path))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + app.token)
+                .GET().build();
+        HttpResponse<byte[]> response = app.client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " для " + path);
+        }
+        return response.body().length;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.expense.benchmark;
+
+import com.example.expense.dto.ExpenseColumns;
+import com.example.expense.dto.ExpenseView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// размер и стоимость сериализации ответа со 100k расходов в разных форматах,
+// без HTTP: тот же Jackson, что у конвертеров Spring MVC.
+// Размеры (как есть и после gzip) печатаются в лог при подготовке
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ResponseFormatBenchmark {
+    private static final String[] CATEGORIES = {"Еда", "Транспорт", "Развлечения", "Жилье", "Здоровье"};
+
+    @Param({"100000"})
+    public int rows;
+
+    // json - массив объектов (как сейчас), columnar - application/vnd.expense.columnar+json
+    @Param({"json", "columnar", "cbor", "smile"})
+    public String format;
+
+    private ObjectMapper mapper;
+    private Object body;
+    // переиспользуемый буфер: меряем сериализацию, а не рост массива
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 << 20);
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        List<ExpenseView> views = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            views.add(new ExpenseView((long) i + 1, "Расход " + i, Math.round(random.nextDouble() * 500_000) / 100.0,
+                    today.minusDays(random.nextInt(3650)), CATEGORIES[random.nextInt(CATEGORIES.length)],
+                    i % 10 == 0 ? "комментарий " + i : null));
+        }
+        Jackson2ObjectMapperBuilder builder = switch (format) {
+            case "json", "columnar" -> Jackson2ObjectMapperBuilder.json();
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile();
+            default -> throw new IllegalArgumentException("неизвестный формат: " + format);
+        };
+        // как в Spring Boot: даты строками ISO
+        mapper = builder.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        body = "columnar".equals(format) ? ExpenseColumns.of(views) : views;
+
+        int raw = serialize();
+        int gzip = serializeGzip();
+        System.out.printf("%nformat=%s rows=%d bytes=%d gzip=%d%n", format, rows, raw, gzip);
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        buffer.reset();
+        mapper.writeValue(buffer, body);
+        return buffer.size();
+    }
+
+    // сериализация + gzip, как при server.compression.enabled
+    @Benchmark
+    public int serializeGzip() throws IOException {
+        buffer.reset();
+        try (OutputStream gzip = new GZIPOutputStream(buffer, 8192)) {
+            mapper.writeValue(gzip, body);
+        }
+        return buffer.size();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.expense.benchmark;
+
+import com.example.expense.ExpenseApplication;
+import com.example.expense.repository.ExpenseRepository;
+import com.example.expense.service.ExpenseDashboardService;
+import com.example.expense.service.ExpenseSketches;
+import com.example.expense.service.ExpenseService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// поднимает приложение без веба на отдельной in-memory базе H2 и заполняет ее rows строками
+@State(Scope.Benchmark)
+public class SeededApplication {
+    static final String[] CATEGORIES = {"Еда", "Транспорт", "Покупки", "Развлечения", "Здоровье", "Образование", "Дом"};
+    private static final int SEED_BATCH = 10_000;
+    // данные равномерно за последние три года
+    private static final int DAYS = 3 * 365;
+    // пользователь, от имени которого идут замеры
+    static final long USER_ID = 1L;
+
+    // 10M строк не по умолчанию: rebuild, getAll и фильтр без параметров поднимают в память все сущности
+    // и не помещаются в куче форка (4 ГБ)
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    // строки делятся между пользователями поровну: при users > 1 замеры идут по rows / users строкам одного
+    @Param({"1"})
+    public int users;
+
+    // источник аналитики ExpenseService: memory, database, columnar
+    @Param({"memory"})
+    public String analyticsSource;
+
+    public ConfigurableApplicationContext context;
+    public ExpenseService service;
+    public ExpenseDashboardService dashboard;
+    public ExpenseSketches sketches;
+    public ExpenseRepository repository;
+    public LocalDate today;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(ExpenseApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bench-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.open-in-view=false",
+                        "logging.level.root=WARN",
+                        "expense.analytics.source=" + analyticsSource)
+                .run();
+        service = context.getBean(ExpenseService.class);
+        dashboard = context.getBean(ExpenseDashboardService.class);
+        sketches = context.getBean(ExpenseSketches.class);
+        repository = context.getBean(ExpenseRepository.class);
+        today = LocalDate.now();
+
+        seed(context.getBean(JdbcTemplate.class), rows, users, today);
+        // агрегаты, rollup-таблицы и колоночная копия собираются по уже заполненной таблице
+        service.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    // прямые INSERT пачками - через JPA заполнение 10M строк заняло бы больше, чем сами замеры
+    static void seed(JdbcTemplate jdbc, int rows, int users, LocalDate today) {
+        Random random = new Random(42);
+        List<Object[]> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[]{
+                    "Расход " + i,
+                    1 + random.nextInt(10_000) / 10.0,
+                    Date.valueOf(today.minusDays(random.nextInt(DAYS))),
+                    CATEGORIES[random.nextInt(CATEGORIES.length)],
+                    i % 10 == 0 ? "комментарий " + i : null,
+                    USER_ID + i % users});
+            if (batch.size() == SEED_BATCH) {
+                insert(jdbc, batch);
+            }
+        }
+        if (!batch.isEmpty()) {
+            insert(jdbc, batch);
+        }
+    }
+
+    private static void insert(JdbcTemplate jdbc, List<Object[]> batch) {
+        jdbc.batchUpdate("INSERT INTO expense (id, title, amount, date, category, comment, user_id) " +
+                "VALUES (NEXT VALUE FOR expense_seq, ?, ?, ?, ?, ?, ?)", batch);
+        batch.clear();
+    }
+}
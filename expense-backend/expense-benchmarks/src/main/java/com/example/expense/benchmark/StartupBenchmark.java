@@ -0,0 +1,154 @@
+package com.example.expense.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// время от запуска JVM до первого успешного запроса: регистрация и GET /expenses с полученным токеном.
+// baseline - обычный исполняемый jar, fast-startup - AOT-контекст, CDS-архив и spring-профиль fast-startup.
+// Оба варианта из одной сборки: mvn -P fast-startup -pl expense-benchmarks -am install -DskipTests
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(1);
+    private static final String CREDENTIALS = "{\"username\":\"bench\",\"password\":\"bench\"}";
+
+    @Param({"baseline", "fast-startup"})
+    public String startup;
+
+    // target модуля expense; exec:exec запускает бенчмарки из каталога expense-benchmarks
+    @Param({"../expense/target"})
+    public String appDir;
+
+    private final ObjectMapper json = new ObjectMapper();
+    private List<String> command;
+    private Path log;
+    private HttpClient client;
+    private URI baseUri;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        Path dir = Path.of(appDir);
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        command = switch (startup) {
+            case "baseline" -> List.of(java, "-jar", execJar(dir).toString());
+            case "fast-startup" -> List.of(java,
+                    "-XX:SharedArchiveFile=" + required(dir.resolve("fast-startup/application.jsa")),
+                    "-Dspring.aot.enabled=true",
+                    "-Dspring.profiles.active=fast-startup",
+                    "-jar", required(dir.resolve("fast-startup/expense.jar")).toString());
+            default -> throw new IllegalArgumentException("неизвестный вариант запуска: " + startup);
+        };
+        log = Path.of("target", "startup-" + startup + ".log");
+        Files.createDirectories(log.getParent());
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(1))
+                .build();
+    }
+
+    // свободный порт на каждый запуск: предыдущий процесс мог еще не отпустить свой
+    @Setup(Level.Invocation)
+    public void choosePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            baseUri = URI.create("http://localhost:" + socket.getLocalPort());
+        }
+    }
+
+    @Benchmark
+    public int firstRequest() throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>(command);
+        args.add("--server.port=" + baseUri.getPort());
+        // Actuator на своем порту (8081) мешал бы параллельно запущенному приложению
+        args.add("--management.server.port=-1");
+        process = new ProcessBuilder(args)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+
+        String token = register();
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/expenses"))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .GET().build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " для /expenses, см. " + log);
+        }
+        return response.body().length;
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    // пока порт закрыт - повторяем; первый ответ сервиса должен быть успешным
+    private String register() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/api/auth/register"))
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofString(CREDENTIALS))
+                .build();
+        long deadline = System.nanoTime() + START_TIMEOUT.toNanos();
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("приложение завершилось с кодом " + process.exitValue() + ", см. " + log);
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("приложение не ответило за " + START_TIMEOUT + ", см. " + log);
+            }
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                JsonNode body = json.readTree(response.body());
+                if (response.statusCode() != 200 || !body.hasNonNull("token")) {
+                    throw new IllegalStateException("регистрация: HTTP " + response.statusCode() + " " + response.body());
+                }
+                return body.get("token").asText();
+            } catch (ConnectException e) {
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private static Path execJar(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith("-exec.jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("нет исполняемого jar в " + dir
+                            + " - сначала mvn -P fast-startup -pl expense-benchmarks -am install"));
+        }
+    }
+
+    private static Path required(Path file) {
+        if (!Files.exists(file)) {
+            throw new IllegalStateException("нет " + file
+                    + " - сначала mvn -P fast-startup -pl expense-benchmarks -am install");
+        }
+        return file;
+    }
+}
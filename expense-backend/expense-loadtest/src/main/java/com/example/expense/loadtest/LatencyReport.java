@@ -0,0 +1,107 @@
+package com.example.expense.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// задержки успешных запросов (HdrHistogram, 3 значащие цифры) и число ошибок по операциям и в целом.
+// Ошибка - ответ не 2xx, таймаут, обрыв соединения или запрос сверх max-in-flight
+final class LatencyReport {
+
+    // больше минуты запрос не живет: request-timeout меньше
+    private static final long HIGHEST_TRACKABLE = TimeUnit.MINUTES.toNanos(1);
+    private static final double NANOS_PER_MS = 1e6;
+
+    record Stats(Histogram latencies, LongAdder errors) {
+        Stats() {
+            this(new ConcurrentHistogram(HIGHEST_TRACKABLE, 3), new LongAdder());
+        }
+
+        long count() {
+            return latencies.getTotalCount() + errors.sum();
+        }
+
+        double errorRate() {
+            long count = count();
+            return count == 0 ? 0 : (double) errors.sum() / count;
+        }
+    }
+
+    private final Map<Operation, Stats> byOperation = new EnumMap<>(Operation.class);
+    private final Stats total = new Stats();
+    private final Duration measured;
+
+    LatencyReport(Collection<Operation> operations, Duration measured) {
+        operations.forEach(operation -> byOperation.put(operation, new Stats()));
+        this.measured = measured;
+    }
+
+    void recordSuccess(Operation operation, long latencyNanos) {
+        long value = Math.min(latencyNanos, HIGHEST_TRACKABLE);
+        byOperation.get(operation).latencies().recordValue(value);
+        total.latencies().recordValue(value);
+    }
+
+    void recordError(Operation operation) {
+        byOperation.get(operation).errors().increment();
+        total.errors().increment();
+    }
+
+    void print(PrintStream out) {
+        out.printf(Locale.ROOT, "%-10s %9s %8s %9s %9s %9s %9s %9s %9s%n",
+                "операция", "запросов", "ошибок", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        byOperation.forEach((operation, stats) -> print(out, operation.key(), stats));
+        print(out, "всего", total);
+    }
+
+    private void print(PrintStream out, String name, Stats stats) {
+        Histogram latencies = stats.latencies();
+        out.printf(Locale.ROOT, "%-10s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, stats.count(), stats.errors().sum(), throughput(stats),
+                latencies.getValueAtPercentile(50) / NANOS_PER_MS,
+                latencies.getValueAtPercentile(90) / NANOS_PER_MS,
+                latencies.getValueAtPercentile(99) / NANOS_PER_MS,
+                latencies.getValueAtPercentile(99.9) / NANOS_PER_MS,
+                latencies.getMaxValue() / NANOS_PER_MS);
+    }
+
+    // успешных ответов в секунду за время замера
+    private double throughput(Stats stats) {
+        return stats.latencies().getTotalCount() * 1000.0 / Math.max(1, measured.toMillis());
+    }
+
+    // полные распределения в миллисекундах: <dir>/<операция>.hgrm и total.hgrm
+    void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (Map.Entry<Operation, Stats> entry : byOperation.entrySet()) {
+            write(dir.resolve(entry.getKey().key() + ".hgrm"), entry.getValue());
+        }
+        write(dir.resolve("total.hgrm"), total);
+    }
+
+    private static void write(Path file, Stats stats) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+            stats.latencies().outputPercentileDistribution(out, NANOS_PER_MS);
+        }
+    }
+
+    List<String> check(List<Slo> slos) {
+        List<String> violations = new ArrayList<>();
+        for (Slo slo : slos) {
+            Stats stats = slo.operation() == null ? total : byOperation.get(slo.operation());
+            // операции нет в смеси - проверять нечего
+            if (stats != null) {
+                slo.check(stats).ifPresent(violations::add);
+            }
+        }
+        return violations;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.expense.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// открытая модель нагрузки: i-й запрос запланирован на start + i / rate и уходит в этот момент,
+// сколько бы запросов ни ждало ответа. Задержка считается от запланированного момента:
+// если генератор или сервис отстали, ожидание попадает в перцентили (без coordinated omission)
+final class LoadGenerator {
+
+    private final HttpClient client;
+    private final URI base;
+    private final List<VirtualUser> users;
+    private final LoadTestConfig config;
+    private final Operation[] operations;
+    // накопленные доли: операция i выбирается, если случайное число < cumulative[i]
+    private final int[] cumulative;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    LoadGenerator(HttpClient client, URI base, List<VirtualUser> users, LoadTestConfig config) {
+        this.client = client;
+        this.base = base;
+        this.users = users;
+        this.config = config;
+        this.operations = config.mix().keySet().toArray(new Operation[0]);
+        this.cumulative = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += config.mix().get(operations[i]);
+            cumulative[i] = sum;
+        }
+    }
+
+    LatencyReport run() throws InterruptedException {
+        LatencyReport report = new LatencyReport(config.mix().keySet(), config.duration());
+        // один генератор на поток расписания: последовательность запросов зависит только от зерна
+        Random random = new Random(config.seed());
+        LocalDate today = LocalDate.now();
+        double intervalNanos = (double) TimeUnit.SECONDS.toNanos(1) / config.rate();
+
+        long start = System.nanoTime();
+        long measureFrom = start + config.warmup().toNanos();
+        long end = measureFrom + config.duration().toNanos();
+        for (long i = 0; ; i++) {
+            long scheduled = start + (long) (i * intervalNanos);
+            if (scheduled >= end) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = next(random);
+            VirtualUser user = users.get(random.nextInt(users.size()));
+            HttpRequest request = operation.request(base, user, random, today)
+                    .timeout(config.requestTimeout())
+                    .build();
+            send(operation, request, scheduled, scheduled >= measureFrom ? report : null);
+        }
+
+        // ответы на уже отправленные запросы; дольше request-timeout они не идут
+        long drainUntil = System.nanoTime() + config.requestTimeout().plusSeconds(1).toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        return report;
+    }
+
+    private Operation next(Random random) {
+        int value = random.nextInt(cumulative[cumulative.length - 1]);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (value < cumulative[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalStateException("смесь операций пуста");
+    }
+
+    // report == null - прогрев, результат не учитывается
+    private void send(Operation operation, HttpRequest request, long scheduled, LatencyReport report) {
+        if (inFlight.incrementAndGet() > config.maxInFlight()) {
+            inFlight.decrementAndGet();
+            if (report != null) {
+                report.recordError(operation);
+            }
+            return;
+        }
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            long latency = System.nanoTime() - scheduled;
+            inFlight.decrementAndGet();
+            if (report == null) {
+                return;
+            }
+            if (error == null && response.statusCode() / 100 == 2) {
+                report.recordSuccess(operation, latency);
+            } else {
+                report.recordError(operation);
+            }
+        });
+    }
+}
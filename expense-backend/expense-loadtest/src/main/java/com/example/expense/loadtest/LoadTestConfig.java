@@ -0,0 +1,117 @@
+package com.example.expense.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+
+// настройки прогона: loadtest.properties, поверх - системные свойства и аргументы key=value.
+// Ключи без префикса loadtest. передаются встроенному приложению как свойства Spring
+record LoadTestConfig(URI target, int rate, Duration warmup, Duration duration, int maxInFlight,
+                      Duration requestTimeout, int users, int seedRows, long seed,
+                      Map<Operation, Integer> mix, List<Slo> slos, Path reportDir,
+                      Map<String, Object> appProperties) {
+
+    private static final String PREFIX = "loadtest.";
+    private static final String SLO_PREFIX = PREFIX + "slo.";
+
+    static LoadTestConfig load(String[] args) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = LoadTestConfig.class.getResourceAsStream("/loadtest.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        }
+        Map<String, Object> appProperties = new LinkedHashMap<>();
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith(PREFIX))
+                .forEach(name -> properties.setProperty(name, System.getProperty(name)));
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("ожидался аргумент key=value: " + arg);
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            if (key.startsWith(PREFIX)) {
+                properties.setProperty(key, value);
+            } else {
+                appProperties.put(key, value);
+            }
+        }
+
+        String target = properties.getProperty(PREFIX + "target", "").trim();
+        return new LoadTestConfig(
+                target.isEmpty() ? null : URI.create(target),
+                positive(properties, "rate"),
+                duration(properties, "warmup"),
+                duration(properties, "duration"),
+                positive(properties, "max-in-flight"),
+                duration(properties, "request-timeout"),
+                positive(properties, "users"),
+                Integer.parseInt(required(properties, "seed-rows")),
+                Long.parseLong(required(properties, "seed")),
+                mix(required(properties, "mix")),
+                slos(properties),
+                Path.of(required(properties, "report-dir")),
+                appProperties);
+    }
+
+    // "create:20,list:30": доли, сумма не обязана быть 100
+    static Map<Operation, Integer> mix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("некорректная смесь операций: " + value);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("доля операции не может быть отрицательной: " + part);
+            }
+            mix.put(Operation.fromKey(pair[0].trim()), weight);
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("в смеси нет ни одной операции");
+        }
+        return mix;
+    }
+
+    static List<Slo> slos(Properties properties) {
+        List<Slo> slos = new ArrayList<>();
+        for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+            if (!name.startsWith(SLO_PREFIX)) {
+                continue;
+            }
+            String rest = name.substring(SLO_PREFIX.length());
+            int dot = rest.lastIndexOf('.');
+            Operation operation = dot < 0 ? null : Operation.fromKey(rest.substring(0, dot));
+            slos.add(Slo.parse(operation, rest.substring(dot + 1), properties.getProperty(name).trim()));
+        }
+        return slos;
+    }
+
+    private static String required(Properties properties, String name) {
+        String value = properties.getProperty(PREFIX + name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("не задан " + PREFIX + name);
+        }
+        return value.trim();
+    }
+
+    private static int positive(Properties properties, String name) {
+        int value = Integer.parseInt(required(properties, name));
+        if (value <= 0) {
+            throw new IllegalArgumentException(PREFIX + name + " должен быть больше нуля");
+        }
+        return value;
+    }
+
+    private static Duration duration(Properties properties, String name) {
+        return DurationStyle.detectAndParse(required(properties, name));
+    }
+}
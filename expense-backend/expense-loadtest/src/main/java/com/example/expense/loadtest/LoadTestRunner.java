@@ -0,0 +1,108 @@
+package com.example.expense.loadtest;
+
+import com.example.expense.ExpenseApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+
+// точка входа: поднимает встроенный экземпляр (если loadtest.target пуст), заводит пользователей,
+// заполняет их расходы через POST /expenses/batch, подает нагрузку и печатает отчет.
+// Код выхода 1 - нарушен хотя бы один SLO
+public class LoadTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.load(args);
+        ConfigurableApplicationContext context = null;
+        URI base = config.target();
+        List<String> violations;
+        try {
+            if (base == null) {
+                context = startEmbedded(config.appProperties());
+                base = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            }
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            List<VirtualUser> users = prepareUsers(client, base, config);
+
+            System.out.printf(Locale.ROOT, "%s: %d req/s, прогрев %s, замер %s, смесь %s%n",
+                    base, config.rate(), config.warmup(), config.duration(), config.mix());
+            LatencyReport report = new LoadGenerator(client, base, users, config).run();
+            report.print(System.out);
+            report.write(config.reportDir());
+            violations = report.check(config.slos());
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+
+        violations.forEach(violation -> System.out.println("SLO нарушен - " + violation));
+        System.exit(violations.isEmpty() ? 0 : 1);
+    }
+
+    // как HttpApplication в бенчмарках: случайный порт, своя база H2, без отдельного порта actuator
+    private static ConfigurableApplicationContext startEmbedded(Map<String, Object> appProperties) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("management.server.port", "-1");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        properties.put("spring.jpa.open-in-view", "false");
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(appProperties);
+        return new SpringApplicationBuilder(ExpenseApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .properties(properties)
+                .run();
+    }
+
+    private static List<VirtualUser> prepareUsers(HttpClient client, URI base, LoadTestConfig config)
+            throws IOException, InterruptedException {
+        Random random = new Random(config.seed());
+        LocalDate today = LocalDate.now();
+        int rowsPerUser = config.seedRows() / config.users();
+        List<VirtualUser> users = new ArrayList<>(config.users());
+        for (int i = 0; i < config.users(); i++) {
+            VirtualUser user = VirtualUser.signUp(client, base, "load-" + i, "load-" + i);
+            if (rowsPerUser > 0) {
+                seed(client, base, user, rowsPerUser, random, today);
+            }
+            users.add(user);
+        }
+        return users;
+    }
+
+    // одна пачка NDJSON на пользователя
+    private static void seed(HttpClient client, URI base, VirtualUser user, int rows, Random random, LocalDate today)
+            throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            body.append(String.format(Locale.ROOT,
+                    "{\"title\":\"Расход %d\",\"amount\":%.1f,\"date\":\"%s\",\"category\":\"%s\"}\n",
+                    i, 1 + random.nextInt(10_000) / 10.0, today.minusDays(random.nextInt(Operation.DAYS)),
+                    Operation.category(random)));
+        }
+        HttpRequest request = HttpRequest.newBuilder(base.resolve("/expenses/batch"))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + user.token())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("не удалось заполнить расходы " + user.username() + ": HTTP "
+                    + response.statusCode() + " " + response.body());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.expense.loadtest;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Random;
+
+// операции смеси нагрузки; запрос строится из генератора случайных чисел прогона,
+// поэтому при одном зерне последовательность запросов повторяется
+enum Operation {
+    CREATE("create") {
+        @Override
+        HttpRequest.Builder request(URI base, VirtualUser user, Random random, LocalDate today) {
+            String body = String.format(Locale.ROOT,
+                    "{\"title\":\"Нагрузка %d\",\"amount\":%.1f,\"date\":\"%s\",\"category\":\"%s\"}",
+                    random.nextInt(1000), 1 + random.nextInt(10_000) / 10.0,
+                    today.minusDays(random.nextInt(DAYS)), category(random));
+            return authorized(base, "/expenses", user)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+        }
+    },
+    LIST("list") {
+        @Override
+        HttpRequest.Builder request(URI base, VirtualUser user, Random random, LocalDate today) {
+            return authorized(base, "/expenses?limit=100", user).GET();
+        }
+    },
+    FILTER("filter") {
+        @Override
+        HttpRequest.Builder request(URI base, VirtualUser user, Random random, LocalDate today) {
+            LocalDate end = today.minusDays(random.nextInt(DAYS));
+            return authorized(base, "/expenses/filter?category=" + encode(category(random))
+                    + "&startDate=" + end.minusDays(30) + "&endDate=" + end, user).GET();
+        }
+    },
+    ANALYTICS("analytics") {
+        @Override
+        HttpRequest.Builder request(URI base, VirtualUser user, Random random, LocalDate today) {
+            String path = switch (random.nextInt(5)) {
+                case 0 -> "/expenses/analytics/category";
+                case 1 -> "/expenses/analytics/total";
+                case 2 -> "/expenses/analytics/recent";
+                case 3 -> "/expenses/analytics/period?startDate=" + today.minusYears(1) + "&endDate=" + today;
+                default -> "/expenses/dashboard";
+            };
+            return authorized(base, path, user).GET();
+        }
+    },
+    AUTH("auth") {
+        @Override
+        HttpRequest.Builder request(URI base, VirtualUser user, Random random, LocalDate today) {
+            return HttpRequest.newBuilder(base.resolve("/api/auth/login"))
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofString(user.credentials()));
+        }
+    };
+
+    static final String[] CATEGORIES = {"Еда", "Транспорт", "Покупки", "Развлечения", "Здоровье", "Образование", "Дом"};
+    // даты расходов - за последний год
+    static final int DAYS = 365;
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    String key() {
+        return key;
+    }
+
+    abstract HttpRequest.Builder request(URI base, VirtualUser user, Random random, LocalDate today);
+
+    static Operation fromKey(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("неизвестная операция: " + key);
+    }
+
+    static String category(Random random) {
+        return CATEGORIES[random.nextInt(CATEGORIES.length)];
+    }
+
+    private static HttpRequest.Builder authorized(URI base, String path, VirtualUser user) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + user.token());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
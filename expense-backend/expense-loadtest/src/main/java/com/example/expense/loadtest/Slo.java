@@ -0,0 +1,46 @@
+package com.example.expense.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.util.Locale;
+import java.util.Optional;
+
+// порог SLO: перцентиль задержки (limit в наносекундах) или доля ошибок.
+// operation == null - по всем запросам
+record Slo(Operation operation, String metric, double percentile, double limit) {
+
+    private static final String MAX_ERROR_RATE = "max-error-rate";
+
+    static Slo parse(Operation operation, String metric, String value) {
+        if (MAX_ERROR_RATE.equals(metric)) {
+            return new Slo(operation, metric, 0, Double.parseDouble(value));
+        }
+        double percentile = switch (metric) {
+            case "p50" -> 50.0;
+            case "p90" -> 90.0;
+            case "p99" -> 99.0;
+            case "p999" -> 99.9;
+            default -> throw new IllegalArgumentException("неизвестная метрика SLO: " + metric);
+        };
+        return new Slo(operation, metric, percentile, DurationStyle.detectAndParse(value).toNanos());
+    }
+
+    // описание нарушения или пусто; без успешных запросов перцентиль не проверяется - это ловит max-error-rate
+    Optional<String> check(LatencyReport.Stats stats) {
+        String scope = operation == null ? "все запросы" : operation.key();
+        if (MAX_ERROR_RATE.equals(metric)) {
+            double errorRate = stats.errorRate();
+            return errorRate > limit
+                    ? Optional.of(String.format(Locale.ROOT, "%s: доля ошибок %.4f > %.4f", scope, errorRate, limit))
+                    : Optional.empty();
+        }
+        if (stats.latencies().getTotalCount() == 0) {
+            return Optional.empty();
+        }
+        long value = stats.latencies().getValueAtPercentile(percentile);
+        return value > limit
+                ? Optional.of(String.format(Locale.ROOT, "%s: %s %.1f ms > %.1f ms", scope, metric,
+                value / 1e6, limit / 1e6))
+                : Optional.empty();
+    }
+}
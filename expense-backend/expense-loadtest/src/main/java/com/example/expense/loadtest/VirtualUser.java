@@ -0,0 +1,47 @@
+package com.example.expense.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+// пользователь нагрузки: у каждого свои расходы, запросы идут с его токеном
+record VirtualUser(String username, String password, String token) {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    String credentials() {
+        return JSON.createObjectNode().put("username", username).put("password", password).toString();
+    }
+
+    // регистрация; на уже заполненном внешнем сервисе пользователь есть с прошлого прогона - тогда вход
+    static VirtualUser signUp(HttpClient client, URI base, String username, String password)
+            throws IOException, InterruptedException {
+        VirtualUser user = new VirtualUser(username, password, null);
+        HttpResponse<String> response = post(client, base.resolve("/api/auth/register"), user.credentials());
+        if (response.statusCode() != 200) {
+            response = post(client, base.resolve("/api/auth/login"), user.credentials());
+        }
+        JsonNode body = JSON.readTree(response.body());
+        if (response.statusCode() != 200 || !body.hasNonNull("token")) {
+            throw new IllegalStateException("не удалось войти как " + username + ": HTTP " + response.statusCode()
+                    + " " + response.body());
+        }
+        return new VirtualUser(username, password, body.get("token").asText());
+    }
+
+    private static HttpResponse<String> post(HttpClient client, URI uri, String json)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
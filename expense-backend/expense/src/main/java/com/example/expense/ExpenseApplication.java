@@ -2,8 +2,10 @@ package com.example.expense;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class ExpenseApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(ExpenseApplication.class, args);
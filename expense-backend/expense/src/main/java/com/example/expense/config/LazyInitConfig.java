@@ -0,0 +1,20 @@
+package com.example.expense.config;
+
+import com.example.expense.service.ExpenseChangeListener;
+import com.example.expense.service.ExpenseService;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// при spring.main.lazy-initialization=true (spring-профиль fast-startup) бины создаются при первом обращении.
+// Восстановление из журнала и пересчет агрегатов остаются на старте: иначе их платит первый запрос,
+// а снимки журнала по расписанию (@Scheduled) не запускаются, пока бин не создан
+@Configuration
+public class LazyInitConfig {
+
+    // static: фильтры читаются постпроцессором фабрики бинов до создания обычных бинов
+    @Bean
+    static LazyInitializationExcludeFilter eagerExpenseState() {
+        return LazyInitializationExcludeFilter.forBeanTypes(ExpenseService.class, ExpenseChangeListener.class);
+    }
+}
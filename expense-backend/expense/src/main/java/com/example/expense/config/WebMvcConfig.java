@@ -0,0 +1,25 @@
+package com.example.expense.config;
+
+import com.example.expense.controller.ExpenseETagInterceptor;
+import com.example.expense.controller.SessionAuthInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+    private final SessionAuthInterceptor authInterceptor;
+    private final ExpenseETagInterceptor etagInterceptor;
+
+    public WebMvcConfig(SessionAuthInterceptor authInterceptor, ExpenseETagInterceptor etagInterceptor) {
+        this.authInterceptor = authInterceptor;
+        this.etagInterceptor = etagInterceptor;
+    }
+
+    // сначала пользователь, потом ETag: версия данных у каждого своя
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(authInterceptor).addPathPatterns("/expenses", "/expenses/**");
+        registry.addInterceptor(etagInterceptor).addPathPatterns("/expenses", "/expenses/**");
+    }
+}
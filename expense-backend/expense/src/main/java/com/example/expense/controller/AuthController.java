@@ -1,12 +1,16 @@
 package com.example.expense.controller;
 
 import com.example.expense.model.User;
+import com.example.expense.service.SessionStore;
 import com.example.expense.service.UserService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -15,11 +19,12 @@ public class AuthController {
 
     private final UserService userService;
 
-    // простое хранение в памяти
-    private User currentUser = null;
+    // сессии по токену (заголовок Authorization: Bearer <token>)
+    private final SessionStore sessions;
 
-    public AuthController(UserService userService) {
+    public AuthController(UserService userService, SessionStore sessions) {
         this.userService = userService;
+        this.sessions = sessions;
     }
 
     // регистрация
@@ -42,11 +47,12 @@ public class AuthController {
             user.setPassword(password);
 
             User registeredUser = userService.register(user);
-            currentUser = registeredUser;
+            String token = sessions.create(registeredUser);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "регистрация успешна");
+            response.put("token", token);
             response.put("user", Map.of(
                     "id", registeredUser.getId(),
                     "username", registeredUser.getUsername()
@@ -54,6 +60,8 @@ public class AuthController {
 
             return ResponseEntity.ok(response);
 
+        } catch (IllegalStateException e) {
+            return sessionsExhausted(e);
         } catch (RuntimeException e) {
             Map<String, Object> error = new HashMap<>();
             error.put("success", false);
@@ -74,11 +82,12 @@ public class AuthController {
             }
 
             User user = userService.login(username, password);
-            currentUser = user;
+            String token = sessions.create(user);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "вход выполнен успешно");
+            response.put("token", token);
             response.put("user", Map.of(
                     "id", user.getId(),
                     "username", user.getUsername()
@@ -86,6 +95,8 @@ public class AuthController {
 
             return ResponseEntity.ok(response);
 
+        } catch (IllegalStateException e) {
+            return sessionsExhausted(e);
         } catch (RuntimeException e) {
             Map<String, Object> error = new HashMap<>();
             error.put("success", false);
@@ -94,15 +105,24 @@ public class AuthController {
         }
     }
 
+    // нет места для новой сессии (SessionStore.create) - временная ошибка сервиса, а не запроса
+    private static ResponseEntity<?> sessionsExhausted(IllegalStateException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("success", false);
+        error.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "60").body(error);
+    }
+
     // проверка авторизации
     @GetMapping("/check")
-    public ResponseEntity<?> checkAuth() {
-        if (currentUser != null) {
+    public ResponseEntity<?> checkAuth(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        Optional<SessionStore.Session> session = sessions.resolve(SessionStore.bearer(authorization));
+        if (session.isPresent()) {
             Map<String, Object> response = new HashMap<>();
             response.put("authenticated", true);
             response.put("user", Map.of(
-                    "id", currentUser.getId(),
-                    "username", currentUser.getUsername()
+                    "id", session.get().getUserId(),
+                    "username", session.get().getUsername()
             ));
             return ResponseEntity.ok(response);
         } else {
@@ -114,8 +134,8 @@ public class AuthController {
 
     // выход
     @PostMapping("/logout")
-    public ResponseEntity<?> logout() {
-        currentUser = null;
+    public ResponseEntity<?> logout(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        sessions.invalidate(SessionStore.bearer(authorization));
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
         response.put("message", "выход выполнен успешно");
@@ -124,8 +144,10 @@ public class AuthController {
 
     // тестовый эндпоинт
     @GetMapping("/test")
-    public String test() {
+    public String test(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
         return "Auth API работает! Текущий пользователь: " +
-                (currentUser != null ? currentUser.getUsername() : "не авторизован");
+                sessions.resolve(SessionStore.bearer(authorization))
+                        .map(SessionStore.Session::getUsername)
+                        .orElse("не авторизован");
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.example.expense.controller;
+
+import com.example.expense.dto.ExpenseColumns;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.List;
+
+// Accept: application/vnd.expense.columnar+json - списки расходов отдаем по колонкам.
+// Сам тип пишет обычный Jackson-конвертер (он принимает application/*+json),
+// поэтому на */* по-прежнему выбирается application/json
+@RestControllerAdvice(assignableTypes = ExpenseController.class)
+public class ColumnarResponseAdvice implements ResponseBodyAdvice<Object> {
+    private static final MediaType COLUMNAR = MediaType.parseMediaType(ExpenseColumns.MEDIA_TYPE);
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof List<?> rows
+                && COLUMNAR.equalsTypeAndSubtype(selectedContentType)
+                && rows.stream().allMatch(ExpenseColumns::isRow)) {
+            return ExpenseColumns.of(rows);
+        }
+        return body;
+    }
+}
@@ -1,42 +1,106 @@
 package com.example.expense.controller;
 
+import com.example.expense.dto.AmountDistribution;
+import com.example.expense.dto.Dashboard;
+import com.example.expense.dto.ExpensePage;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.dto.PeriodAnalytics;
 import com.example.expense.model.Expense;
+import com.example.expense.service.ExpenseDashboardService;
+import com.example.expense.service.ExpenseGroupCommitWriter;
 import com.example.expense.service.ExpenseService;
+import com.example.expense.service.ExpenseSketches;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
 
 @RestController
 @RequestMapping("/expenses")
-@CrossOrigin(origins = "http://localhost:5173")
+@CrossOrigin(origins = "http://localhost:5173", exposedHeaders = ExpenseController.NEXT_CURSOR_HEADER)
 public class ExpenseController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final ExpenseService service;
+    private final ExpenseDashboardService dashboardService;
+    private final ExpenseSketches sketches;
+    // пусто, если групповая запись выключена (expense.write.group-commit=false)
+    private final Optional<ExpenseGroupCommitWriter> groupCommit;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
-    public ExpenseController(ExpenseService service) {
+    public ExpenseController(ExpenseService service,
+                             ExpenseDashboardService dashboardService,
+                             ExpenseSketches sketches,
+                             Optional<ExpenseGroupCommitWriter> groupCommit,
+                             @Value("${expense.page.default-size:100}") int defaultPageSize,
+                             @Value("${expense.page.max-size:500}") int maxPageSize) {
         this.service = service;
+        this.dashboardService = dashboardService;
+        this.sketches = sketches;
+        this.groupCommit = groupCommit;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
-    // получить все расходы
+    // получить расходы постранично (от новых к старым),
+    // курсор следующей страницы возвращается в заголовке X-Next-Cursor.
+    // Здесь и ниже - только расходы вошедшего пользователя (SessionAuthInterceptor)
     @GetMapping
-    public List<Expense> getAll() {
-        return service.getAll();
+    public ResponseEntity<?> getAll(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return page(userId, null, null, null, cursor, limit);
     }
 
     // создать новый расход - ОСТАВЬТЕ ТОЛЬКО ЭТОТ МЕТОД!
+    // новые расходы идут через групповую запись, изменение существующего (с id) - напрямую
     @PostMapping
-    public Expense create(@RequestBody Expense expense) {
-        return service.save(expense);
+    public ResponseEntity<?> create(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestBody Expense expense) {
+        try {
+            if (groupCommit.isEmpty() || expense.getId() != null) {
+                return ResponseEntity.ok(service.save(userId, expense));
+            }
+            try {
+                return ResponseEntity.ok(groupCommit.get().submit(userId, expense).join());
+            } catch (CompletionException e) {
+                // ошибка записи пачки приходит обернутой, отвечаем так же, как при прямой записи
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        }
     }
 
     // удалить расход
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> delete(@PathVariable Long id) {
-        service.delete(id);
+    public ResponseEntity<Void> delete(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @PathVariable Long id) {
+        service.delete(userId, id);
         return ResponseEntity.ok().build();
     }
 
@@ -44,55 +108,153 @@ public class ExpenseController {
 
     // по категории
     @GetMapping("/category/{category}")
-    public List<Expense> getByCategory(@PathVariable String category) {
-        return service.getByCategory(category);
+    public List<Expense> getByCategory(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @PathVariable String category) {
+        return service.getByCategory(userId, category);
     }
 
     // дата
     @GetMapping("/date/{date}")
     public List<Expense> getByDate(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
             @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
-        return service.getByDate(date);
+        return service.getByDate(userId, date);
     }
 
     // период
     @GetMapping("/period")
     public List<Expense> getByPeriod(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
-        return service.getByPeriod(startDate, endDate);
+        return service.getByPeriod(userId, startDate, endDate);
     }
 
-    // универсальный фильтр
+    // универсальный фильтр (постранично, как и getAll)
     @GetMapping("/filter")
-    public List<Expense> filter(
+    public ResponseEntity<?> filter(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
             @RequestParam(required = false) String category,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
-        return service.filterExpenses(category, startDate, endDate);
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return page(userId, category, startDate, endDate, cursor, limit);
+    }
+
+    // поиск по словам в названии и комментарии: каждое слово запроса - начало слова ("обе ко" найдет "Обед, кофе").
+    // Фильтры и страницы - как у /filter, порядок - от новых расходов к старым
+    @GetMapping("/search")
+    public ResponseEntity<?> search(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestParam String q,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return page(limit, size -> service.search(userId, q, category, startDate, endDate, cursor, size));
+    }
+
+    // n самых крупных расходов, фильтры - как у /filter
+    @GetMapping("/top")
+    public List<ExpenseView> getTop(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "20") int n) {
+        return service.getTop(userId, category, startDate, endDate, Math.max(1, Math.min(n, maxPageSize)));
+    }
+
+    private ResponseEntity<?> page(long userId, String category, LocalDate startDate, LocalDate endDate,
+                                   String cursor, Integer limit) {
+        return page(limit, size -> service.getPage(userId, category, startDate, endDate, cursor, size));
+    }
+
+    private ResponseEntity<?> page(Integer limit, IntFunction<ExpensePage> query) {
+        int size = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        try {
+            ExpensePage page = query.apply(size);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+            }
+            return response.body(page.items());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // все виджеты главной страницы одним запросом: разбивка по категориям, итог,
+    // список категорий, расходы за 30 дней и средний расход в день
+    @GetMapping("/dashboard")
+    public Dashboard getDashboard(@RequestAttribute(SessionAuthInterceptor.USER_ID) long userId) {
+        return dashboardService.getDashboard(userId);
     }
 
     // аналитика по категориям
     @GetMapping("/analytics/category")
-    public Map<String, Double> getAnalyticsByCategory() {
-        return service.getAnalyticsByCategory();
+    public Map<String, Double> getAnalyticsByCategory(@RequestAttribute(SessionAuthInterceptor.USER_ID) long userId) {
+        return service.getAnalyticsByCategory(userId);
+    }
+
+    // итоги за период по месяцам и дням
+    @GetMapping("/analytics/period")
+    public ResponseEntity<?> getAnalyticsByPeriod(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "startDate позже endDate"));
+        }
+        PeriodAnalytics analytics = service.getAnalyticsByPeriod(userId, startDate, endDate);
+        return ResponseEntity.ok(analytics);
+    }
+
+    // медиана, p90 и p99 сумм и число разных названий по категориям (приближенно, из скетчей).
+    // Период округляется до целых месяцев
+    @GetMapping("/analytics/distribution")
+    public ResponseEntity<?> getDistribution(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "startDate позже endDate"));
+        }
+        return ResponseEntity.ok(sketches.getByCategory(userId, startDate, endDate));
+    }
+
+    // то же по месяцам - для одной категории или для всех
+    @GetMapping("/analytics/distribution/monthly")
+    public Map<String, AmountDistribution> getMonthlyDistribution(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestParam(required = false) String category) {
+        return sketches.getByMonth(userId, category);
+    }
+
+    // суммы по категориям за последние 30 дней
+    @GetMapping("/analytics/recent")
+    public Map<String, Double> getRecentAnalytics(@RequestAttribute(SessionAuthInterceptor.USER_ID) long userId) {
+        return service.getRecentAnalytics(userId);
     }
 
     // общая сумма всех расходов
     @GetMapping("/analytics/total")
-    public Double getTotalAmount() {
-        return service.getTotalAmount();
+    public Double getTotalAmount(@RequestAttribute(SessionAuthInterceptor.USER_ID) long userId) {
+        return service.getTotalAmount(userId);
     }
 
     // все уникальные категории
     @GetMapping("/categories")
-    public List<String> getAllCategories() {
-        return service.getAllCategories();
+    public List<String> getAllCategories(@RequestAttribute(SessionAuthInterceptor.USER_ID) long userId) {
+        return service.getAllCategories(userId);
     }
 
     // за последние 30 дней
     @GetMapping("/recent")
-    public List<Expense> getRecentExpenses() {
-        return service.getRecentExpenses();
+    public List<ExpenseView> getRecentExpenses(@RequestAttribute(SessionAuthInterceptor.USER_ID) long userId) {
+        return service.getRecentExpenses(userId);
     }
 }
\ No newline at end of file
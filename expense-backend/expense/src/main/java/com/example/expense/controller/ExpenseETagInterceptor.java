@@ -0,0 +1,49 @@
+package com.example.expense.controller;
+
+import com.example.expense.service.ExpenseDataVersion;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+// условные GET для ExpenseController: ETag = версия данных пользователя + пользователь + адрес с параметрами + Accept
+// + текущая дата (/recent, /analytics/recent и /dashboard считают окно от сегодняшнего дня).
+// Если If-None-Match совпал, отвечаем 304 до вызова контроллера, репозиторий не трогается.
+// ETag слабый: Tomcat не сжимает ответы со строгим ETag, а тело под gzip побайтно другое.
+// Идет после SessionAuthInterceptor - пользователь уже в атрибуте запроса
+@Component
+public class ExpenseETagInterceptor implements HandlerInterceptor {
+    private final ExpenseDataVersion dataVersion;
+
+    public ExpenseETagInterceptor(ExpenseDataVersion dataVersion) {
+        this.dataVersion = dataVersion;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!"GET".equals(request.getMethod())
+                || !(handler instanceof HandlerMethod method)
+                || method.getBeanType() != ExpenseController.class) {
+            return true;
+        }
+        // браузер хранит ответ, но каждый раз переспрашивает сервер
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION);
+        long userId = (Long) request.getAttribute(SessionAuthInterceptor.USER_ID);
+        return !new ServletWebRequest(request, response).checkNotModified(etag(userId, request));
+    }
+
+    private String etag(long userId, HttpServletRequest request) {
+        int resource = Objects.hash(userId, request.getRequestURI(), request.getQueryString(),
+                request.getHeader(HttpHeaders.ACCEPT), LocalDate.now());
+        return "W/\"" + dataVersion.tag(userId) + "-" + Integer.toHexString(resource) + "\"";
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.expense.controller;
+
+import com.example.expense.dto.ExpenseChanges;
+import com.example.expense.service.ExpenseChangeLog;
+import com.example.expense.service.ExpenseEventBroadcaster;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/expenses")
+@CrossOrigin(origins = "http://localhost:5173")
+public class ExpenseEventsController {
+
+    private final ExpenseEventBroadcaster broadcaster;
+    private final ExpenseChangeLog changeLog;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    public ExpenseEventsController(ExpenseEventBroadcaster broadcaster,
+                                   ExpenseChangeLog changeLog,
+                                   @Value("${expense.page.default-size:100}") int defaultPageSize,
+                                   @Value("${expense.page.max-size:500}") int maxPageSize) {
+        this.broadcaster = broadcaster;
+        this.changeLog = changeLog;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    // поток изменений (text/event-stream): created, updated - расход, deleted - {id},
+    // totals - суммы по категориям, resync - клиент отстал и должен перечитать список.
+    // Только изменения вошедшего пользователя; токен - в Authorization или в параметре access_token
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@RequestAttribute(SessionAuthInterceptor.USER_ID) long userId) {
+        try {
+            return ResponseEntity.ok(broadcaster.subscribe(userId));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+    }
+
+    // изменения после курсора since: измененные расходы, id удаленных и курсор для следующего запроса.
+    // 410 Gone - курсора нет или он устарел: взять cursor из ответа, перечитать GET /expenses и продолжить с него
+    @GetMapping("/changes")
+    public ResponseEntity<?> changes(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestParam(required = false) String since,
+            @RequestParam(required = false) Integer limit) {
+        String resyncCursor = changeLog.cursor(userId);
+        int size = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        try {
+            Optional<ExpenseChanges> changes = changeLog.since(userId, since, size);
+            if (changes.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.GONE)
+                        .body(Map.of("error", "нужна полная синхронизация", "cursor", resyncCursor));
+            }
+            return ResponseEntity.ok(changes.get());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.expense.controller;
+
+import com.example.expense.service.ExpenseExportService;
+import com.example.expense.service.ExportFormat;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/expenses")
+@CrossOrigin(origins = "http://localhost:5173")
+public class ExpenseExportController {
+
+    private final ExpenseExportService exportService;
+
+    public ExpenseExportController(ExpenseExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    // выгрузка в NDJSON или CSV, строки пишутся прямо в ответ
+    @GetMapping("/export")
+    public void export(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "ndjson") String format,
+            HttpServletResponse response) throws IOException {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.fromParam(format);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        response.setContentType(exportFormat.contentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"expenses." + exportFormat.extension() + "\"");
+
+        exportService.export(userId, category, startDate, endDate, exportFormat, response.getWriter());
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.expense.controller;
+
+import com.example.expense.dto.BatchResult;
+import com.example.expense.service.ExpenseIngestService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/expenses")
+@CrossOrigin(origins = "http://localhost:5173")
+public class ExpenseIngestController {
+
+    private final ExpenseIngestService ingestService;
+
+    public ExpenseIngestController(ExpenseIngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+
+    // пакетное создание: JSON-массив или NDJSON, ошибки возвращаются по каждому элементу
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public BatchResult createBatch(
+            @RequestAttribute(SessionAuthInterceptor.USER_ID) long userId,
+            HttpServletRequest request) throws IOException {
+        return ingestService.ingest(userId, request.getInputStream());
+    }
+}
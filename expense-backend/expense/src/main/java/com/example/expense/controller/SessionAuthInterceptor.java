@@ -0,0 +1,56 @@
+package com.example.expense.controller;
+
+import com.example.expense.service.SessionStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+// все /expenses/** - только для вошедших: пользователь берется из сессии по токену
+// (Authorization: Bearer <token>) и кладется в атрибут запроса USER_ID, контроллеры читают его
+// через @RequestAttribute. Без сессии - 401 до вызова контроллера.
+// EventSource не умеет ставить заголовки, поэтому для потока событий токен можно передать параметром
+@Component
+public class SessionAuthInterceptor implements HandlerInterceptor {
+    public static final String USER_ID = "expense.userId";
+    static final String EVENTS_PATH = "/expenses/events";
+    static final String TOKEN_PARAM = "access_token";
+
+    private final SessionStore sessions;
+
+    public SessionAuthInterceptor(SessionStore sessions) {
+        this.sessions = sessions;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        // предварительный CORS-запрос идет без токена
+        if (CorsUtils.isPreFlightRequest(request) || !(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        String token = SessionStore.bearer(request.getHeader(HttpHeaders.AUTHORIZATION));
+        if (token == null && request.getRequestURI().endsWith(EVENTS_PATH)) {
+            token = request.getParameter(TOKEN_PARAM);
+        }
+        Optional<SessionStore.Session> session = sessions.resolve(token);
+        if (session.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write("{\"error\":\"нужна авторизация\"}");
+            return false;
+        }
+        request.setAttribute(USER_ID, session.get().getUserId());
+        return true;
+    }
+}
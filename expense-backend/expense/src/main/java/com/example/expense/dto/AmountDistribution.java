@@ -0,0 +1,10 @@
+package com.example.expense.dto;
+
+// распределение сумм расходов в группе (категория или месяц): квантили и число разных названий приближенные
+public record AmountDistribution(
+        long count,
+        double median,
+        double p90,
+        double p99,
+        long distinctTitles) {
+}
@@ -0,0 +1,10 @@
+package com.example.expense.dto;
+
+import java.util.Map;
+
+// суммы по категориям, общая сумма и средний расход в день, прочитанные вместе
+public record AnalyticsSummary(
+        Map<String, Double> byCategory,
+        double total,
+        double averagePerDay) {
+}
@@ -0,0 +1,10 @@
+package com.example.expense.dto;
+
+import java.util.List;
+
+// итог пакетной загрузки; index - номер элемента во входных данных (с нуля)
+public record BatchResult(int received, int inserted, List<ItemError> errors) {
+
+    public record ItemError(int index, String error) {
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.expense.dto;
+
+// SUM/COUNT по категории, считается в базе
+public record CategoryTotal(String category, Double total, Long count) {
+}
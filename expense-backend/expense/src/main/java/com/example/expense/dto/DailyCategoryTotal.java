@@ -0,0 +1,7 @@
+package com.example.expense.dto;
+
+import java.time.LocalDate;
+
+// SUM/COUNT по пользователю, дню и категории, считается в базе
+public record DailyCategoryTotal(Long userId, LocalDate date, String category, Double total, Long count) {
+}
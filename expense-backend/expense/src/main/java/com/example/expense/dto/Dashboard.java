@@ -0,0 +1,15 @@
+package com.example.expense.dto;
+
+import java.util.List;
+import java.util.Map;
+
+// все виджеты главной страницы одним ответом (GET /expenses/dashboard);
+// version - версия данных, на которой собраны все части
+public record Dashboard(
+        String version,
+        Map<String, Double> byCategory,
+        double total,
+        List<String> categories,
+        List<ExpenseView> recent,
+        double averagePerDay) {
+}
@@ -0,0 +1,7 @@
+package com.example.expense.dto;
+
+import java.time.LocalDate;
+
+// самая ранняя и самая поздняя дата (null, если расходов нет)
+public record DateRange(LocalDate minDate, LocalDate maxDate) {
+}
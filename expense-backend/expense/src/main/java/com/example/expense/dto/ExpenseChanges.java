@@ -0,0 +1,12 @@
+package com.example.expense.dto;
+
+import java.util.List;
+
+// изменения после курсора: последнее состояние каждого измененного расхода и id удаленных.
+// cursor - позиция для следующего запроса, hasMore - изменения не поместились в limit
+public record ExpenseChanges(
+        String cursor,
+        List<ExpenseView> changed,
+        List<Long> deleted,
+        boolean hasMore) {
+}
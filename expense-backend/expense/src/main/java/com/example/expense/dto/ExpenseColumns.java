@@ -0,0 +1,52 @@
+package com.example.expense.dto;
+
+import com.example.expense.model.Expense;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// колоночный вид списка расходов (application/vnd.expense.columnar+json):
+// по массиву на поле вместо объекта на строку, имена полей в ответе встречаются один раз
+public record ExpenseColumns(
+        int size,
+        Long[] id,
+        String[] title,
+        double[] amount,
+        LocalDate[] date,
+        String[] category,
+        String[] comment) {
+
+    public static final String MEDIA_TYPE = "application/vnd.expense.columnar+json";
+
+    // строки, которые умеем раскладывать по колонкам
+    public static boolean isRow(Object row) {
+        return row instanceof ExpenseView || row instanceof Expense;
+    }
+
+    public static ExpenseColumns of(List<?> rows) {
+        int size = rows.size();
+        ExpenseColumns columns = new ExpenseColumns(size, new Long[size], new String[size], new double[size],
+                new LocalDate[size], new String[size], new String[size]);
+        for (int i = 0; i < size; i++) {
+            Object row = rows.get(i);
+            if (row instanceof ExpenseView view) {
+                columns.set(i, view.id(), view.title(), view.amount(), view.date(), view.category(), view.comment());
+            } else if (row instanceof Expense expense) {
+                columns.set(i, expense.getId(), expense.getTitle(), expense.getAmount(), expense.getDate(),
+                        expense.getCategory(), expense.getComment());
+            } else {
+                throw new IllegalArgumentException("не расход: " + row);
+            }
+        }
+        return columns;
+    }
+
+    private void set(int i, Long id, String title, double amount, LocalDate date, String category, String comment) {
+        this.id[i] = id;
+        this.title[i] = title;
+        this.amount[i] = amount;
+        this.date[i] = date;
+        this.category[i] = category;
+        this.comment[i] = comment;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.expense.dto;
+
+import java.util.List;
+
+// одна страница расходов; nextCursor == null, если это последняя страница
+public record ExpensePage(List<ExpenseView> items, String nextCursor) {
+}
@@ -0,0 +1,13 @@
+package com.example.expense.dto;
+
+import java.time.LocalDate;
+
+// расход для списков: те же поля, что у Expense, но без managed-сущности в контексте
+public record ExpenseView(
+        Long id,
+        String title,
+        double amount,
+        LocalDate date,
+        String category,
+        String comment) {
+}
@@ -0,0 +1,26 @@
+package com.example.expense.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+// итоги за период и разбивка по бакетам (целые месяцы + отдельные дни на краях)
+public record PeriodAnalytics(
+        LocalDate startDate,
+        LocalDate endDate,
+        double total,
+        long count,
+        Map<String, Double> byCategory,
+        List<Bucket> buckets) {
+
+    public enum Granularity { DAY, MONTH }
+
+    // bucketStart - день или первый день месяца
+    public record Bucket(
+            LocalDate bucketStart,
+            Granularity granularity,
+            double total,
+            long count,
+            Map<String, Double> byCategory) {
+    }
+}
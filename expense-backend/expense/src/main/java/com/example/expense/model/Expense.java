@@ -1,12 +1,28 @@
 package com.example.expense.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 
+// индексы под запросы ExpenseRepository: по дате/периоду, по категории (+ период)
+// и по сумме (+ категория) - для самых крупных расходов без сортировки всей выборки.
+// Все запросы идут в пределах одного пользователя, поэтому каждый индекс начинается с user_id:
+// запрос читает только диапазон своего владельца, сколько бы строк ни было у остальных.
+// Порядок колонок суммы совпадает с ORDER BY amount DESC, id DESC: H2 берет индекс для сортировки только так
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_expense_user_date", columnList = "user_id, date"),
+        @Index(name = "idx_expense_user_category_date", columnList = "user_id, category, date"),
+        @Index(name = "idx_expense_user_amount", columnList = "user_id, amount DESC, id DESC"),
+        @Index(name = "idx_expense_user_category_amount", columnList = "user_id, category, amount DESC, id DESC")
+})
 public class Expense {
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // sequence с пулом: Hibernate берет id пачками по 50 и может группировать INSERT в JDBC batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "expense_seq")
+    @SequenceGenerator(name = "expense_seq", sequenceName = "expense_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     private String title;
     private double amount;
@@ -14,6 +30,11 @@ public class Expense {
     private String category;
     private String comment;
 
+    // владелец (users.id); задается сервером из сессии, в JSON не читается и не пишется
+    @JsonIgnore
+    @Column(name = "user_id")
+    private Long userId;
+
     public Expense() {
     }
 
@@ -44,4 +65,7 @@ public class Expense {
 
     public String getComment() { return comment; }
     public void setComment(String comment) { this.comment = comment; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
 }
\ No newline at end of file
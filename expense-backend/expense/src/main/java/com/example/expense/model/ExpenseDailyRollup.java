@@ -0,0 +1,55 @@
+package com.example.expense.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+// сумма расходов одного пользователя за один день по одной категории
+@Entity
+@Table(name = "expense_daily_rollup",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "bucket_day", "category"}))
+public class ExpenseDailyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "bucket_day", nullable = false)
+    private LocalDate bucketDay;
+
+    @Column(nullable = false)
+    private String category;
+
+    private double total;
+    private long expenseCount;
+
+    public ExpenseDailyRollup() {
+    }
+
+    public ExpenseDailyRollup(Long userId, LocalDate bucketDay, String category, double total, long expenseCount) {
+        this.userId = userId;
+        this.bucketDay = bucketDay;
+        this.category = category;
+        this.total = total;
+        this.expenseCount = expenseCount;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public LocalDate getBucketDay() { return bucketDay; }
+    public void setBucketDay(LocalDate bucketDay) { this.bucketDay = bucketDay; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public double getTotal() { return total; }
+    public void setTotal(double total) { this.total = total; }
+
+    public long getExpenseCount() { return expenseCount; }
+    public void setExpenseCount(long expenseCount) { this.expenseCount = expenseCount; }
+}
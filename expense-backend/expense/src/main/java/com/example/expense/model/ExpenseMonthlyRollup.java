@@ -0,0 +1,56 @@
+package com.example.expense.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+// сумма расходов одного пользователя за один месяц по одной категории
+@Entity
+@Table(name = "expense_monthly_rollup",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "bucket_month", "category"}))
+public class ExpenseMonthlyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // первый день месяца
+    @Column(name = "bucket_month", nullable = false)
+    private LocalDate bucketMonth;
+
+    @Column(nullable = false)
+    private String category;
+
+    private double total;
+    private long expenseCount;
+
+    public ExpenseMonthlyRollup() {
+    }
+
+    public ExpenseMonthlyRollup(Long userId, LocalDate bucketMonth, String category, double total, long expenseCount) {
+        this.userId = userId;
+        this.bucketMonth = bucketMonth;
+        this.category = category;
+        this.total = total;
+        this.expenseCount = expenseCount;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public LocalDate getBucketMonth() { return bucketMonth; }
+    public void setBucketMonth(LocalDate bucketMonth) { this.bucketMonth = bucketMonth; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public double getTotal() { return total; }
+    public void setTotal(double total) { this.total = total; }
+
+    public long getExpenseCount() { return expenseCount; }
+    public void setExpenseCount(long expenseCount) { this.expenseCount = expenseCount; }
+}
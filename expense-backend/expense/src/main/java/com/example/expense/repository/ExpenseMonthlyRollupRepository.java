@@ -0,0 +1,31 @@
+package com.example.expense.repository;
+
+import com.example.expense.model.ExpenseMonthlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ExpenseMonthlyRollupRepository extends JpaRepository<ExpenseMonthlyRollup, Long> {
+
+    List<ExpenseMonthlyRollup> findByUserIdAndBucketMonthBetweenOrderByBucketMonth(Long userId, LocalDate startDate,
+                                                                                   LocalDate endDate);
+
+    // прибавить к существующему месяцу, возвращает число обновленных строк
+    @Modifying
+    @Query("UPDATE ExpenseMonthlyRollup r SET r.total = r.total + :amount, r.expenseCount = r.expenseCount + :delta " +
+            "WHERE r.userId = :userId AND r.bucketMonth = :month AND r.category = :category")
+    int increment(@Param("userId") Long userId, @Param("month") LocalDate month, @Param("category") String category,
+                  @Param("amount") double amount, @Param("delta") long delta);
+
+    // убрать опустевший месяц
+    @Modifying
+    @Query("DELETE FROM ExpenseMonthlyRollup r WHERE r.userId = :userId AND r.bucketMonth = :month " +
+            "AND r.category = :category AND r.expenseCount <= 0")
+    int deleteIfEmpty(@Param("userId") Long userId, @Param("month") LocalDate month, @Param("category") String category);
+}
@@ -1,35 +1,182 @@
 package com.example.expense.repository;
 
+import com.example.expense.dto.CategoryTotal;
+import com.example.expense.dto.DailyCategoryTotal;
+import com.example.expense.dto.DateRange;
+import com.example.expense.dto.ExpenseView;
 import com.example.expense.model.Expense;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface ExpenseRepository extends JpaRepository<Expense, Long> {
 
+    String STREAM_FETCH_SIZE = "1000";
+
+    String VIEW = "new com.example.expense.dto.ExpenseView(e.id, e.title, e.amount, e.date, e.category, e.comment)";
+
+    //все расходы пользователя
+    List<Expense> findByUserId(Long userId);
+
     //фильтр по категории
-    List<Expense> findByCategory(String category);
+    List<Expense> findByUserIdAndCategory(Long userId, String category);
 
     //по дате
-    List<Expense> findByDate(LocalDate date);
+    List<Expense> findByUserIdAndDate(Long userId, LocalDate date);
 
     // по периоду от и до
-    List<Expense> findByDateBetween(LocalDate startDate, LocalDate endDate);
+    List<Expense> findByUserIdAndDateBetween(Long userId, LocalDate startDate, LocalDate endDate);
 
     //фильтр по категории и периоду
-    List<Expense> findByCategoryAndDateBetween(String category, LocalDate startDate, LocalDate endDate);
+    List<Expense> findByUserIdAndCategoryAndDateBetween(Long userId, String category,
+                                                        LocalDate startDate, LocalDate endDate);
 
     //получить все уникальные категории
-    @Query("SELECT DISTINCT e.category FROM Expense e WHERE e.category IS NOT NULL")
-    List<String> findDistinctCategories();
+    @Query("SELECT DISTINCT e.category FROM Expense e WHERE e.userId = :userId AND e.category IS NOT NULL")
+    List<String> findDistinctCategories(@Param("userId") Long userId);
 
     //получить расходы за последние N дней
-    @Query("SELECT e FROM Expense e WHERE e.date >= :startDate ORDER BY e.date DESC")
-    List<Expense> findRecentExpenses(@Param("startDate") LocalDate startDate);
+    @Query("SELECT e FROM Expense e WHERE e.userId = :userId AND e.date >= :startDate ORDER BY e.date DESC")
+    List<Expense> findRecentExpenses(@Param("userId") Long userId, @Param("startDate") LocalDate startDate);
+
+    //то же для списков - проекция вместо сущностей
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.date >= :startDate ORDER BY e.date DESC")
+    List<ExpenseView> findRecentViews(@Param("userId") Long userId, @Param("startDate") LocalDate startDate);
+
+    //строки найденные поиском (проекция), от новых id к старым
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.id IN :ids ORDER BY e.id DESC")
+    List<ExpenseView> findViewsByIdIn(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    //постранично (проекция), keyset по (date, id) от новых к старым: строки строго после курсора.
+    //условие "date <= :date" отдельно от OR, чтобы H2 мог пройти по индексу диапазоном
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId " +
+            "AND e.date <= :date AND (e.date < :date OR e.id < :id) " +
+            "ORDER BY e.date DESC, e.id DESC")
+    List<ExpenseView> findPage(@Param("userId") Long userId,
+                               @Param("date") LocalDate date, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.category = :category " +
+            "AND e.date <= :date AND (e.date < :date OR e.id < :id) " +
+            "ORDER BY e.date DESC, e.id DESC")
+    List<ExpenseView> findPageByCategory(@Param("userId") Long userId, @Param("category") String category,
+                                         @Param("date") LocalDate date, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.date BETWEEN :startDate AND :endDate " +
+            "AND e.date <= :date AND (e.date < :date OR e.id < :id) " +
+            "ORDER BY e.date DESC, e.id DESC")
+    List<ExpenseView> findPageByPeriod(@Param("userId") Long userId,
+                                       @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate,
+                                       @Param("date") LocalDate date, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.category = :category " +
+            "AND e.date BETWEEN :startDate AND :endDate " +
+            "AND e.date <= :date AND (e.date < :date OR e.id < :id) " +
+            "ORDER BY e.date DESC, e.id DESC")
+    List<ExpenseView> findPageByCategoryAndPeriod(@Param("userId") Long userId, @Param("category") String category,
+                                                  @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate,
+                                                  @Param("date") LocalDate date, @Param("id") Long id, Pageable pageable);
+
+    //самые крупные расходы (проекция): база идет по индексу суммы с конца и останавливается на лимите
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId ORDER BY e.amount DESC, e.id DESC")
+    List<ExpenseView> findTop(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.category = :category " +
+            "ORDER BY e.amount DESC, e.id DESC")
+    List<ExpenseView> findTopByCategory(@Param("userId") Long userId, @Param("category") String category,
+                                        Pageable pageable);
+
+    //строки одной категории за период (проекция) - для пересчета скетчей после удалений
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.category = :category " +
+            "AND e.date BETWEEN :startDate AND :endDate")
+    List<ExpenseView> findViewsByCategoryAndPeriod(@Param("userId") Long userId,
+                                                   @Param("category") String category,
+                                                   @Param("startDate") LocalDate startDate,
+                                                   @Param("endDate") LocalDate endDate);
+
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.category IS NULL " +
+            "AND e.date BETWEEN :startDate AND :endDate")
+    List<ExpenseView> findViewsWithoutCategoryByPeriod(@Param("userId") Long userId,
+                                                       @Param("startDate") LocalDate startDate,
+                                                       @Param("endDate") LocalDate endDate);
+
+    //потоковое чтение для выгрузки (только внутри транзакции, поток нужно закрыть)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT e FROM Expense e WHERE e.userId = :userId ORDER BY e.id")
+    Stream<Expense> streamAll(@Param("userId") Long userId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT e FROM Expense e WHERE e.userId = :userId AND e.category = :category ORDER BY e.id")
+    Stream<Expense> streamByCategory(@Param("userId") Long userId, @Param("category") String category);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT e FROM Expense e WHERE e.userId = :userId AND e.date BETWEEN :startDate AND :endDate ORDER BY e.id")
+    Stream<Expense> streamByPeriod(@Param("userId") Long userId,
+                                   @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT e FROM Expense e WHERE e.userId = :userId AND e.category = :category " +
+            "AND e.date BETWEEN :startDate AND :endDate ORDER BY e.id")
+    Stream<Expense> streamByCategoryAndPeriod(@Param("userId") Long userId,
+                                              @Param("category") String category,
+                                              @Param("startDate") LocalDate startDate,
+                                              @Param("endDate") LocalDate endDate);
+
+    //то же проекцией: DTO не попадают в контекст персистентности, detach не нужен
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.date BETWEEN :startDate AND :endDate")
+    Stream<ExpenseView> streamViewsByPeriod(@Param("userId") Long userId,
+                                           @Param("startDate") LocalDate startDate,
+                                           @Param("endDate") LocalDate endDate);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT " + VIEW + " FROM Expense e WHERE e.userId = :userId AND e.category = :category " +
+            "AND e.date BETWEEN :startDate AND :endDate")
+    Stream<ExpenseView> streamViewsByCategoryAndPeriod(@Param("userId") Long userId,
+                                                       @Param("category") String category,
+                                                       @Param("startDate") LocalDate startDate,
+                                                       @Param("endDate") LocalDate endDate);
+
+    //агрегаты считаются в базе и возвращаются скалярами, сущности не загружаются
+
+    //суммы по пользователям, дням и категориям - для заполнения rollup-таблиц (один раз при старте)
+    @Query("SELECT new com.example.expense.dto.DailyCategoryTotal(e.userId, e.date, e.category, SUM(e.amount), COUNT(e)) " +
+            "FROM Expense e WHERE e.userId IS NOT NULL AND e.date IS NOT NULL GROUP BY e.userId, e.date, e.category")
+    List<DailyCategoryTotal> sumByDateAndCategory();
+
+    //суммы по категориям
+    @Query("SELECT new com.example.expense.dto.CategoryTotal(e.category, SUM(e.amount), COUNT(e)) " +
+            "FROM Expense e WHERE e.userId = :userId GROUP BY e.category")
+    List<CategoryTotal> sumByCategory(@Param("userId") Long userId);
+
+    //общая сумма
+    @Query("SELECT COALESCE(SUM(e.amount), 0) FROM Expense e WHERE e.userId = :userId")
+    double sumAmount(@Param("userId") Long userId);
+
+    //самая ранняя и самая поздняя дата
+    @Query("SELECT new com.example.expense.dto.DateRange(MIN(e.date), MAX(e.date)) FROM Expense e WHERE e.userId = :userId")
+    DateRange findDateRange(@Param("userId") Long userId);
 
 }
\ No newline at end of file
@@ -0,0 +1,397 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AnalyticsSummary;
+import com.example.expense.model.Expense;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// копия таблицы expense по колонкам для аналитики: id, день (epoch day), сумма, код категории.
+// строки лежат в сегментах до 65536 элементов из примитивных массивов, поэтому
+// десятки миллионов строк - это несколько крупных массивов без объектов на строку.
+// У каждого пользователя своя таблица со своей блокировкой и словарем категорий:
+// проход по колонкам читает только его строки. Первый сегмент растет удвоением,
+// чтобы пользователь с десятком расходов не занимал полный сегмент
+@Component
+@ConditionalOnProperty(name = "expense.analytics.source", havingValue = "columnar")
+public class ColumnarExpenseStore implements ExpenseAnalytics, ExpenseChangeListener {
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 64;
+    // день для расходов без даты, в период и min/max не попадает
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    // для пользователя без расходов; только читается
+    private static final Table EMPTY = new Table();
+
+    private final ConcurrentHashMap<Long, Table> tables = new ConcurrentHashMap<>();
+
+    @Override
+    public void onSaved(Expense previous, Expense saved) {
+        Table table = tables.computeIfAbsent(saved.getUserId(), id -> new Table());
+        table.lock.writeLock().lock();
+        try {
+            if (previous != null) {
+                table.removeById(previous.getId());
+            }
+            table.append(saved);
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(Expense deleted) {
+        Table table = tables.get(deleted.getUserId());
+        if (table == null) {
+            return;
+        }
+        table.lock.writeLock().lock();
+        try {
+            table.removeById(deleted.getId());
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        tables.clear();
+    }
+
+    public int size(long userId) {
+        Table table = table(userId);
+        table.lock.readLock().lock();
+        try {
+            return table.size;
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Double> getSumsByCategory(long userId) {
+        return sumsByCategory(table(userId), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Optional<Map<String, Double>> getSumsByCategoryBetween(long userId, LocalDate startDate, LocalDate endDate) {
+        return Optional.of(sumsByCategory(table(userId), (int) startDate.toEpochDay(), (int) endDate.toEpochDay()));
+    }
+
+    @Override
+    public double getTotal(long userId) {
+        Table table = table(userId);
+        table.lock.readLock().lock();
+        try {
+            double total = 0.0;
+            for (int s = 0; s < table.segments.size(); s++) {
+                double[] amounts = table.segments.get(s).amounts;
+                int rows = table.rowsIn(s);
+                for (int i = 0; i < rows; i++) {
+                    total += amounts[i];
+                }
+            }
+            return total;
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public double getAveragePerDay(long userId) {
+        Table table = table(userId);
+        table.lock.readLock().lock();
+        try {
+            if (table.size == 0) return 0.0;
+
+            double total = 0.0;
+            int minDay = Integer.MAX_VALUE;
+            int maxDay = Integer.MIN_VALUE;
+            for (int s = 0; s < table.segments.size(); s++) {
+                Segment segment = table.segments.get(s);
+                int rows = table.rowsIn(s);
+                for (int i = 0; i < rows; i++) {
+                    total += segment.amounts[i];
+                    int day = segment.days[i];
+                    if (day != NO_DATE) {
+                        minDay = Math.min(minDay, day);
+                        maxDay = Math.max(maxDay, day);
+                    }
+                }
+            }
+            if (maxDay == Integer.MIN_VALUE) return total;
+
+            long daysBetween = ChronoUnit.DAYS.between(LocalDate.ofEpochDay(minDay), LocalDate.ofEpochDay(maxDay)) + 1;
+            return total / daysBetween;
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    // суммы по категориям, общая сумма и крайние дни - за один проход по колонкам вместо трех
+    @Override
+    public AnalyticsSummary getSummary(long userId) {
+        Table table = table(userId);
+        table.lock.readLock().lock();
+        try {
+            double[] sums = new double[table.categoryNames.size()];
+            int[] counts = new int[table.categoryNames.size()];
+            double total = 0.0;
+            int minDay = Integer.MAX_VALUE;
+            int maxDay = Integer.MIN_VALUE;
+            for (int s = 0; s < table.segments.size(); s++) {
+                Segment segment = table.segments.get(s);
+                int rows = table.rowsIn(s);
+                for (int i = 0; i < rows; i++) {
+                    double amount = segment.amounts[i];
+                    sums[segment.categories[i]] += amount;
+                    counts[segment.categories[i]]++;
+                    total += amount;
+                    int day = segment.days[i];
+                    if (day != NO_DATE) {
+                        minDay = Math.min(minDay, day);
+                        maxDay = Math.max(maxDay, day);
+                    }
+                }
+            }
+
+            Map<String, Double> byCategory = new HashMap<>();
+            for (int code = 0; code < sums.length; code++) {
+                if (counts[code] > 0) {
+                    byCategory.put(table.categoryNames.get(code), sums[code]);
+                }
+            }
+            double average;
+            if (table.size == 0) {
+                average = 0.0;
+            } else if (maxDay == Integer.MIN_VALUE) {
+                average = total;
+            } else {
+                average = total / ((long) maxDay - minDay + 1);
+            }
+            return new AnalyticsSummary(byCategory, total, average);
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    // суммы по категориям для дней в [fromDay, toDay]; весь диапазон int - без фильтра по дате
+    private static Map<String, Double> sumsByCategory(Table table, int fromDay, int toDay) {
+        boolean allDays = fromDay == Integer.MIN_VALUE && toDay == Integer.MAX_VALUE;
+        table.lock.readLock().lock();
+        try {
+            double[] sums = new double[table.categoryNames.size()];
+            int[] counts = new int[table.categoryNames.size()];
+            for (int s = 0; s < table.segments.size(); s++) {
+                Segment segment = table.segments.get(s);
+                int rows = table.rowsIn(s);
+                for (int i = 0; i < rows; i++) {
+                    int day = segment.days[i];
+                    if (allDays || (day != NO_DATE && day >= fromDay && day <= toDay)) {
+                        sums[segment.categories[i]] += segment.amounts[i];
+                        counts[segment.categories[i]]++;
+                    }
+                }
+            }
+
+            Map<String, Double> result = new HashMap<>();
+            for (int code = 0; code < sums.length; code++) {
+                if (counts[code] > 0) {
+                    result.put(table.categoryNames.get(code), sums[code]);
+                }
+            }
+            return result;
+        } finally {
+            table.lock.readLock().unlock();
+        }
+    }
+
+    private Table table(long userId) {
+        return tables.getOrDefault(userId, EMPTY);
+    }
+
+    // строки одного пользователя, поля - под lock
+    private static final class Table {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final List<Segment> segments = new ArrayList<>();
+        // словарь категорий: строка <-> код
+        final Map<String, Integer> categoryCodes = new HashMap<>();
+        final List<String> categoryNames = new ArrayList<>();
+        // id -> номер строки, чтобы правка и удаление не перебирали колонку id
+        final RowIndex rows = new RowIndex();
+        int size;
+
+        void append(Expense expense) {
+            if (size == segments.size() * SEGMENT_SIZE) {
+                segments.add(new Segment(segments.isEmpty() ? INITIAL_CAPACITY : SEGMENT_SIZE));
+            }
+            Segment segment = segments.get(size >>> SEGMENT_SHIFT);
+            int i = size & SEGMENT_MASK;
+            if (i == segment.ids.length) {
+                segment.grow(Math.min(i * 2, SEGMENT_SIZE));
+            }
+
+            segment.ids[i] = expense.getId() != null ? expense.getId() : 0L;
+            segment.days[i] = expense.getDate() != null ? (int) expense.getDate().toEpochDay() : NO_DATE;
+            segment.amounts[i] = expense.getAmount();
+            segment.categories[i] = categoryCode(ExpenseAggregates.categoryOf(expense));
+            if (expense.getId() != null) {
+                rows.put(expense.getId(), size);
+            }
+            size++;
+        }
+
+        // на место удаленной строки переносим последнюю
+        void removeById(Long id) {
+            if (id == null) {
+                return;
+            }
+            int row = rows.remove(id);
+            if (row >= 0) {
+                moveLastTo(row);
+            }
+        }
+
+        private void moveLastTo(int row) {
+            int last = size - 1;
+            Segment from = segments.get(last >>> SEGMENT_SHIFT);
+            int j = last & SEGMENT_MASK;
+            Segment to = segments.get(row >>> SEGMENT_SHIFT);
+            int offset = row & SEGMENT_MASK;
+
+            // 0 - строка без id, ее нет в индексе
+            if (row != last && from.ids[j] != 0) {
+                rows.put(from.ids[j], row);
+            }
+            to.ids[offset] = from.ids[j];
+            to.days[offset] = from.days[j];
+            to.amounts[offset] = from.amounts[j];
+            to.categories[offset] = from.categories[j];
+            size--;
+
+            // освобождаем опустевший последний сегмент
+            if (size <= (segments.size() - 1) * SEGMENT_SIZE) {
+                segments.remove(segments.size() - 1);
+            }
+        }
+
+        int rowsIn(int segmentIndex) {
+            return Math.min(SEGMENT_SIZE, size - (segmentIndex << SEGMENT_SHIFT));
+        }
+
+        private int categoryCode(String category) {
+            Integer code = categoryCodes.get(category);
+            if (code == null) {
+                code = categoryNames.size();
+                categoryNames.add(category);
+                categoryCodes.put(category, code);
+            }
+            return code;
+        }
+    }
+
+    // long -> int на примитивных массивах (открытая адресация, линейное пробирование):
+    // без объекта на строку, как и сами колонки
+    private static final class RowIndex {
+        private static final long FREE = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(16);
+        private int[] values = new int[16];
+        private int count;
+
+        void put(long id, int row) {
+            if ((count + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int i = slot(id);
+            if (keys[i] == FREE) {
+                keys[i] = id;
+                count++;
+            }
+            values[i] = row;
+        }
+
+        // номер строки или -1; освободившееся место занимают следующие записи цепочки
+        int remove(long id) {
+            int i = slot(id);
+            if (keys[i] == FREE) {
+                return -1;
+            }
+            int row = values[i];
+            int mask = keys.length - 1;
+            for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+                // запись с j можно поднять в i, если ее домашняя ячейка не между i и j
+                if (((j - home(keys[j])) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = FREE;
+            count--;
+            return row;
+        }
+
+        // ячейка с id или первая свободная на его цепочке
+        private int slot(long id) {
+            int mask = keys.length - 1;
+            int i = home(id);
+            while (keys[i] != FREE && keys[i] != id) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private int home(long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(capacity);
+            values = new int[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, FREE);
+            return keys;
+        }
+    }
+
+    private static class Segment {
+        long[] ids;
+        int[] days;
+        double[] amounts;
+        int[] categories;
+
+        Segment(int capacity) {
+            ids = new long[capacity];
+            days = new int[capacity];
+            amounts = new double[capacity];
+            categories = new int[capacity];
+        }
+
+        void grow(int capacity) {
+            ids = Arrays.copyOf(ids, capacity);
+            days = Arrays.copyOf(days, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AnalyticsSummary;
+import com.example.expense.dto.CategoryTotal;
+import com.example.expense.dto.DateRange;
+import com.example.expense.repository.ExpenseRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+
+// аналитика запросами SUM/COUNT/MIN/MAX в базе.
+// нужна, когда базу пишут несколько экземпляров и агрегаты в памяти одного из них устаревают
+@Component
+@ConditionalOnProperty(name = "expense.analytics.source", havingValue = "database")
+public class DatabaseExpenseAnalytics implements ExpenseAnalytics {
+    private final ExpenseRepository repository;
+
+    public DatabaseExpenseAnalytics(ExpenseRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public Map<String, Double> getSumsByCategory(long userId) {
+        Map<String, Double> result = new HashMap<>();
+        for (CategoryTotal row : repository.sumByCategory(userId)) {
+            String category = row.category() != null ? row.category() : ExpenseAggregates.NO_CATEGORY;
+            result.merge(category, row.total(), Double::sum);
+        }
+        return result;
+    }
+
+    @Override
+    public double getTotal(long userId) {
+        return repository.sumAmount(userId);
+    }
+
+    @Override
+    public double getAveragePerDay(long userId) {
+        return averagePerDay(userId, repository.sumAmount(userId));
+    }
+
+    // общая сумма - из сумм по категориям: два запроса вместо четырех
+    @Override
+    public AnalyticsSummary getSummary(long userId) {
+        Map<String, Double> byCategory = getSumsByCategory(userId);
+        double total = byCategory.values().stream().mapToDouble(Double::doubleValue).sum();
+        return new AnalyticsSummary(byCategory, total, averagePerDay(userId, total));
+    }
+
+    private double averagePerDay(long userId, double total) {
+        DateRange range = repository.findDateRange(userId);
+        if (range == null || range.minDate() == null) {
+            return total;
+        }
+
+        long daysBetween = ChronoUnit.DAYS.between(range.minDate(), range.maxDate()) + 1;
+        return total / daysBetween;
+    }
+}
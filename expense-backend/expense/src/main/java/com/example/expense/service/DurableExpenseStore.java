@@ -0,0 +1,493 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+import com.example.expense.model.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// режим хранения wal: H2 остается в памяти, каждое изменение дописывается в журнал на диске.
+// При старте таблица заполняется из последнего снимка и хвоста журнала после него,
+// поэтому старт зависит от объема данных и длины хвоста, а не от всей истории изменений.
+// Записи журнала идемпотентны (SAVE - полная строка, DELETE - id), поэтому снимок можно снимать
+// без остановки записи: хвост после его номера повторно применяется поверх.
+// SAVE_OWNED - та же строка плюс владелец; журналы и снимки версии 1 (SAVE, без владельца) читаются как раньше.
+// USER - зарегистрированный пользователь (таблица users тоже только в памяти), снимки версии 3 хранят и их.
+// Запись в журнал идет до коммита транзакции (writesBeforeCommit), поэтому порядок записей по одному id
+// совпадает с порядком коммитов, а ошибка журнала откатывает изменение вместо того, чтобы потерять его
+@Component
+@ConditionalOnProperty(name = "expense.storage.mode", havingValue = "wal")
+@DependsOn("entityManagerFactory")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class DurableExpenseStore implements ExpenseChangeListener {
+    private static final Logger log = LoggerFactory.getLogger(DurableExpenseStore.class);
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final byte SAVE_OWNED = 3;
+    private static final byte USER = 4;
+    private static final byte DELETE_USER = 5;
+    private static final int SNAPSHOT_MAGIC = 0x45585053;
+    private static final int SNAPSHOT_VERSION = 3;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int INSERT_BATCH = 1000;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final long NO_USER = Long.MIN_VALUE;
+
+    private static final String INSERT = "INSERT INTO expense (id, title, amount, date, category, comment, user_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPSERT = "MERGE INTO expense (id, title, amount, date, category, comment, user_id) " +
+            "KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPSERT_USER = "MERGE INTO users (id, username, password) KEY (id) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate snapshotTransaction;
+    private final Path dir;
+    private final WriteAheadLog wal;
+    // первые номера записей транзакций, которые еще не закоммичены и не откачены.
+    // Запись и регистрация идут под journalLock, чтобы снимок не увидел номер без регистрации
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+    private volatile long snapshotSeq;
+
+    public DurableExpenseStore(JdbcTemplate jdbc,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${expense.wal.dir:data/wal}") String dir,
+                               @Value("${expense.wal.segment-size:64MB}") DataSize segmentSize,
+                               @Value("${expense.wal.fsync:group}") FsyncPolicy fsync,
+                               @Value("${expense.wal.group-commit:2ms}") Duration groupCommit,
+                               @Value("${expense.wal.fsync-interval:1s}") Duration fsyncInterval) {
+        this.jdbc = jdbc;
+        // обе таблицы читаются из одного состояния базы
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        this.dir = Path.of(dir);
+        this.wal = new WriteAheadLog(this.dir, Math.toIntExact(segmentSize.toBytes()), fsync,
+                fsync == FsyncPolicy.GROUP ? groupCommit : fsyncInterval);
+    }
+
+    // до ExpenseService.rebuild: бин ExpenseService создается после всех слушателей
+    @PostConstruct
+    public void recover() throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(dir);
+        long fromSeq = loadSnapshot();
+        long[] replayed = {0};
+        long lastSeq = wal.recover(fromSeq, (seq, payload) -> {
+            apply(payload);
+            replayed[0]++;
+        });
+        snapshotSeq = fromSeq;
+        restartIdSequence();
+        log.info("Восстановлено: снимок до записи {}, {} записей журнала (до {}), {} мс",
+                fromSeq, replayed[0], lastSeq, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Override
+    public void onSaved(Expense previous, Expense saved) {
+        wal.commit(append(List.of(encodeSave(saved))));
+    }
+
+    @Override
+    public void onDeleted(Expense deleted) {
+        wal.commit(append(List.of(encodeDelete(deleted.getId()))));
+    }
+
+    // вызывается из транзакции регистрации после INSERT (строка и имя уже заблокированы).
+    // Если транзакция потом откатится, журнал получает удаление этого пользователя
+    public void onUserRegistered(User user) {
+        wal.commit(append(List.of(encodeUser(user))));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            long id = user.getId();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        wal.commit(wal.append(encodeDeleteUser(id)));
+                    }
+                }
+            });
+        }
+    }
+
+    // вся пачка дописывается подряд и ждет один fsync
+    @Override
+    public void onSavedAll(List<Expense> saved) {
+        wal.commit(append(saved.stream().map(DurableExpenseStore::encodeSave).toList()));
+    }
+
+    // номер последней записи. Внутри транзакции записи до ее завершения считаются незакоммиченными:
+    // снимок берет номер меньше первой из них, и при старте они повторятся поверх снимка
+    private long append(List<byte[]> records) {
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        long first;
+        long last;
+        journalLock.lock();
+        try {
+            first = wal.append(records.get(0));
+            last = first;
+            for (int i = 1; i < records.size(); i++) {
+                last = wal.append(records.get(i));
+            }
+            if (inTransaction) {
+                pending.add(first);
+            }
+        } finally {
+            journalLock.unlock();
+        }
+        if (inTransaction) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    pending.remove(first);
+                }
+            });
+        }
+        return last;
+    }
+
+    @Override
+    public boolean writesBeforeCommit() {
+        return true;
+    }
+
+    // журнал сам является источником данных, а не производным состоянием
+    @Override
+    public boolean replayOnRebuild() {
+        return false;
+    }
+
+    @Scheduled(fixedDelayString = "${expense.wal.snapshot-interval-ms:300000}")
+    public void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("Не удалось записать снимок", e);
+        }
+    }
+
+    // снимок таблиц users и expense; номер журнала берется до чтения таблиц, записи после него повторятся при старте.
+    // Номер не выше записей транзакций, которые еще идут: их строки могут закоммититься уже после чтения.
+    // Хранятся два последних снимка, журнал удаляется только до предыдущего, на случай если новый не прочитается
+    public void snapshot() throws IOException {
+        long seq = committedSeq();
+        if (seq <= snapshotSeq) {
+            return;
+        }
+        Path target = dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, seq, SNAPSHOT_SUFFIX));
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long count;
+        try {
+            count = snapshotTransaction.execute(status -> writeSnapshot(temp, seq));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        long previous = snapshotSeq;
+        snapshotSeq = seq;
+        for (Path old : listSnapshots()) {
+            if (snapshotSeq(old) < previous) {
+                Files.delete(old);
+            }
+        }
+        wal.deleteUpTo(previous);
+        log.info("Снимок {}: {} строк", seq, count);
+    }
+
+    // номер, до которого включительно все транзакции журнала завершены
+    private long committedSeq() {
+        journalLock.lock();
+        try {
+            Long oldestPending = pending.ceiling(Long.MIN_VALUE);
+            return oldestPending != null ? Math.min(wal.lastSeq(), oldestPending - 1) : wal.lastSeq();
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    // число строк в снимке
+    private long writeSnapshot(Path temp, long seq) {
+        long[] count = {0};
+        try (CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)), new CRC32C());
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(seq);
+            jdbc.query("SELECT id, username, password FROM users", rs -> {
+                try {
+                    out.writeByte(USER);
+                    writeUser(out, rs.getLong(1), rs.getString(2), rs.getString(3));
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            jdbc.query("SELECT id, title, amount, date, category, comment, user_id FROM expense", rs -> {
+                try {
+                    Date date = rs.getDate(4);
+                    long userId = rs.getLong(7);
+                    out.writeByte(SAVE_OWNED);
+                    writeRow(out, rs.getLong(1), rs.getString(2), rs.getDouble(3),
+                            date != null ? date.toLocalDate() : null, rs.getString(5), rs.getString(6),
+                            rs.wasNull() ? null : userId);
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.writeByte(0);
+            out.writeLong(count[0]);
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count[0];
+    }
+
+    @PreDestroy
+    public void close() {
+        // при штатной остановке снимок сокращает следующий старт до чтения одного файла
+        scheduledSnapshot();
+        wal.close();
+    }
+
+    // ========== СНИМКИ ==========
+
+    // номер журнала, до которого включительно данные взяты из снимка (0 - снимка нет)
+    private long loadSnapshot() throws IOException {
+        for (Path path : listSnapshots()) {
+            try {
+                return readSnapshot(path);
+            } catch (IOException | IllegalStateException e) {
+                log.warn("Снимок {} не читается, пробуем предыдущий: {}", path.getFileName(), e.getMessage());
+                jdbc.update("DELETE FROM expense");
+                jdbc.update("DELETE FROM users");
+            }
+        }
+        return 0;
+    }
+
+    private long readSnapshot(Path path) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path)), new CRC32C());
+             DataInputStream in = new DataInputStream(checked)) {
+            int version;
+            if (in.readInt() != SNAPSHOT_MAGIC || (version = in.readInt()) < 1 || version > SNAPSHOT_VERSION) {
+                throw new IllegalStateException("неизвестный формат снимка");
+            }
+            byte rowType = version == 1 ? SAVE : SAVE_OWNED;
+            long seq = in.readLong();
+            List<Object[]> batch = new ArrayList<>(INSERT_BATCH);
+            long count = 0;
+            byte type;
+            while ((type = in.readByte()) != 0) {
+                count++;
+                if (type == USER && version >= 3) {
+                    jdbc.update(UPSERT_USER, readUser(in));
+                    continue;
+                }
+                if (type != rowType) {
+                    throw new IllegalStateException("неизвестный тип строки снимка: " + type);
+                }
+                batch.add(readRow(in, rowType == SAVE_OWNED));
+                if (batch.size() == INSERT_BATCH) {
+                    jdbc.batchUpdate(INSERT, batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                jdbc.batchUpdate(INSERT, batch);
+            }
+            long expectedCount = in.readLong();
+            int actual = (int) checked.getChecksum().getValue();
+            if (in.readInt() != actual || expectedCount != count) {
+                throw new IllegalStateException("контрольная сумма снимка не совпадает");
+            }
+            return seq;
+        }
+    }
+
+    // от нового к старому
+    private List<Path> listSnapshots() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(DurableExpenseStore::snapshotSeq).reversed())
+                    .toList();
+        }
+    }
+
+    private static long snapshotSeq(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    // ========== ЖУРНАЛ ==========
+
+    private void apply(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte type = in.readByte();
+            if (type == SAVE || type == SAVE_OWNED) {
+                jdbc.update(UPSERT, readRow(in, type == SAVE_OWNED));
+            } else if (type == DELETE) {
+                jdbc.update("DELETE FROM expense WHERE id = ?", in.readLong());
+            } else if (type == USER) {
+                jdbc.update(UPSERT_USER, readUser(in));
+            } else if (type == DELETE_USER) {
+                jdbc.update("DELETE FROM users WHERE id = ?", in.readLong());
+            } else {
+                throw new IllegalStateException("неизвестный тип записи журнала: " + type);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // id после восстановления не должны пересечься с уже занятыми.
+    // Hibernate (pooled) выдает id из диапазона (значение - allocationSize, значение].
+    // id пользователей (IDENTITY) - и после владельцев расходов: журналы до версии 3 пользователей не хранят,
+    // и новый пользователь не должен получить чужие расходы
+    private void restartIdSequence() {
+        Long maxId = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM expense", Long.class);
+        jdbc.execute("ALTER SEQUENCE expense_seq RESTART WITH " + (maxId + Expense.ID_ALLOCATION_SIZE + 1));
+        Long maxUserId = jdbc.queryForObject("SELECT GREATEST((SELECT COALESCE(MAX(id), 0) FROM users), " +
+                "(SELECT COALESCE(MAX(user_id), 0) FROM expense))", Long.class);
+        jdbc.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (maxUserId + 1));
+    }
+
+    static byte[] encodeSave(Expense expense) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(SAVE_OWNED);
+            writeRow(out, expense.getId(), expense.getTitle(), expense.getAmount(), expense.getDate(),
+                    expense.getCategory(), expense.getComment(), expense.getUserId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encodeDelete(long id) {
+        return ByteBuffer.allocate(1 + Long.BYTES).put(DELETE).putLong(id).array();
+    }
+
+    static byte[] encodeUser(User user) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(USER);
+            writeUser(out, user.getId(), user.getUsername(), user.getPassword());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encodeDeleteUser(long id) {
+        return ByteBuffer.allocate(1 + Long.BYTES).put(DELETE_USER).putLong(id).array();
+    }
+
+    private static void writeUser(DataOutputStream out, long id, String username, String password) throws IOException {
+        out.writeLong(id);
+        writeString(out, username);
+        writeString(out, password);
+    }
+
+    // параметры для MERGE INTO users: id, username, password
+    private static Object[] readUser(DataInputStream in) throws IOException {
+        return new Object[]{in.readLong(), readString(in), readString(in)};
+    }
+
+    private static void writeRow(DataOutputStream out, long id, String title, double amount, LocalDate date,
+                                 String category, String comment, Long userId) throws IOException {
+        out.writeLong(id);
+        writeString(out, title);
+        out.writeDouble(amount);
+        out.writeLong(date != null ? date.toEpochDay() : NO_DATE);
+        writeString(out, category);
+        writeString(out, comment);
+        out.writeLong(userId != null ? userId : NO_USER);
+    }
+
+    // параметры для INSERT/MERGE: id, title, amount, date, category, comment, user_id.
+    // owned == false - строка старого формата без владельца
+    private static Object[] readRow(DataInputStream in, boolean owned) throws IOException {
+        long id = in.readLong();
+        String title = readString(in);
+        double amount = in.readDouble();
+        long day = in.readLong();
+        String category = readString(in);
+        String comment = readString(in);
+        long userId = owned ? in.readLong() : NO_USER;
+        return new Object[]{id, title, amount, day != NO_DATE ? Date.valueOf(LocalDate.ofEpochDay(day)) : null,
+                category, comment, userId != NO_USER ? userId : null};
+    }
+
+    // длина -1 означает null; writeUTF не подходит из-за ограничения в 64 КБ
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AnalyticsSummary;
+import com.example.expense.model.Expense;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// агрегаты по расходам, которые обновляются на каждой записи,
+// чтобы аналитика не перечитывала всю таблицу.
+// У каждого пользователя свой шард со своей блокировкой: запись одного не задерживает чтение другого,
+// а время ответа зависит только от числа категорий и дат этого пользователя
+@Component
+@ConditionalOnProperty(name = "expense.analytics.source", havingValue = "memory", matchIfMissing = true)
+public class ExpenseAggregates implements ExpenseAnalytics, ExpenseChangeListener {
+
+    public static final String NO_CATEGORY = "Без категории";
+
+    // для пользователя без расходов; только читается
+    private static final Shard EMPTY = new Shard();
+
+    private final ConcurrentHashMap<Long, Shard> shards = new ConcurrentHashMap<>();
+
+    @Override
+    public void onSaved(Expense previous, Expense saved) {
+        Shard shard = shardForWrite(saved.getUserId());
+        shard.lock.writeLock().lock();
+        try {
+            if (previous != null) {
+                shard.remove(previous);
+            }
+            shard.add(saved);
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(Expense deleted) {
+        Shard shard = shards.get(deleted.getUserId());
+        if (shard == null) {
+            return;
+        }
+        shard.lock.writeLock().lock();
+        try {
+            shard.remove(deleted);
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        shards.clear();
+    }
+
+    // сумма по категориям (копия, O(число категорий))
+    @Override
+    public Map<String, Double> getSumsByCategory(long userId) {
+        Shard shard = shard(userId);
+        shard.lock.readLock().lock();
+        try {
+            Map<String, Double> result = new HashMap<>();
+            shard.byCategory.forEach((category, value) -> result.put(category, value.sum));
+            return result;
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    // блокировка чтения повторно входимая, вложенные get* не ждут
+    @Override
+    public AnalyticsSummary getSummary(long userId) {
+        Shard shard = shard(userId);
+        shard.lock.readLock().lock();
+        try {
+            return new AnalyticsSummary(getSumsByCategory(userId), getTotal(userId), getAveragePerDay(userId));
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    // количество расходов по категориям
+    public Map<String, Long> getCountsByCategory(long userId) {
+        Shard shard = shard(userId);
+        shard.lock.readLock().lock();
+        try {
+            Map<String, Long> result = new HashMap<>();
+            shard.byCategory.forEach((category, value) -> result.put(category, value.count));
+            return result;
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public double getTotal(long userId) {
+        Shard shard = shard(userId);
+        shard.lock.readLock().lock();
+        try {
+            return shard.total;
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    public long getCount(long userId) {
+        Shard shard = shard(userId);
+        shard.lock.readLock().lock();
+        try {
+            return shard.count;
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    public LocalDate getMinDate(long userId) {
+        Shard shard = shard(userId);
+        shard.lock.readLock().lock();
+        try {
+            return shard.dateCounts.isEmpty() ? null : shard.dateCounts.firstKey();
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    public LocalDate getMaxDate(long userId) {
+        Shard shard = shard(userId);
+        shard.lock.readLock().lock();
+        try {
+            return shard.dateCounts.isEmpty() ? null : shard.dateCounts.lastKey();
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public double getAveragePerDay(long userId) {
+        Shard shard = shard(userId);
+        shard.lock.readLock().lock();
+        try {
+            if (shard.count == 0) return 0.0;
+            if (shard.dateCounts.isEmpty()) return shard.total;
+
+            long daysBetween = ChronoUnit.DAYS.between(shard.dateCounts.firstKey(), shard.dateCounts.lastKey()) + 1;
+            return shard.total / daysBetween;
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    private Shard shard(long userId) {
+        return shards.getOrDefault(userId, EMPTY);
+    }
+
+    // опустевший шард не удаляется: писатель, уже взявший его, иначе писал бы в потерянный объект
+    private Shard shardForWrite(Long userId) {
+        return shards.computeIfAbsent(userId, id -> new Shard());
+    }
+
+    static String categoryOf(Expense expense) {
+        return expense.getCategory() != null ? expense.getCategory() : NO_CATEGORY;
+    }
+
+    // агрегаты одного пользователя, поля - под lock
+    private static final class Shard {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final Map<String, CategoryTotal> byCategory = new HashMap<>();
+        // сколько расходов приходится на каждую дату - нужно для min/max после удалений
+        final NavigableMap<LocalDate, Integer> dateCounts = new TreeMap<>();
+        double total;
+        long count;
+
+        void add(Expense expense) {
+            CategoryTotal value = byCategory.computeIfAbsent(categoryOf(expense), c -> new CategoryTotal());
+            value.sum += expense.getAmount();
+            value.count++;
+
+            total += expense.getAmount();
+            count++;
+
+            if (expense.getDate() != null) {
+                dateCounts.merge(expense.getDate(), 1, Integer::sum);
+            }
+        }
+
+        void remove(Expense expense) {
+            String category = categoryOf(expense);
+            CategoryTotal value = byCategory.get(category);
+            if (value == null) {
+                return;
+            }
+
+            value.sum -= expense.getAmount();
+            value.count--;
+            if (value.count <= 0) {
+                byCategory.remove(category);
+            }
+
+            count--;
+            // при пустом шарде обнуляем сумму, чтобы не копить ошибку округления
+            total = count > 0 ? total - expense.getAmount() : 0.0;
+
+            if (expense.getDate() != null) {
+                dateCounts.computeIfPresent(expense.getDate(), (date, n) -> n > 1 ? n - 1 : null);
+            }
+        }
+    }
+
+    private static class CategoryTotal {
+        double sum;
+        long count;
+    }
+}
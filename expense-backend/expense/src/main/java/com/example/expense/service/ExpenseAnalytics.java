@@ -0,0 +1,31 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AnalyticsSummary;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+
+// источник аналитики для ExpenseService, выбирается свойством expense.analytics.source.
+// Все показатели считаются по расходам одного пользователя
+public interface ExpenseAnalytics {
+
+    // сумма по категориям, расходы без категории - под ключом ExpenseAggregates.NO_CATEGORY
+    Map<String, Double> getSumsByCategory(long userId);
+
+    double getTotal(long userId);
+
+    // средний расход в день между самой ранней и самой поздней датой
+    double getAveragePerDay(long userId);
+
+    // суммы по категориям за [startDate, endDate]; пусто, если источник не хранит дни -
+    // тогда ExpenseService берет итоги из rollup-таблиц
+    default Optional<Map<String, Double>> getSumsByCategoryBetween(long userId, LocalDate startDate, LocalDate endDate) {
+        return Optional.empty();
+    }
+
+    // три показателя сразу: источники в памяти читают их под одной блокировкой
+    default AnalyticsSummary getSummary(long userId) {
+        return new AnalyticsSummary(getSumsByCategory(userId), getTotal(userId), getAveragePerDay(userId));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+
+import java.util.List;
+
+// подписчик на изменения расходов, ExpenseService вызывает его после каждой записи.
+// У всех переданных расходов есть владелец (userId), строки без владельца слушатели не получают.
+// Обычные слушатели вызываются после коммита, слушатели с writesBeforeCommit() - внутри транзакции
+public interface ExpenseChangeListener {
+
+    // previous == null, если расход новый; владелец при изменении не меняется
+    void onSaved(Expense previous, Expense saved);
+
+    void onDeleted(Expense deleted);
+
+    // пачка новых расходов (POST /expenses/batch), одна транзакция
+    default void onSavedAll(List<Expense> saved) {
+        saved.forEach(expense -> onSaved(null, expense));
+    }
+
+    // один раз после того, как все слушатели обработали изменение (или пачку) и версия данных увеличена:
+    // аналитика к этому моменту уже учитывает изменение
+    default void afterChanges() {
+    }
+
+    // до коммита транзакции, меняющей расходы пользователя: строки могут стать видны в базе раньше,
+    // чем придет onSaved/onDeleted/onSavedAll. writeCompleted - после этих вызовов или после отката.
+    // Нужно слушателям, которые пересчитывают свое состояние из базы (ExpenseSketches)
+    default void writeStarted(long userId) {
+    }
+
+    default void writeCompleted(long userId) {
+    }
+
+    // сброс состояния перед перестроением при старте
+    default void reset() {
+    }
+
+    // true - onSaved/onDeleted/onSavedAll вызываются внутри транзакции, после flush и до коммита (журнал wal).
+    // Строка к этому моменту заблокирована, поэтому изменения одного id приходят в порядке коммитов.
+    // Исключение откатывает транзакцию; если не удался сам коммит, приходит обратное изменение
+    default boolean writesBeforeCommit() {
+        return false;
+    }
+
+    // получать ли при перестроении все строки таблицы через onSaved(null, ...).
+    // false для слушателей, которые не пересчитывают производные данные, а записывают сами изменения
+    default boolean replayOnRebuild() {
+        return true;
+    }
+}
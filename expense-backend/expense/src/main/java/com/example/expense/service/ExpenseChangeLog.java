@@ -0,0 +1,208 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.ExpenseChanges;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.model.Expense;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// журнал изменений для GET /expenses/changes: у каждого пользователя свой журнал,
+// каждая запись и удаление в нем получает номер seq.
+// Журнал уплотняется - на каждый id хранится только последнее изменение (удаление - tombstone),
+// и ограничен max-entries: самые старые выбрасываются, курсор до них получает ответ "перечитать все".
+// Все журналы вместе ограничены max-total-entries: сверх него выбрасываются самые старые записи
+// среди всех пользователей, и их курсоры тоже получают "перечитать все".
+// Живет в памяти, курсор содержит эпоху ExpenseDataVersion - после перезапуска старые курсоры недействительны
+@Component
+public class ExpenseChangeLog implements ExpenseChangeListener {
+
+    // view == null - расход удален; stamp - порядок добавления среди всех пользователей
+    private record Change(long seq, long stamp, long id, ExpenseView view) {
+    }
+
+    private final String epoch;
+    private final int maxEntries;
+    private final int maxTotalEntries;
+    private final ConcurrentHashMap<Long, Log> logs = new ConcurrentHashMap<>();
+    private final AtomicLong stamps = new AtomicLong();
+    // записи всех журналов по stamp -> владелец: отсюда берутся самые старые при превышении общего предела
+    private final ConcurrentSkipListMap<Long, Long> byStamp = new ConcurrentSkipListMap<>();
+    // размер byStamp: уменьшает тот, кто удалил запись из byStamp
+    private final AtomicInteger total = new AtomicInteger();
+
+    public ExpenseChangeLog(ExpenseDataVersion dataVersion,
+                            @Value("${expense.changes.max-entries:100000}") int maxEntries,
+                            @Value("${expense.changes.max-total-entries:1000000}") int maxTotalEntries) {
+        this.epoch = dataVersion.epoch();
+        this.maxEntries = maxEntries;
+        this.maxTotalEntries = maxTotalEntries;
+    }
+
+    @Override
+    public void onSaved(Expense previous, Expense saved) {
+        Log log = log(saved.getUserId());
+        synchronized (log) {
+            log.append(saved.getId(), view(saved));
+        }
+        trimTotal();
+    }
+
+    @Override
+    public void onDeleted(Expense deleted) {
+        Log log = log(deleted.getUserId());
+        synchronized (log) {
+            log.append(deleted.getId(), null);
+        }
+        trimTotal();
+    }
+
+    @Override
+    public void onSavedAll(List<Expense> saved) {
+        for (Expense expense : saved) {
+            Log log = log(expense.getUserId());
+            synchronized (log) {
+                log.append(expense.getId(), view(expense));
+            }
+        }
+        trimTotal();
+    }
+
+    // в журнал попадают только изменения после старта, таблицу он не повторяет
+    @Override
+    public boolean replayOnRebuild() {
+        return false;
+    }
+
+    // текущая позиция пользователя: с нее продолжает клиент, который только что перечитал список целиком
+    public String cursor(long userId) {
+        Log log = log(userId);
+        synchronized (log) {
+            return epoch + "-" + log.seq;
+        }
+    }
+
+    // изменения пользователя после курсора, не больше limit.
+    // Пусто - курсора нет, он от прошлого запуска или старше уплотненной части журнала: нужен полный список
+    public Optional<ExpenseChanges> since(long userId, String cursor, int limit) {
+        long from = decode(cursor);
+        Log log = log(userId);
+        synchronized (log) {
+            if (from < log.horizon || from > log.seq) {
+                return Optional.empty();
+            }
+            List<ExpenseView> changed = new ArrayList<>();
+            List<Long> deleted = new ArrayList<>();
+            long last = from;
+            for (Change change : log.bySeq.tailMap(from, false).values()) {
+                if (changed.size() + deleted.size() == limit) {
+                    return Optional.of(new ExpenseChanges(epoch + "-" + last, changed, deleted, true));
+                }
+                if (change.view() == null) {
+                    deleted.add(change.id());
+                } else {
+                    changed.add(change.view());
+                }
+                last = change.seq();
+            }
+            return Optional.of(new ExpenseChanges(epoch + "-" + log.seq, changed, deleted, false));
+        }
+    }
+
+    private Log log(long userId) {
+        return logs.computeIfAbsent(userId, Log::new);
+    }
+
+    // вне блокировки журнала: выбрасывает самые старые записи других пользователей
+    private void trimTotal() {
+        while (total.get() > maxTotalEntries) {
+            Map.Entry<Long, Long> oldest = byStamp.pollFirstEntry();
+            if (oldest == null) {
+                return;
+            }
+            total.decrementAndGet();
+            Log log = logs.get(oldest.getValue());
+            synchronized (log) {
+                log.evictUpTo(oldest.getKey());
+            }
+        }
+    }
+
+    // -1 - курсора нет или он от другого запуска
+    private long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return -1;
+        }
+        int separator = cursor.lastIndexOf('-');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("некорректный since");
+        }
+        long position;
+        try {
+            position = Long.parseLong(cursor.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("некорректный since");
+        }
+        return cursor.substring(0, separator).equals(epoch) ? position : -1;
+    }
+
+    private static ExpenseView view(Expense expense) {
+        return new ExpenseView(expense.getId(), expense.getTitle(), expense.getAmount(), expense.getDate(),
+                expense.getCategory(), expense.getComment());
+    }
+
+    // журнал одного пользователя; по seq - для выборки хвоста, по id - для уплотнения.
+    // Все поля - под synchronized (log)
+    private final class Log {
+        final long userId;
+        final TreeMap<Long, Change> bySeq = new TreeMap<>();
+        final Map<Long, Change> byId = new HashMap<>();
+        long seq;
+        // изменения с номером <= horizon выброшены
+        long horizon;
+
+        Log(long userId) {
+            this.userId = userId;
+        }
+
+        void append(long id, ExpenseView view) {
+            Change change = new Change(++seq, stamps.incrementAndGet(), id, view);
+            Change replaced = byId.put(id, change);
+            if (replaced != null) {
+                bySeq.remove(replaced.seq());
+                forget(replaced);
+            }
+            bySeq.put(change.seq(), change);
+            byStamp.put(change.stamp(), userId);
+            total.incrementAndGet();
+            while (bySeq.size() > maxEntries) {
+                evict(bySeq.firstEntry().getValue());
+            }
+        }
+
+        // stamp уже забран из byStamp; записи старше него забраны другими потоками, но еще не выброшены
+        void evictUpTo(long stamp) {
+            while (!bySeq.isEmpty() && bySeq.firstEntry().getValue().stamp() <= stamp) {
+                evict(bySeq.firstEntry().getValue());
+            }
+        }
+
+        private void evict(Change oldest) {
+            bySeq.remove(oldest.seq());
+            byId.remove(oldest.id());
+            horizon = oldest.seq();
+            forget(oldest);
+        }
+
+        private void forget(Change change) {
+            if (byStamp.remove(change.stamp()) != null) {
+                total.decrementAndGet();
+            }
+        }
+    }
+}
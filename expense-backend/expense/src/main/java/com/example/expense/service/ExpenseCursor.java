@@ -0,0 +1,57 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.ExpenseView;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// позиция в списке, отсортированном по (date DESC, id DESC).
+// в токене лежат дата и id последнего расхода на странице.
+// Поиск идет только по id (у расхода может не быть даты), его токен - один id: encodeId/decodeId
+public record ExpenseCursor(LocalDate date, long id) {
+
+    // курсор "до начала списка" - больше любой реальной пары (date, id)
+    public static final ExpenseCursor START = new ExpenseCursor(LocalDate.of(9999, 12, 31), Long.MAX_VALUE);
+
+    public static ExpenseCursor after(ExpenseView expense) {
+        return new ExpenseCursor(expense.date(), expense.id());
+    }
+
+    public String encode() {
+        String raw = date + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String encodeId(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // пустой токен - с самого нового; токен вида date|id тоже принимается, берется id
+    public static long decodeId(String token) {
+        if (token == null || token.isBlank()) {
+            return START.id();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            return Long.parseLong(raw.substring(raw.indexOf('|') + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("некорректный cursor");
+        }
+    }
+
+    public static ExpenseCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return START;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return new ExpenseCursor(LocalDate.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("некорректный cursor");
+        }
+    }
+}
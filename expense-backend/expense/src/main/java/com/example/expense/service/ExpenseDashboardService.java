@@ -0,0 +1,83 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AnalyticsSummary;
+import com.example.expense.dto.Dashboard;
+import com.example.expense.dto.ExpenseView;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// GET /expenses/dashboard: последние расходы читаются из базы на ограниченном пуле,
+// пока поток запроса берет аналитику одним снимком. Все части собраны на одной версии данных:
+// если между началом и концом прошла запись этого пользователя, собираем заново
+@Service
+public class ExpenseDashboardService {
+    // под непрерывной записью после стольких попыток отдаем последнюю сборку
+    static final int MAX_ATTEMPTS = 3;
+
+    private final ExpenseService service;
+    private final ExpenseDataVersion dataVersion;
+    private final ThreadPoolExecutor executor;
+
+    public ExpenseDashboardService(ExpenseService service,
+                                   ExpenseDataVersion dataVersion,
+                                   @Value("${expense.dashboard.threads:4}") int threads,
+                                   @Value("${expense.dashboard.queue-capacity:100}") int queueCapacity) {
+        this.service = service;
+        this.dataVersion = dataVersion;
+        AtomicInteger counter = new AtomicInteger();
+        // очередь полна - часть считает сам поток запроса, а не отказ
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "expense-dashboard-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    public Dashboard getDashboard(long userId) {
+        Dashboard dashboard;
+        int attempts = 0;
+        do {
+            dashboard = collect(userId);
+            attempts++;
+        } while (!dashboard.version().equals(dataVersion.tag(userId)) && attempts < MAX_ATTEMPTS);
+        return dashboard;
+    }
+
+    private Dashboard collect(long userId) {
+        String version = dataVersion.tag(userId);
+        CompletableFuture<List<ExpenseView>> recent =
+                CompletableFuture.supplyAsync(() -> service.getRecentExpenses(userId), executor);
+        AnalyticsSummary analytics = service.getAnalyticsSummary(userId);
+        // категории - ключи той же разбивки, без отдельного DISTINCT по таблице
+        List<String> categories = analytics.byCategory().keySet().stream()
+                .filter(category -> !ExpenseAggregates.NO_CATEGORY.equals(category))
+                .sorted()
+                .toList();
+        return new Dashboard(version, analytics.byCategory(), analytics.total(), categories,
+                join(recent), analytics.averagePerDay());
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
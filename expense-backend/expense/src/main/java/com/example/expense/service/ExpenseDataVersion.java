@@ -0,0 +1,34 @@
+package com.example.expense.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// версии данных по пользователям: растут после каждой закоммиченной записи владельца, из них строятся ETag
+// для GET /expenses/**. Запись одного пользователя не сбрасывает сохраненные ответы остальных.
+// Увеличивается после слушателей, поэтому ответ с этой версией уже видит их состояние
+@Component
+public class ExpenseDataVersion {
+    // после перезапуска счетчики начинаются заново, эпоха не дает совпасть старым ETag
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    // счетчик появляется при первой записи пользователя, до нее версия 0
+    private final ConcurrentHashMap<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public void increment(long userId) {
+        versions.computeIfAbsent(userId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    public long current(long userId) {
+        AtomicLong version = versions.get(userId);
+        return version != null ? version.get() : 0;
+    }
+
+    public String epoch() {
+        return epoch;
+    }
+
+    public String tag(long userId) {
+        return epoch + "-" + current(userId);
+    }
+}
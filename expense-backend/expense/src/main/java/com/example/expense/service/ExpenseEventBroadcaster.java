@@ -0,0 +1,405 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.model.Expense;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// рассылка изменений подписчикам GET /expenses/events (Server-Sent Events).
+// Соединения асинхронные, поток на соединение не держится: отправкой занимается небольшой пул,
+// и у каждого подписчика в работе не больше одной задачи.
+// Буфер подписчика ограничен: если клиент не успевает читать, накопленное выбрасывается
+// и уходит одно событие resync (перечитать список). Итоги по категориям не копятся - только последние.
+// Подписчик получает изменения только своего пользователя; итоги пересчитываются только для тех,
+// у кого были записи.
+// Запись в соединение блокирующая: если одна отправка висит дольше send-timeout (клиент не читает, окно TCP полно),
+// подписчик отключается, а пул получает запасной поток на время, пока Tomcat не прервет зависшую запись.
+// Запасных потоков не больше, чем позволяет max-sender-threads: дальше зависшие подписчики только отключаются
+@Component
+public class ExpenseEventBroadcaster implements ExpenseChangeListener {
+
+    private record Event(String name, Object data) {
+    }
+
+    private final ExpenseAnalytics analytics;
+    private final int bufferSize;
+    // свободные места для подписчиков: место занимается до создания соединения и освобождается при удалении
+    private final Semaphore slots;
+    private final int maxSenderThreads;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // те же подписчики по пользователям: запись рассылается только подписчикам владельца
+    private final ConcurrentHashMap<Long, Set<Subscriber>> byUser = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor sender;
+    // пользователи с записями после последнего пересчета итогов
+    private final Set<Long> changedUsers = ConcurrentHashMap.newKeySet();
+    // пересчет итогов уже запланирован: серия записей дает один пересчет
+    private final AtomicBoolean totalsPending = new AtomicBoolean();
+
+    public ExpenseEventBroadcaster(ExpenseAnalytics analytics,
+                                   @Value("${expense.events.buffer-size:256}") int bufferSize,
+                                   @Value("${expense.events.max-subscribers:10000}") int maxSubscribers,
+                                   @Value("${expense.events.timeout:30m}") Duration timeout,
+                                   @Value("${expense.events.sender-threads:4}") int senderThreads,
+                                   @Value("${expense.events.send-timeout:5s}") Duration sendTimeout,
+                                   @Value("${expense.events.max-sender-threads:8}") int maxSenderThreads) {
+        this.analytics = analytics;
+        this.bufferSize = bufferSize;
+        this.slots = new Semaphore(maxSubscribers);
+        this.maxSenderThreads = Math.max(senderThreads, maxSenderThreads);
+        this.timeoutMillis = timeout.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        AtomicInteger counter = new AtomicInteger();
+        // в очереди не больше задачи на подписчика и одного пересчета итогов
+        this.sender = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxSubscribers + 1),
+                task -> {
+                    Thread thread = new Thread(task, "expense-events-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // RejectedExecutionException - подписчиков уже max-subscribers (503)
+    public SseEmitter subscribe(long userId) {
+        return subscribe(userId, () -> new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter subscribe(long userId, Supplier<SseEmitter> emitters) {
+        // проверка и занятие места - одна операция: параллельные подписки не превысят max-subscribers
+        if (!slots.tryAcquire()) {
+            throw new RejectedExecutionException("слишком много подписчиков, повторите позже");
+        }
+        Subscriber subscriber;
+        try {
+            subscriber = new Subscriber(userId, emitters.get());
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        // место освобождает remove - ровно один раз, когда подписчик уходит из набора
+        subscribers.add(subscriber);
+        try {
+            SseEmitter emitter = subscriber.emitter;
+            emitter.onCompletion(() -> remove(subscriber));
+            emitter.onError(error -> remove(subscriber));
+            // по таймауту закрываем поток, EventSource переподключится сам
+            emitter.onTimeout(emitter::complete);
+            // добавление и удаление - атомарно с картой, чтобы не потерять подписчика в опустевшем наборе
+            byUser.compute(userId, (id, set) -> {
+                Set<Subscriber> result = set != null ? set : ConcurrentHashMap.newKeySet();
+                result.add(subscriber);
+                return result;
+            });
+
+            // сразу текущие итоги: не ждать первой записи
+            synchronized (subscriber) {
+                subscriber.totals = analytics.getSumsByCategory(userId);
+            }
+        } catch (RuntimeException e) {
+            remove(subscriber);
+            throw e;
+        }
+        schedule(subscriber);
+        return subscriber.emitter;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void onSaved(Expense previous, Expense saved) {
+        publish(saved.getUserId(), new Event(previous == null ? "created" : "updated", view(saved)));
+    }
+
+    @Override
+    public void onDeleted(Expense deleted) {
+        publish(deleted.getUserId(), new Event("deleted", Map.of("id", deleted.getId())));
+    }
+
+    // пачка больше буфера все равно переполнила бы его - сразу resync
+    @Override
+    public void onSavedAll(List<Expense> saved) {
+        Map<Long, List<Expense>> owners = new HashMap<>();
+        saved.forEach(expense -> owners.computeIfAbsent(expense.getUserId(), id -> new ArrayList<>()).add(expense));
+        owners.forEach((userId, expenses) -> {
+            if (expenses.size() <= bufferSize) {
+                expenses.forEach(expense -> publish(userId, new Event("created", view(expense))));
+                return;
+            }
+            for (Subscriber subscriber : subscribersOf(userId)) {
+                synchronized (subscriber) {
+                    subscriber.events.clear();
+                    subscriber.overflow = true;
+                }
+                schedule(subscriber);
+            }
+            markChanged(userId);
+        });
+    }
+
+    // аналитика уже учла изменение; читаем ее в пуле, а не в потоке записи
+    @Override
+    public void afterChanges() {
+        if (!changedUsers.isEmpty() && totalsPending.compareAndSet(false, true)) {
+            try {
+                sender.execute(this::refreshTotals);
+            } catch (RejectedExecutionException e) {
+                // пул остановлен или очередь полна: запись уже сохранена, итоги уйдут со следующей
+                totalsPending.set(false);
+            }
+        }
+    }
+
+    // события пишутся, а не пересчитываются из таблицы
+    @Override
+    public boolean replayOnRebuild() {
+        return false;
+    }
+
+    // комментарий раз в интервал: прокси не закрывают молчащее соединение,
+    // а ушедший клиент обнаруживается по ошибке записи
+    @Scheduled(fixedDelayString = "${expense.events.heartbeat-interval-ms:15000}",
+            initialDelayString = "${expense.events.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            synchronized (subscriber) {
+                subscriber.heartbeat = true;
+            }
+            schedule(subscriber);
+        }
+    }
+
+    // зависшая отправка занимает поток пула; остальных подписчиков обслуживает запасной поток,
+    // если пул еще не дорос до max-sender-threads. Подписчик отключается в любом случае
+    @Scheduled(fixedDelayString = "${expense.events.stall-check-interval-ms:1000}")
+    public void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            long started = subscriber.sendStarted;
+            if (started != 0 && now - started > sendTimeoutNanos
+                    && subscriber.state.compareAndSet(Subscriber.ACTIVE, Subscriber.CLAIMED)) {
+                remove(subscriber);
+                subscriber.spare = growSender();
+                subscriber.state.set(Subscriber.STALLED);
+                // отправка могла закончиться, пока добавляли поток: тогда drain этого уже не увидит
+                if (subscriber.sendStarted == 0) {
+                    release(subscriber);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        sender.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            remove(subscriber);
+            subscriber.emitter.complete();
+        }
+    }
+
+    int senderPoolSize() {
+        return sender.getMaximumPoolSize();
+    }
+
+    private void publish(long userId, Event event) {
+        Set<Subscriber> recipients = subscribersOf(userId);
+        if (recipients.isEmpty()) {
+            return;
+        }
+        markChanged(userId);
+        for (Subscriber subscriber : recipients) {
+            synchronized (subscriber) {
+                if (subscriber.overflow) {
+                    // все равно перечитает список
+                    continue;
+                }
+                if (subscriber.events.size() < bufferSize) {
+                    subscriber.events.add(event);
+                } else {
+                    subscriber.events.clear();
+                    subscriber.overflow = true;
+                }
+            }
+            schedule(subscriber);
+        }
+    }
+
+    private void markChanged(long userId) {
+        changedUsers.add(userId);
+    }
+
+    private void refreshTotals() {
+        totalsPending.set(false);
+        for (Iterator<Long> users = changedUsers.iterator(); users.hasNext(); ) {
+            long userId = users.next();
+            users.remove();
+            Set<Subscriber> recipients = subscribersOf(userId);
+            if (recipients.isEmpty()) {
+                continue;
+            }
+            Map<String, Double> totals = analytics.getSumsByCategory(userId);
+            for (Subscriber subscriber : recipients) {
+                synchronized (subscriber) {
+                    subscriber.totals = totals;
+                }
+                schedule(subscriber);
+            }
+        }
+    }
+
+    private Set<Subscriber> subscribersOf(long userId) {
+        return byUser.getOrDefault(userId, Set.of());
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            slots.release();
+        }
+        byUser.computeIfPresent(subscriber.userId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            try {
+                sender.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                // пул остановлен
+                subscriber.scheduled.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            List<SseEmitter.SseEventBuilder> batch;
+            while (subscriber.state.get() == Subscriber.ACTIVE && !(batch = subscriber.take()).isEmpty()) {
+                for (SseEmitter.SseEventBuilder event : batch) {
+                    subscriber.sendStarted = System.nanoTime();
+                    subscriber.emitter.send(event);
+                    subscriber.sendStarted = 0;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // клиент ушел или поток уже закрыт
+            remove(subscriber);
+            return;
+        } finally {
+            subscriber.sendStarted = 0;
+            subscriber.scheduled.set(false);
+            if (subscriber.state.get() == Subscriber.STALLED) {
+                release(subscriber);
+            }
+        }
+        // событие могло прийти между последней выборкой и сбросом флага
+        if (subscriber.state.get() == Subscriber.ACTIVE && subscriber.hasPending()) {
+            schedule(subscriber);
+        }
+    }
+
+    // зависшая запись закончилась: запасной поток больше не нужен, соединение закрываем.
+    // Вызывают и drain, и dropStalledSubscribers - срабатывает один раз
+    private void release(Subscriber subscriber) {
+        if (subscriber.released.compareAndSet(false, true)) {
+            if (subscriber.spare) {
+                shrinkSender();
+            }
+            subscriber.emitter.completeWithError(new IOException("клиент не читает события"));
+        }
+    }
+
+    // сначала максимум, потом ядро: ядро не может превышать максимум.
+    // false - пул уже max-sender-threads, зависшая запись ждет Tomcat без замены
+    private synchronized boolean growSender() {
+        int size = sender.getMaximumPoolSize() + 1;
+        if (size > maxSenderThreads) {
+            return false;
+        }
+        sender.setMaximumPoolSize(size);
+        sender.setCorePoolSize(size);
+        return true;
+    }
+
+    private synchronized void shrinkSender() {
+        int size = sender.getMaximumPoolSize() - 1;
+        sender.setCorePoolSize(size);
+        sender.setMaximumPoolSize(size);
+    }
+
+    private static ExpenseView view(Expense expense) {
+        return new ExpenseView(expense.getId(), expense.getTitle(), expense.getAmount(), expense.getDate(),
+                expense.getCategory(), expense.getComment());
+    }
+
+    private static final class Subscriber {
+        static final int ACTIVE = 0;
+        // отправка зависла, пул расширяется
+        static final int CLAIMED = 1;
+        // запасной поток добавлен, ждем окончания зависшей записи
+        static final int STALLED = 2;
+
+        final long userId;
+        final SseEmitter emitter;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        // System.nanoTime() начала текущей отправки, 0 - не отправляем
+        volatile long sendStarted;
+        // не ACTIVE - отправка зависла дольше send-timeout: подписчик отключен, ему больше ничего не шлем
+        final AtomicInteger state = new AtomicInteger(ACTIVE);
+        final AtomicBoolean released = new AtomicBoolean();
+        // для подписчика добавлен запасной поток; пишется до перехода в STALLED
+        volatile boolean spare;
+        // дальше - под synchronized (this)
+        final ArrayDeque<Event> events = new ArrayDeque<>();
+        boolean overflow;
+        Map<String, Double> totals;
+        boolean heartbeat;
+
+        Subscriber(long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        synchronized boolean hasPending() {
+            return overflow || !events.isEmpty() || totals != null || heartbeat;
+        }
+
+        // все, что накопилось, в порядке отправки; heartbeat - только если больше нечего слать
+        synchronized List<SseEmitter.SseEventBuilder> take() {
+            List<SseEmitter.SseEventBuilder> batch = new ArrayList<>(events.size() + 2);
+            if (overflow) {
+                batch.add(SseEmitter.event().name("resync").data(Map.of()));
+                overflow = false;
+            }
+            for (Event event : events) {
+                batch.add(SseEmitter.event().name(event.name()).data(event.data()));
+            }
+            events.clear();
+            if (totals != null) {
+                batch.add(SseEmitter.event().name("totals").data(totals));
+                totals = null;
+            }
+            if (heartbeat && batch.isEmpty()) {
+                batch.add(SseEmitter.event().comment("heartbeat"));
+            }
+            heartbeat = false;
+            return batch;
+        }
+    }
+}
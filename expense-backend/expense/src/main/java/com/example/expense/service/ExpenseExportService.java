@@ -0,0 +1,93 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+import com.example.expense.repository.ExpenseRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// выгрузка расходов построчно: сущности читаются курсором и сразу отсоединяются,
+// поэтому память не растет с размером таблицы
+@Service
+public class ExpenseExportService {
+    private static final String CSV_HEADER = "id,title,amount,date,category,comment\n";
+
+    private final ExpenseRepository repository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    public ExpenseExportService(ExpenseRepository repository, EntityManager entityManager, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    // те же ветки фильтра, что и в ExpenseService.filterExpenses, только расходы userId; возвращает число строк
+    @Transactional(readOnly = true)
+    public long export(long userId, String category, LocalDate startDate, LocalDate endDate,
+                       ExportFormat format, Writer writer) throws IOException {
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+        }
+
+        long count = 0;
+        try (Stream<Expense> rows = stream(userId, category, startDate, endDate)) {
+            Iterator<Expense> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                Expense expense = iterator.next();
+                if (format == ExportFormat.CSV) {
+                    writeCsv(expense, writer);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(expense));
+                    writer.write('\n');
+                }
+                entityManager.detach(expense);
+                count++;
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    private Stream<Expense> stream(long userId, String category, LocalDate startDate, LocalDate endDate) {
+        return switch (FilterBranch.of(category, startDate, endDate)) {
+            case CATEGORY_PERIOD -> repository.streamByCategoryAndPeriod(userId, category, startDate, endDate);
+            case CATEGORY -> repository.streamByCategory(userId, category);
+            case PERIOD -> repository.streamByPeriod(userId, startDate, endDate);
+            case ALL -> repository.streamAll(userId);
+        };
+    }
+
+    private static void writeCsv(Expense expense, Writer writer) throws IOException {
+        writer.write(String.valueOf(expense.getId()));
+        writer.write(',');
+        writer.write(csv(expense.getTitle()));
+        writer.write(',');
+        writer.write(String.valueOf(expense.getAmount()));
+        writer.write(',');
+        writer.write(expense.getDate() != null ? expense.getDate().toString() : "");
+        writer.write(',');
+        writer.write(csv(expense.getCategory()));
+        writer.write(',');
+        writer.write(csv(expense.getComment()));
+        writer.write('\n');
+    }
+
+    // экранирование по RFC 4180
+    static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+// групповая запись POST /expenses: новые расходы копятся в ограниченной очереди,
+// один поток забирает их пачками (до max-batch или пока не выйдет linger) и вставляет одной транзакцией.
+// Каждый вызывающий получает свой расход с id, когда его пачка закоммичена
+@Component
+@ConditionalOnProperty(name = "expense.write.group-commit", havingValue = "true", matchIfMissing = true)
+public class ExpenseGroupCommitWriter {
+
+    private record PendingWrite(Expense expense, CompletableFuture<Expense> result) {
+    }
+
+    private final ExpenseIngestService ingestService;
+    private final BlockingQueue<PendingWrite> queue;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final Thread writer;
+    // проверка running и постановка в очередь - под одним замком со stop(): после остановки в очередь не попадет ничего
+    private final ReentrantLock lifecycle = new ReentrantLock();
+    private volatile boolean running = true;
+
+    public ExpenseGroupCommitWriter(ExpenseIngestService ingestService,
+                                    @Value("${expense.write.queue-capacity:10000}") int queueCapacity,
+                                    @Value("${expense.write.max-batch:256}") int maxBatch,
+                                    @Value("${expense.write.linger:2ms}") Duration linger) {
+        this.ingestService = ingestService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        this.lingerNanos = linger.toNanos();
+        this.writer = new Thread(this::run, "expense-group-commit");
+        this.writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    // оставшиеся в очереди записи дописываются до остановки; что не успели за 10 с - завершаются ошибкой
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        lifecycle.lock();
+        try {
+            running = false;
+        } finally {
+            lifecycle.unlock();
+        }
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        failQueued();
+    }
+
+    // RejectedExecutionException - очередь полна (429), IllegalStateException - запись остановлена (503)
+    public CompletableFuture<Expense> submit(long userId, Expense expense) {
+        // Если дата не указана, ставим сегодняшнюю (как в ExpenseService.save)
+        if (expense.getDate() == null) {
+            expense.setDate(LocalDate.now());
+        }
+        expense.setUserId(userId);
+        PendingWrite write = new PendingWrite(expense, new CompletableFuture<>());
+        lifecycle.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("прием расходов остановлен");
+            }
+            if (!queue.offer(write)) {
+                throw new RejectedExecutionException("очередь записи переполнена, повторите позже");
+            }
+        } finally {
+            lifecycle.unlock();
+        }
+        return write.result();
+    }
+
+    private void failQueued() {
+        PendingWrite write;
+        while ((write = queue.poll()) != null) {
+            write.result().completeExceptionally(new IllegalStateException("прием расходов остановлен"));
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // забираем то, что уже ждет, и досыпаем до конца linger
+                long deadline = System.nanoTime() + lingerNanos;
+                queue.drainTo(batch, maxBatch - batch.size());
+                while (batch.size() < maxBatch) {
+                    PendingWrite next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(write -> write.result().completeExceptionally(e));
+                failQueued();
+                return;
+            } catch (RuntimeException | Error e) {
+                // никто из ожидающих не должен зависнуть
+                batch.forEach(write -> write.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        List<Expense> expenses = new ArrayList<>(batch.size());
+        batch.forEach(write -> expenses.add(write.expense()));
+        try {
+            ingestService.insertAll(expenses);
+            batch.forEach(write -> write.result().complete(write.expense()));
+        } catch (RuntimeException e) {
+            // пачка откатилась целиком: пишем по одному, чтобы ошибку получили только авторы плохих строк
+            for (PendingWrite write : batch) {
+                write.expense().setId(null);
+                try {
+                    ingestService.insertAll(List.of(write.expense()));
+                    write.result().complete(write.expense());
+                } catch (RuntimeException single) {
+                    write.result().completeExceptionally(single);
+                }
+            }
+        }
+    }
+}
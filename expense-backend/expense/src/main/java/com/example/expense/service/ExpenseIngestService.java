@@ -0,0 +1,208 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.BatchResult;
+import com.example.expense.dto.BatchResult.ItemError;
+import com.example.expense.model.Expense;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// пакетная загрузка расходов: JSON-массив или NDJSON читается потоком
+// и вставляется пачками, каждая пачка - одна транзакция и один JDBC batch
+@Service
+public class ExpenseIngestService {
+    private static final Logger log = LoggerFactory.getLogger(ExpenseIngestService.class);
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ExpenseRollups rollups;
+    private final List<ExpenseChangeListener> listeners;
+    private final List<ExpenseChangeListener> journals;
+    private final ExpenseDataVersion dataVersion;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    public ExpenseIngestService(EntityManager entityManager,
+                                PlatformTransactionManager transactionManager,
+                                ExpenseRollups rollups,
+                                List<ExpenseChangeListener> listeners,
+                                ExpenseDataVersion dataVersion,
+                                ObjectMapper objectMapper,
+                                @Value("${expense.ingest.chunk-size:500}") int chunkSize) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rollups = rollups;
+        this.listeners = listeners.stream().filter(listener -> !listener.writesBeforeCommit()).toList();
+        this.journals = listeners.stream().filter(ExpenseChangeListener::writesBeforeCommit).toList();
+        this.dataVersion = dataVersion;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    // все расходы пачки принадлежат пользователю userId
+    public BatchResult ingest(long userId, InputStream body) throws IOException {
+        List<ItemError> errors = new ArrayList<>();
+        List<Expense> chunk = new ArrayList<>(chunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+        int received = 0;
+        int inserted = 0;
+
+        // readValues сам разворачивает JSON-массив верхнего уровня и понимает NDJSON
+        try (MappingIterator<Expense> items = objectMapper.readerFor(Expense.class).readValues(body)) {
+            while (true) {
+                Expense expense;
+                try {
+                    if (!items.hasNextValue()) {
+                        break;
+                    }
+                    expense = items.nextValue();
+                } catch (JsonMappingException e) {
+                    // элемент с неверными полями - пропускаем, остальные читаем дальше
+                    errors.add(new ItemError(received++, "не удалось разобрать: " + e.getOriginalMessage()));
+                    continue;
+                } catch (IOException e) {
+                    // синтаксическая ошибка - дальше разобрать поток нельзя
+                    errors.add(new ItemError(received++, "некорректный JSON: " + e.getMessage()));
+                    break;
+                }
+
+                int index = received++;
+                String error = validate(expense);
+                if (error != null) {
+                    errors.add(new ItemError(index, error));
+                    continue;
+                }
+
+                expense.setUserId(userId);
+                chunk.add(expense);
+                chunkIndexes.add(index);
+                if (chunk.size() == chunkSize) {
+                    inserted += flushChunk(chunk, chunkIndexes, errors);
+                }
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            inserted += flushChunk(chunk, chunkIndexes, errors);
+        }
+        return new BatchResult(received, inserted, errors);
+    }
+
+    // те же правила, что и в ExpenseService.save, плюс проверка обязательных полей
+    static String validate(Expense expense) {
+        if (expense == null) {
+            return "пустой элемент";
+        }
+        if (expense.getId() != null) {
+            return "id задается сервером";
+        }
+        if (expense.getTitle() == null || expense.getTitle().trim().isEmpty()) {
+            return "название не может быть пустым";
+        }
+        if (!Double.isFinite(expense.getAmount()) || expense.getAmount() <= 0) {
+            return "сумма должна быть положительной";
+        }
+        if (expense.getDate() == null) {
+            expense.setDate(LocalDate.now());
+        }
+        return null;
+    }
+
+    private int flushChunk(List<Expense> chunk, List<Integer> indexes, List<ItemError> errors) {
+        try {
+            insertAll(new ArrayList<>(chunk));
+            return chunk.size();
+        } catch (RuntimeException e) {
+            // пачка откатилась целиком: повторяем по одному, ошибку получают только элементы, которые не вставились
+            return insertEach(chunk, indexes, errors);
+        } finally {
+            chunk.clear();
+            indexes.clear();
+        }
+    }
+
+    private int insertEach(List<Expense> chunk, List<Integer> indexes, List<ItemError> errors) {
+        int inserted = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            Expense expense = chunk.get(i);
+            // id, выданный в откатившейся транзакции
+            expense.setId(null);
+            try {
+                insertAll(List.of(expense));
+                inserted++;
+            } catch (RuntimeException e) {
+                errors.add(new ItemError(indexes.get(i), "ошибка записи: " + e.getMessage()));
+            }
+        }
+        return inserted;
+    }
+
+    // вставка пачки новых расходов одной транзакцией (один JDBC batch), журнал - последним шагом транзакции,
+    // остальные слушатели - после коммита. Владелец уже задан; в пачке групповой записи бывают расходы
+    // разных пользователей. Исключение означает только откат транзакции: после коммита строки уже в базе,
+    // и повтор вставки (ExpenseGroupCommitWriter) их бы задвоил
+    public void insertAll(List<Expense> expenses) {
+        List<Long> owners = expenses.stream().map(Expense::getUserId).distinct().toList();
+        listeners.forEach(listener -> owners.forEach(listener::writeStarted));
+        try {
+            insertAndNotify(expenses, owners);
+        } finally {
+            listeners.forEach(listener -> owners.forEach(listener::writeCompleted));
+        }
+    }
+
+    private void insertAndNotify(List<Expense> expenses, List<Long> owners) {
+        boolean[] journaled = {false};
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Expense expense : expenses) {
+                    entityManager.persist(expense);
+                }
+                entityManager.flush();
+                entityManager.clear();
+                rollups.addAll(expenses);
+                journals.forEach(journal -> journal.onSavedAll(expenses));
+                journaled[0] = true;
+            });
+        } catch (RuntimeException e) {
+            // записи уже в журнале, а коммит не удался: отменяем их там же
+            if (journaled[0]) {
+                try {
+                    journals.forEach(journal -> expenses.forEach(journal::onDeleted));
+                } catch (RuntimeException undo) {
+                    e.addSuppressed(undo);
+                }
+            }
+            throw e;
+        }
+        for (ExpenseChangeListener listener : listeners) {
+            try {
+                listener.onSavedAll(expenses);
+            } catch (RuntimeException e) {
+                log.error("Слушатель {} не обработал {} закоммиченных расходов", listener.getClass().getSimpleName(),
+                        expenses.size(), e);
+            }
+        }
+        owners.forEach(dataVersion::increment);
+        for (ExpenseChangeListener listener : listeners) {
+            try {
+                listener.afterChanges();
+            } catch (RuntimeException e) {
+                log.error("Слушатель {} упал в afterChanges", listener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
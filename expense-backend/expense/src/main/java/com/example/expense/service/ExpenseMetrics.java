@@ -0,0 +1,50 @@
+package com.example.expense.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+// время и размер выборок сервиса с тегом ветки фильтра.
+// HTTP-запросы, методы репозиториев и пул Hikari Spring Boot Actuator меряет сам
+@Component
+public class ExpenseMetrics {
+    static final String QUERY_TIMER = "expense.query";
+    static final String QUERY_ROWS = "expense.query.rows";
+
+    private final MeterRegistry registry;
+
+    public ExpenseMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // упавшая выборка тоже попадает в таймер: outcome=error и класс исключения (как у http.server.requests)
+    public <T> List<T> timeQuery(String operation, FilterBranch branch, Supplier<List<T>> query) {
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            List<T> rows = query.get();
+            DistributionSummary.builder(QUERY_ROWS)
+                    .tag("operation", operation)
+                    .tag("branch", branch.tag())
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(rows.size());
+            return rows;
+        } catch (RuntimeException | Error e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(QUERY_TIMER)
+                    .tag("operation", operation)
+                    .tag("branch", branch.tag())
+                    .tag("outcome", "none".equals(exception) ? "success" : "error")
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+}
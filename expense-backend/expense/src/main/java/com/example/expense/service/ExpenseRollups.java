@@ -0,0 +1,241 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.DailyCategoryTotal;
+import com.example.expense.dto.PeriodAnalytics;
+import com.example.expense.dto.PeriodAnalytics.Bucket;
+import com.example.expense.dto.PeriodAnalytics.Granularity;
+import com.example.expense.model.Expense;
+import com.example.expense.model.ExpenseDailyRollup;
+import com.example.expense.model.ExpenseMonthlyRollup;
+import com.example.expense.repository.ExpenseDailyRollupRepository;
+import com.example.expense.repository.ExpenseMonthlyRollupRepository;
+import com.example.expense.repository.ExpenseRepository;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+// суммы по дням и месяцам в отдельных таблицах, отдельно по каждому пользователю.
+// пишутся в той же транзакции, что и ExpenseService.save/delete
+@Component
+public class ExpenseRollups {
+    private static final String INSERT_DAY = "INSERT INTO expense_daily_rollup " +
+            "(user_id, bucket_day, category, total, expense_count) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_MONTH = "INSERT INTO expense_monthly_rollup " +
+            "(user_id, bucket_month, category, total, expense_count) VALUES (?, ?, ?, ?, ?)";
+
+    private final ExpenseDailyRollupRepository dailyRepository;
+    private final ExpenseMonthlyRollupRepository monthlyRepository;
+    private final ExpenseRepository expenseRepository;
+    private final JdbcTemplate jdbc;
+
+    public ExpenseRollups(ExpenseDailyRollupRepository dailyRepository,
+                          ExpenseMonthlyRollupRepository monthlyRepository,
+                          ExpenseRepository expenseRepository,
+                          JdbcTemplate jdbc) {
+        this.dailyRepository = dailyRepository;
+        this.monthlyRepository = monthlyRepository;
+        this.expenseRepository = expenseRepository;
+        this.jdbc = jdbc;
+    }
+
+    public void add(Expense expense) {
+        apply(expense, 1);
+    }
+
+    public void remove(Expense expense) {
+        apply(expense, -1);
+    }
+
+    // пачка новых расходов: одно обновление на (пользователь, день, категория), а не на каждую строку
+    public void addAll(List<Expense> expenses) {
+        Map<String, ExpenseDailyRollup> days = new LinkedHashMap<>();
+        Map<String, ExpenseMonthlyRollup> months = new LinkedHashMap<>();
+
+        for (Expense expense : expenses) {
+            if (expense.getDate() == null || expense.getUserId() == null) {
+                continue;
+            }
+            Long userId = expense.getUserId();
+            LocalDate day = expense.getDate();
+            LocalDate month = day.withDayOfMonth(1);
+            String category = ExpenseAggregates.categoryOf(expense);
+
+            ExpenseDailyRollup daily = days.computeIfAbsent(userId + "|" + day + "|" + category,
+                    key -> new ExpenseDailyRollup(userId, day, category, 0.0, 0));
+            daily.setTotal(daily.getTotal() + expense.getAmount());
+            daily.setExpenseCount(daily.getExpenseCount() + 1);
+
+            ExpenseMonthlyRollup monthly = months.computeIfAbsent(userId + "|" + month + "|" + category,
+                    key -> new ExpenseMonthlyRollup(userId, month, category, 0.0, 0));
+            monthly.setTotal(monthly.getTotal() + expense.getAmount());
+            monthly.setExpenseCount(monthly.getExpenseCount() + 1);
+        }
+
+        days.values().forEach(d -> applyDay(d.getUserId(), d.getBucketDay(), d.getCategory(),
+                d.getTotal(), d.getExpenseCount()));
+        months.values().forEach(m -> applyMonth(m.getUserId(), m.getBucketMonth(), m.getCategory(),
+                m.getTotal(), m.getExpenseCount()));
+    }
+
+    // расходы без владельца (строки до разделения по пользователям) в итоги не попадают
+    private void apply(Expense expense, int sign) {
+        if (expense.getDate() == null || expense.getUserId() == null) {
+            return;
+        }
+
+        String category = ExpenseAggregates.categoryOf(expense);
+        double amount = sign * expense.getAmount();
+        applyDay(expense.getUserId(), expense.getDate(), category, amount, sign);
+        applyMonth(expense.getUserId(), expense.getDate().withDayOfMonth(1), category, amount, sign);
+    }
+
+    private void applyDay(Long userId, LocalDate day, String category, double amount, long delta) {
+        if (dailyRepository.increment(userId, day, category, amount, delta) == 0 && delta > 0) {
+            insert(INSERT_DAY, userId, day, category, amount, delta,
+                    () -> dailyRepository.increment(userId, day, category, amount, delta));
+        } else if (delta < 0) {
+            dailyRepository.deleteIfEmpty(userId, day, category);
+        }
+    }
+
+    private void applyMonth(Long userId, LocalDate month, String category, double amount, long delta) {
+        if (monthlyRepository.increment(userId, month, category, amount, delta) == 0 && delta > 0) {
+            insert(INSERT_MONTH, userId, month, category, amount, delta,
+                    () -> monthlyRepository.increment(userId, month, category, amount, delta));
+        } else if (delta < 0) {
+            monthlyRepository.deleteIfEmpty(userId, month, category);
+        }
+    }
+
+    // первая запись в строку: UPDATE ничего не нашел. Если параллельная транзакция вставила ту же строку,
+    // H2 дождется ее коммита и вернет нарушение уникальности - тогда строка уже есть и повторяем UPDATE.
+    // Вставка через JdbcTemplate: ошибка из JPA пометила бы всю транзакцию на откат
+    private void insert(String sql, Long userId, LocalDate bucket, String category, double amount, long delta,
+                        Runnable increment) {
+        try {
+            jdbc.update(sql, userId, Date.valueOf(bucket), category, amount, delta);
+        } catch (DuplicateKeyException e) {
+            increment.run();
+        }
+    }
+
+    // заполнить таблицы из expense, если они пустые (например, первая миграция)
+    public void rebuildIfEmpty() {
+        if (dailyRepository.count() > 0 || monthlyRepository.count() > 0) {
+            return;
+        }
+
+        // ключ "пользователь|дата|категория": null и "Без категории" попадают в одну строку
+        Map<String, ExpenseDailyRollup> days = new HashMap<>();
+        Map<String, ExpenseMonthlyRollup> months = new HashMap<>();
+
+        for (DailyCategoryTotal row : expenseRepository.sumByDateAndCategory()) {
+            Long userId = row.userId();
+            LocalDate day = row.date();
+            LocalDate month = day.withDayOfMonth(1);
+            String category = row.category() != null ? row.category() : ExpenseAggregates.NO_CATEGORY;
+            double total = row.total();
+            long count = row.count();
+
+            ExpenseDailyRollup daily = days.computeIfAbsent(userId + "|" + day + "|" + category,
+                    key -> new ExpenseDailyRollup(userId, day, category, 0.0, 0));
+            daily.setTotal(daily.getTotal() + total);
+            daily.setExpenseCount(daily.getExpenseCount() + count);
+
+            ExpenseMonthlyRollup monthly = months.computeIfAbsent(userId + "|" + month + "|" + category,
+                    key -> new ExpenseMonthlyRollup(userId, month, category, 0.0, 0));
+            monthly.setTotal(monthly.getTotal() + total);
+            monthly.setExpenseCount(monthly.getExpenseCount() + count);
+        }
+
+        dailyRepository.saveAll(days.values());
+        monthlyRepository.saveAll(months.values());
+    }
+
+    // итоги пользователя за период: целые месяцы берем из месячной таблицы, края - из дневной
+    public PeriodAnalytics getPeriodAnalytics(long userId, LocalDate startDate, LocalDate endDate) {
+        YearMonth firstFullMonth = startDate.getDayOfMonth() == 1
+                ? YearMonth.from(startDate)
+                : YearMonth.from(startDate).plusMonths(1);
+        YearMonth lastFullMonth = endDate.equals(YearMonth.from(endDate).atEndOfMonth())
+                ? YearMonth.from(endDate)
+                : YearMonth.from(endDate).minusMonths(1);
+
+        List<Bucket> buckets = new ArrayList<>();
+
+        if (firstFullMonth.isAfter(lastFullMonth)) {
+            // меньше одного целого месяца - только дни
+            buckets.addAll(dailyBuckets(userId, startDate, endDate));
+        } else {
+            LocalDate monthsStart = firstFullMonth.atDay(1);
+            LocalDate monthsEnd = lastFullMonth.atEndOfMonth();
+
+            if (startDate.isBefore(monthsStart)) {
+                buckets.addAll(dailyBuckets(userId, startDate, monthsStart.minusDays(1)));
+            }
+            buckets.addAll(monthlyBuckets(userId, monthsStart, lastFullMonth.atDay(1)));
+            if (endDate.isAfter(monthsEnd)) {
+                buckets.addAll(dailyBuckets(userId, monthsEnd.plusDays(1), endDate));
+            }
+        }
+
+        double total = 0.0;
+        long count = 0;
+        Map<String, Double> byCategory = new HashMap<>();
+        for (Bucket bucket : buckets) {
+            total += bucket.total();
+            count += bucket.count();
+            bucket.byCategory().forEach((category, sum) -> byCategory.merge(category, sum, Double::sum));
+        }
+
+        return new PeriodAnalytics(startDate, endDate, total, count, byCategory, buckets);
+    }
+
+    public double getTotalByPeriod(long userId, LocalDate startDate, LocalDate endDate) {
+        return getPeriodAnalytics(userId, startDate, endDate).total();
+    }
+
+    private List<Bucket> dailyBuckets(long userId, LocalDate from, LocalDate to) {
+        Map<LocalDate, BucketBuilder> result = new LinkedHashMap<>();
+        for (ExpenseDailyRollup row : dailyRepository.findByUserIdAndBucketDayBetweenOrderByBucketDay(userId, from, to)) {
+            result.computeIfAbsent(row.getBucketDay(), d -> new BucketBuilder())
+                    .add(row.getCategory(), row.getTotal(), row.getExpenseCount());
+        }
+        List<Bucket> buckets = new ArrayList<>();
+        result.forEach((day, builder) -> buckets.add(builder.build(day, Granularity.DAY)));
+        return buckets;
+    }
+
+    private List<Bucket> monthlyBuckets(long userId, LocalDate from, LocalDate to) {
+        Map<LocalDate, BucketBuilder> result = new LinkedHashMap<>();
+        for (ExpenseMonthlyRollup row
+                : monthlyRepository.findByUserIdAndBucketMonthBetweenOrderByBucketMonth(userId, from, to)) {
+            result.computeIfAbsent(row.getBucketMonth(), m -> new BucketBuilder())
+                    .add(row.getCategory(), row.getTotal(), row.getExpenseCount());
+        }
+        List<Bucket> buckets = new ArrayList<>();
+        result.forEach((month, builder) -> buckets.add(builder.build(month, Granularity.MONTH)));
+        return buckets;
+    }
+
+    private static class BucketBuilder {
+        private double total;
+        private long count;
+        private final Map<String, Double> byCategory = new HashMap<>();
+
+        void add(String category, double sum, long n) {
+            total += sum;
+            count += n;
+            byCategory.merge(category, sum, Double::sum);
+        }
+
+        Bucket build(LocalDate start, Granularity granularity) {
+            return new Bucket(start, granularity, total, count, byCategory);
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// полнотекстовый индекс по title и comment: слово -> список id расходов, где оно встречается.
+// Списки id сжаты (разности соседних id в varint) и разбиты на блоки до 128 id,
+// поэтому поиск идет от новых id к старым и останавливается, как только набрал limit совпадений.
+// Категория и день каждого id лежат в массивах по id, чтобы фильтры не ходили в базу.
+// Словарь слов у каждого пользователя свой: поиск разворачивает префиксы и идет по спискам
+// только его расходов, чужие id в них не попадают. Массивы по id общие - id уникальны во всей таблице
+@Component
+public class ExpenseSearchIndex implements ExpenseChangeListener {
+    // префикс, под который подходит больше слов, считаем слишком общим
+    static final int MAX_EXPANSIONS = 1024;
+
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    // код категории для id, которого нет в индексе
+    private static final int ABSENT = -1;
+    // день для расходов без даты, в фильтр по периоду не попадает
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // пользователь -> слово -> id его расходов
+    private final Map<Long, NavigableMap<String, PostingList>> postings = new HashMap<>();
+    // категория и день по id: сегмент id >>> 16, смещение id & 0xFFFF
+    private final List<DocSegment> docs = new ArrayList<>();
+    private final Map<String, Integer> categoryCodes = new HashMap<>();
+    private int size;
+
+    @Override
+    public void onSaved(Expense previous, Expense saved) {
+        lock.writeLock().lock();
+        try {
+            Set<String> fresh = tokens(saved.getTitle(), saved.getComment());
+            Set<String> added = fresh;
+            if (previous != null) {
+                Set<String> stale = tokens(previous.getTitle(), previous.getComment());
+                if (Objects.equals(previous.getId(), saved.getId())) {
+                    // при правке трогаем только изменившиеся слова: списки частых слов длинные
+                    added = new HashSet<>(fresh);
+                    added.removeAll(stale);
+                    stale.removeAll(fresh);
+                }
+                unindex(previous.getUserId(), previous.getId(), stale);
+                removeDoc(previous.getId());
+            }
+            index(saved.getUserId(), saved.getId(), added);
+            putDoc(saved);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(Expense deleted) {
+        lock.writeLock().lock();
+        try {
+            unindex(deleted.getUserId(), deleted.getId(), tokens(deleted.getTitle(), deleted.getComment()));
+            removeDoc(deleted.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            docs.clear();
+            categoryCodes.clear();
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // id расходов пользователя меньше beforeId, в title или comment которых есть слово с каждым префиксом из query,
+    // от больших id к меньшим, не больше limit. category == null, startDate/endDate == null - без фильтра
+    public List<Long> search(long userId, String query, String category, LocalDate startDate, LocalDate endDate,
+                             long beforeId, int limit) {
+        Set<String> prefixes = tokens(query);
+        if (prefixes.isEmpty()) {
+            throw new IllegalArgumentException("пустой поисковый запрос");
+        }
+        boolean byPeriod = startDate != null && endDate != null;
+        int fromDay = byPeriod ? (int) startDate.toEpochDay() : Integer.MIN_VALUE;
+        int toDay = byPeriod ? (int) endDate.toEpochDay() : Integer.MAX_VALUE;
+
+        lock.readLock().lock();
+        try {
+            NavigableMap<String, PostingList> words = postings.get(userId);
+            if (words == null) {
+                return List.of();
+            }
+            Integer categoryCode = null;
+            if (category != null) {
+                categoryCode = categoryCodes.get(category);
+                if (categoryCode == null) {
+                    return List.of();
+                }
+            }
+
+            List<Term> terms = new ArrayList<>(prefixes.size());
+            for (String prefix : prefixes) {
+                Term term = expand(words, prefix);
+                if (term.lists().isEmpty()) {
+                    return List.of();
+                }
+                terms.add(term);
+            }
+            // идем по самому редкому слову, остальные только проверяем
+            terms.sort(Comparator.comparingLong(Term::size));
+            Term driver = terms.get(0);
+            List<Term> others = terms.subList(1, terms.size());
+
+            List<Long> ids = new ArrayList<>(Math.min(limit, 1024));
+            IdCursor cursor = driver.cursor(beforeId);
+            for (long id = cursor.next(); id >= 0 && ids.size() < limit; id = cursor.next()) {
+                if (matches(id, categoryCode, byPeriod, fromDay, toDay) && containsAll(others, id)) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // слова текста: буквы и цифры в нижнем регистре, ё = е
+    static Set<String> tokens(String... texts) {
+        Set<String> tokens = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            for (int i = 0; i <= text.length(); i++) {
+                char c = i < text.length() ? text.charAt(i) : ' ';
+                if (Character.isLetterOrDigit(c)) {
+                    c = Character.toLowerCase(c);
+                    word.append(c == 'ё' ? 'е' : c);
+                } else if (!word.isEmpty()) {
+                    tokens.add(word.toString());
+                    word.setLength(0);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static Term expand(NavigableMap<String, PostingList> words, String prefix) {
+        List<PostingList> lists = new ArrayList<>();
+        for (PostingList list : words.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            if (lists.size() == MAX_EXPANSIONS) {
+                throw new IllegalArgumentException("слишком общий запрос: \"" + prefix + "\", уточните слово");
+            }
+            lists.add(list);
+        }
+        return new Term(lists);
+    }
+
+    private static boolean containsAll(List<Term> terms, long id) {
+        for (Term term : terms) {
+            if (!term.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(long id, Integer categoryCode, boolean byPeriod, int fromDay, int toDay) {
+        DocSegment segment = segment(id);
+        int offset = (int) (id & SEGMENT_MASK);
+        if (segment == null || segment.categories[offset] == ABSENT) {
+            return false;
+        }
+        if (categoryCode != null && segment.categories[offset] != categoryCode) {
+            return false;
+        }
+        int day = segment.days[offset];
+        return !byPeriod || (day != NO_DATE && day >= fromDay && day <= toDay);
+    }
+
+    private void index(Long userId, Long id, Set<String> tokens) {
+        if (id == null || tokens.isEmpty()) {
+            return;
+        }
+        NavigableMap<String, PostingList> words = postings.computeIfAbsent(userId, u -> new TreeMap<>());
+        for (String token : tokens) {
+            words.computeIfAbsent(token, t -> new PostingList()).add(id);
+        }
+    }
+
+    private void unindex(Long userId, Long id, Set<String> tokens) {
+        NavigableMap<String, PostingList> words = postings.get(userId);
+        if (id == null || words == null) {
+            return;
+        }
+        for (String token : tokens) {
+            PostingList list = words.get(token);
+            if (list != null) {
+                list.remove(id);
+                if (list.size() == 0) {
+                    words.remove(token);
+                }
+            }
+        }
+        if (words.isEmpty()) {
+            postings.remove(userId);
+        }
+    }
+
+    private void putDoc(Expense expense) {
+        Long id = expense.getId();
+        if (id == null) {
+            return;
+        }
+        int segmentIndex = (int) (id >>> SEGMENT_SHIFT);
+        while (docs.size() <= segmentIndex) {
+            docs.add(null);
+        }
+        DocSegment segment = docs.get(segmentIndex);
+        if (segment == null) {
+            segment = new DocSegment();
+            docs.set(segmentIndex, segment);
+        }
+        int offset = (int) (id & SEGMENT_MASK);
+        if (segment.categories[offset] == ABSENT) {
+            size++;
+        }
+        segment.categories[offset] = categoryCode(ExpenseAggregates.categoryOf(expense));
+        segment.days[offset] = expense.getDate() != null ? (int) expense.getDate().toEpochDay() : NO_DATE;
+    }
+
+    private void removeDoc(Long id) {
+        if (id == null) {
+            return;
+        }
+        DocSegment segment = segment(id);
+        int offset = (int) (id & SEGMENT_MASK);
+        if (segment != null && segment.categories[offset] != ABSENT) {
+            segment.categories[offset] = ABSENT;
+            size--;
+        }
+    }
+
+    private DocSegment segment(long id) {
+        long segmentIndex = id >>> SEGMENT_SHIFT;
+        return segmentIndex < docs.size() ? docs.get((int) segmentIndex) : null;
+    }
+
+    private int categoryCode(String category) {
+        return categoryCodes.computeIfAbsent(category, c -> categoryCodes.size());
+    }
+
+    private static class DocSegment {
+        final int[] categories = new int[SEGMENT_SIZE];
+        final int[] days = new int[SEGMENT_SIZE];
+
+        DocSegment() {
+            Arrays.fill(categories, ABSENT);
+        }
+    }
+
+    // id по убыванию; -1, когда кончились
+    private interface IdCursor {
+        long next();
+    }
+
+    // одно слово запроса: все слова индекса с этим префиксом
+    private record Term(List<PostingList> lists) {
+
+        long size() {
+            long size = 0;
+            for (PostingList list : lists) {
+                size += list.size();
+            }
+            return size;
+        }
+
+        boolean contains(long id) {
+            for (PostingList list : lists) {
+                if (list.contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        IdCursor cursor(long beforeId) {
+            if (lists.size() == 1) {
+                return lists.get(0).cursor(beforeId);
+            }
+            // слияние по убыванию: берем наибольший из текущих id и сдвигаем все списки, где он стоит
+            IdCursor[] cursors = new IdCursor[lists.size()];
+            long[] heads = new long[cursors.length];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = lists.get(i).cursor(beforeId);
+                heads[i] = cursors[i].next();
+            }
+            return () -> {
+                long max = -1;
+                for (long head : heads) {
+                    max = Math.max(max, head);
+                }
+                if (max >= 0) {
+                    for (int i = 0; i < heads.length; i++) {
+                        if (heads[i] == max) {
+                            heads[i] = cursors[i].next();
+                        }
+                    }
+                }
+                return max;
+            };
+        }
+    }
+
+    // id по возрастанию блоками до BLOCK id: первый id блока в blockFirst, остальные - разностями в varint.
+    // Правка и удаление перекодируют только свой блок; переполненный блок делится пополам, пустой удаляется
+    static final class PostingList {
+        static final int BLOCK = 128;
+
+        // у большинства слов один-два id: массивы растут только по мере надобности
+        private static final byte[] NO_BYTES = {};
+
+        private byte[] bytes = NO_BYTES;
+        private int length;
+        private long[] blockFirst = new long[1];
+        private int[] blockStart = new int[1];
+        private int[] blockCount = new int[1];
+        private int blocks;
+        private int size;
+        private long last = -1;
+
+        int size() {
+            return size;
+        }
+
+        void add(long id) {
+            if (id > last) {
+                append(id);
+            } else if (!contains(id)) {
+                // новое слово у старого расхода (правка)
+                insert(id);
+            }
+        }
+
+        void remove(long id) {
+            int block = blockOf(id);
+            if (block < 0) {
+                return;
+            }
+            long[] ids = new long[BLOCK];
+            int count = decodeBlock(block, ids);
+            int at = Arrays.binarySearch(ids, 0, count, id);
+            if (at < 0) {
+                return;
+            }
+            System.arraycopy(ids, at + 1, ids, at, count - at - 1);
+            count--;
+            size--;
+            if (count == 0) {
+                removeBlock(block);
+            } else {
+                writeBlock(block, ids, count);
+            }
+            if (id == last) {
+                last = count > 0 ? ids[count - 1] : blocks > 0 ? lastOf(blocks - 1) : -1;
+            }
+        }
+
+        boolean contains(long id) {
+            int block = blockOf(id);
+            if (block < 0) {
+                return false;
+            }
+            long value = blockFirst[block];
+            int pos = blockStart[block];
+            int end = blockEnd(block);
+            while (value < id && pos < end) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[pos++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+            }
+            return value == id;
+        }
+
+        IdCursor cursor(long beforeId) {
+            return new Cursor(beforeId);
+        }
+
+        long[] toArray() {
+            long[] ids = new long[size];
+            long[] buffer = new long[BLOCK];
+            int offset = 0;
+            for (int block = 0; block < blocks; block++) {
+                int count = decodeBlock(block, buffer);
+                System.arraycopy(buffer, 0, ids, offset, count);
+                offset += count;
+            }
+            return ids;
+        }
+
+        private void append(long id) {
+            if (blocks == 0 || blockCount[blocks - 1] == BLOCK) {
+                growBlocks();
+                blockFirst[blocks] = id;
+                blockStart[blocks] = length;
+                blockCount[blocks] = 1;
+                blocks++;
+            } else {
+                if (length + 10 > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 10));
+                }
+                length = putVarint(bytes, length, id - last);
+                blockCount[blocks - 1]++;
+            }
+            last = id;
+            size++;
+        }
+
+        // id меньше last и его еще нет в списке
+        private void insert(long id) {
+            int block = Math.max(blockOf(id), 0);
+            long[] ids = new long[BLOCK + 1];
+            int count = decodeBlock(block, ids);
+            int at = -Arrays.binarySearch(ids, 0, count, id) - 1;
+            System.arraycopy(ids, at, ids, at + 1, count - at);
+            ids[at] = id;
+            count++;
+            size++;
+            if (count <= BLOCK) {
+                writeBlock(block, ids, count);
+                return;
+            }
+            int half = count / 2;
+            writeBlock(block, ids, half);
+            insertBlock(block + 1, Arrays.copyOfRange(ids, half, count), count - half);
+        }
+
+        // перекодирует один блок; байты следующих блоков сдвигаются целиком, без раскодирования
+        private void writeBlock(int block, long[] ids, int count) {
+            byte[] encoded = new byte[(count - 1) * 10];
+            int encodedLength = 0;
+            for (int i = 1; i < count; i++) {
+                encodedLength = putVarint(encoded, encodedLength, ids[i] - ids[i - 1]);
+            }
+            replaceBytes(block, encoded, encodedLength);
+            blockFirst[block] = ids[0];
+            blockCount[block] = count;
+        }
+
+        // новый пустой блок на месте at, затем его содержимое
+        private void insertBlock(int at, long[] ids, int count) {
+            int start = at < blocks ? blockStart[at] : length;
+            growBlocks();
+            System.arraycopy(blockFirst, at, blockFirst, at + 1, blocks - at);
+            System.arraycopy(blockStart, at, blockStart, at + 1, blocks - at);
+            System.arraycopy(blockCount, at, blockCount, at + 1, blocks - at);
+            blockStart[at] = start;
+            blocks++;
+            writeBlock(at, ids, count);
+        }
+
+        private void removeBlock(int block) {
+            replaceBytes(block, NO_BYTES, 0);
+            System.arraycopy(blockFirst, block + 1, blockFirst, block, blocks - block - 1);
+            System.arraycopy(blockStart, block + 1, blockStart, block, blocks - block - 1);
+            System.arraycopy(blockCount, block + 1, blockCount, block, blocks - block - 1);
+            blocks--;
+        }
+
+        // заменяет байты блока на encoded[0, encodedLength) и сдвигает начала следующих блоков
+        private void replaceBytes(int block, byte[] encoded, int encodedLength) {
+            int start = blockStart[block];
+            int end = blockEnd(block);
+            int shift = encodedLength - (end - start);
+            if (length + shift > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + shift));
+            }
+            System.arraycopy(bytes, end, bytes, end + shift, length - end);
+            System.arraycopy(encoded, 0, bytes, start, encodedLength);
+            length += shift;
+            for (int next = block + 1; next < blocks; next++) {
+                blockStart[next] += shift;
+            }
+        }
+
+        private void growBlocks() {
+            if (blocks == blockFirst.length) {
+                blockFirst = Arrays.copyOf(blockFirst, blocks * 2);
+                blockStart = Arrays.copyOf(blockStart, blocks * 2);
+                blockCount = Arrays.copyOf(blockCount, blocks * 2);
+            }
+        }
+
+        private long lastOf(int block) {
+            long[] ids = new long[BLOCK];
+            return ids[decodeBlock(block, ids) - 1];
+        }
+
+        // номер последнего блока с первым id <= id, -1 - такого нет
+        private int blockOf(long id) {
+            int found = Arrays.binarySearch(blockFirst, 0, blocks, id);
+            return found >= 0 ? found : -found - 2;
+        }
+
+        private int blockEnd(int block) {
+            return block + 1 < blocks ? blockStart[block + 1] : length;
+        }
+
+        private int decodeBlock(int block, long[] out) {
+            long value = blockFirst[block];
+            out[0] = value;
+            int count = 1;
+            int pos = blockStart[block];
+            int end = blockEnd(block);
+            while (pos < end) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[pos++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                out[count++] = value;
+            }
+            return count;
+        }
+
+        // позиция после записанного значения
+        private static int putVarint(byte[] out, int pos, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out[pos++] = (byte) value;
+            return pos;
+        }
+
+        // обход от конца: блок раскодируется целиком в буфер и читается задом наперед
+        private final class Cursor implements IdCursor {
+            private final long[] buffer = new long[BLOCK];
+            private int block;
+            private int pos = -1;
+
+            Cursor(long beforeId) {
+                // последний блок, который начинается раньше beforeId
+                block = blockOf(beforeId - 1);
+                if (block >= 0) {
+                    pos = decodeBlock(block, buffer) - 1;
+                    while (pos >= 0 && buffer[pos] >= beforeId) {
+                        pos--;
+                    }
+                }
+            }
+
+            @Override
+            public long next() {
+                while (pos < 0) {
+                    if (block <= 0) {
+                        return -1;
+                    }
+                    block--;
+                    pos = decodeBlock(block, buffer) - 1;
+                }
+                return buffer[pos--];
+            }
+        }
+    }
+}
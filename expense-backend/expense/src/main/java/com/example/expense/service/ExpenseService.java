@@ -1,126 +1,344 @@
 package com.example.expense.service;
 
+import com.example.expense.dto.AnalyticsSummary;
+import com.example.expense.dto.ExpensePage;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.dto.PeriodAnalytics;
 import com.example.expense.model.Expense;
 import com.example.expense.repository.ExpenseRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ExpenseService {
     private final ExpenseRepository repository;
+    private final ExpenseAnalytics analytics;
+    private final ExpenseRollups rollups;
+    private final ExpenseSearchIndex searchIndex;
+    private final List<ExpenseChangeListener> listeners;
+    private final List<ExpenseChangeListener> journals;
+    private final ExpenseMetrics metrics;
+    private final ExpenseDataVersion dataVersion;
 
-    public ExpenseService(ExpenseRepository repository) {
+    public ExpenseService(ExpenseRepository repository,
+                          ExpenseAnalytics analytics,
+                          ExpenseRollups rollups,
+                          ExpenseSearchIndex searchIndex,
+                          List<ExpenseChangeListener> listeners,
+                          ExpenseMetrics metrics,
+                          ExpenseDataVersion dataVersion) {
         this.repository = repository;
+        this.analytics = analytics;
+        this.rollups = rollups;
+        this.searchIndex = searchIndex;
+        this.listeners = listeners.stream().filter(listener -> !listener.writesBeforeCommit()).toList();
+        this.journals = listeners.stream().filter(ExpenseChangeListener::writesBeforeCommit).toList();
+        this.metrics = metrics;
+        this.dataVersion = dataVersion;
     }
 
-    public List<Expense> getAll() {
-        return repository.findAll();
+    // при старте один раз проходим по таблице и заполняем агрегаты.
+    // Строки без владельца (записанные до разделения по пользователям) никому не показываются
+    @PostConstruct
+    public void rebuild() {
+        rollups.rebuildIfEmpty();
+        List<ExpenseChangeListener> rebuilt = listeners.stream()
+                .filter(ExpenseChangeListener::replayOnRebuild)
+                .toList();
+        rebuilt.forEach(ExpenseChangeListener::reset);
+        for (Expense expense : repository.findAll()) {
+            if (expense.getUserId() != null) {
+                rebuilt.forEach(listener -> listener.onSaved(null, expense));
+            }
+        }
+    }
+
+    public List<Expense> getAll(long userId) {
+        return metrics.timeQuery("getAll", FilterBranch.ALL, () -> repository.findByUserId(userId));
     }
 
-    public Expense save(Expense expense) {
+    // владелец всегда пользователь сессии; изменить можно только свой расход
+    @Transactional
+    public Expense save(long userId, Expense expense) {
         // Если дата не указана, ставим сегодняшнюю
         if (expense.getDate() == null) {
             expense.setDate(LocalDate.now());
         }
-        return repository.save(expense);
+
+        // при обновлении нужно вычесть старые значения из агрегатов
+        Expense previous = null;
+        if (expense.getId() != null) {
+            previous = repository.findById(expense.getId())
+                    .filter(existing -> Objects.equals(existing.getUserId(), userId))
+                    .map(ExpenseService::snapshot)
+                    .orElseThrow(() -> new IllegalArgumentException("расход не найден"));
+            rollups.remove(previous);
+        }
+        expense.setUserId(userId);
+
+        Expense saved = repository.save(expense);
+        rollups.add(saved);
+
+        Expense before = previous;
+        Expense committed = snapshot(saved);
+        journal(listener -> listener.onSaved(before, committed),
+                listener -> {
+                    if (before == null) {
+                        listener.onDeleted(committed);
+                    } else {
+                        listener.onSaved(committed, before);
+                    }
+                });
+        afterCommit(userId, () -> {
+            listeners.forEach(listener -> listener.onSaved(before, committed));
+            dataVersion.increment(userId);
+            listeners.forEach(ExpenseChangeListener::afterChanges);
+        });
+        return saved;
+    }
+
+    // чужой или несуществующий расход - ничего не делаем
+    @Transactional
+    public void delete(long userId, Long id) {
+        repository.findById(id)
+                .filter(existing -> Objects.equals(existing.getUserId(), userId))
+                .map(ExpenseService::snapshot)
+                .ifPresent(expense -> {
+                    repository.deleteById(id);
+                    rollups.remove(expense);
+                    journal(listener -> listener.onDeleted(expense), listener -> listener.onSaved(null, expense));
+                    afterCommit(userId, () -> {
+                        listeners.forEach(listener -> listener.onDeleted(expense));
+                        dataVersion.increment(userId);
+                        listeners.forEach(ExpenseChangeListener::afterChanges);
+                    });
+                });
     }
 
-    public void delete(Long id) {
-        repository.deleteById(id);
+    // последний шаг транзакции: flush блокирует строку до коммита, поэтому конкурентные записи одного id
+    // попадают в журнал в том же порядке, что и в базу. Если коммит после записи в журнал не удался,
+    // журнал получает обратное изменение
+    private void journal(Consumer<ExpenseChangeListener> write, Consumer<ExpenseChangeListener> undo) {
+        if (journals.isEmpty()) {
+            return;
+        }
+        repository.flush();
+        journals.forEach(write);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        journals.forEach(undo);
+                    }
+                }
+            });
+        }
+    }
+
+    // слушатели в памяти не откатываются, поэтому вызываем их только после коммита.
+    // До коммита они узнают, что запись пользователя в пути, после завершения - что она закончилась
+    private void afterCommit(long userId, Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            listeners.forEach(listener -> listener.writeStarted(userId));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    listeners.forEach(listener -> listener.writeCompleted(userId));
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
     // ========== ФИЛЬТРАЦИЯ ==========
+    // все выборки - только по расходам пользователя userId
 
-    public List<Expense> getByCategory(String category) {
-        return repository.findByCategory(category);
+    public List<Expense> getByCategory(long userId, String category) {
+        return repository.findByUserIdAndCategory(userId, category);
     }
 
-    public List<Expense> getByDate(LocalDate date) {
-        return repository.findByDate(date);
+    public List<Expense> getByDate(long userId, LocalDate date) {
+        return repository.findByUserIdAndDate(userId, date);
     }
 
-    public List<Expense> getByPeriod(LocalDate startDate, LocalDate endDate) {
-        return repository.findByDateBetween(startDate, endDate);
+    public List<Expense> getByPeriod(long userId, LocalDate startDate, LocalDate endDate) {
+        return repository.findByUserIdAndDateBetween(userId, startDate, endDate);
     }
 
-    public List<Expense> getByCategoryAndPeriod(String category, LocalDate startDate, LocalDate endDate) {
-        return repository.findByCategoryAndDateBetween(category, startDate, endDate);
+    public List<Expense> getByCategoryAndPeriod(long userId, String category, LocalDate startDate, LocalDate endDate) {
+        return repository.findByUserIdAndCategoryAndDateBetween(userId, category, startDate, endDate);
     }
 
     // Универсальный метод фильтрации
-    public List<Expense> filterExpenses(String category, LocalDate startDate, LocalDate endDate) {
-        if (category != null && startDate != null && endDate != null) {
-            return getByCategoryAndPeriod(category, startDate, endDate);
-        } else if (category != null && startDate == null && endDate == null) {
-            return getByCategory(category);
-        } else if (category == null && startDate != null && endDate != null) {
-            return getByPeriod(startDate, endDate);
-        } else {
-            return getAll();
-        }
+    public List<Expense> filterExpenses(long userId, String category, LocalDate startDate, LocalDate endDate) {
+        FilterBranch branch = FilterBranch.of(category, startDate, endDate);
+        return metrics.timeQuery("filter", branch, () -> switch (branch) {
+            case CATEGORY_PERIOD -> getByCategoryAndPeriod(userId, category, startDate, endDate);
+            case CATEGORY -> getByCategory(userId, category);
+            case PERIOD -> getByPeriod(userId, startDate, endDate);
+            case ALL -> repository.findByUserId(userId);
+        });
     }
 
-    // ========== АНАЛИТИКА ==========
+    // Постраничная выборка с теми же ветками фильтра, что и filterExpenses.
+    // Берем на одну строку больше, чтобы понять, есть ли следующая страница
+    public ExpensePage getPage(long userId, String category, LocalDate startDate, LocalDate endDate,
+                               String cursor, int limit) {
+        ExpenseCursor after = ExpenseCursor.decode(cursor);
+        Pageable pageable = PageRequest.of(0, limit + 1);
 
-    // Сумма расходов по категориям
-    public Map<String, Double> getAnalyticsByCategory() {
-        List<Expense> allExpenses = getAll();
-        Map<String, Double> analytics = new HashMap<>();
+        FilterBranch branch = FilterBranch.of(category, startDate, endDate);
+        List<ExpenseView> rows = metrics.timeQuery("page", branch, () -> switch (branch) {
+            case CATEGORY_PERIOD -> repository.findPageByCategoryAndPeriod(userId, category, startDate, endDate,
+                    after.date(), after.id(), pageable);
+            case CATEGORY -> repository.findPageByCategory(userId, category, after.date(), after.id(), pageable);
+            case PERIOD -> repository.findPageByPeriod(userId, startDate, endDate, after.date(), after.id(), pageable);
+            case ALL -> repository.findPage(userId, after.date(), after.id(), pageable);
+        });
+
+        return toPage(rows, limit, last -> ExpenseCursor.after(last).encode());
+    }
+
+    // Поиск по словам из title и comment (каждое слово запроса - префикс), фильтры - как у filterExpenses.
+    // Индекс отдает id от новых к старым, из базы читаются только строки страницы
+    public ExpensePage search(long userId, String query, String category, LocalDate startDate, LocalDate endDate,
+                              String cursor, int limit) {
+        long before = ExpenseCursor.decodeId(cursor);
+        FilterBranch branch = FilterBranch.of(category, startDate, endDate);
+        boolean byCategory = branch == FilterBranch.CATEGORY_PERIOD || branch == FilterBranch.CATEGORY;
+        boolean byPeriod = branch == FilterBranch.CATEGORY_PERIOD || branch == FilterBranch.PERIOD;
 
-        for (Expense expense : allExpenses) {
-            String category = expense.getCategory() != null ? expense.getCategory() : "Без категории";
-            analytics.put(category, analytics.getOrDefault(category, 0.0) + expense.getAmount());
+        List<ExpenseView> rows = metrics.timeQuery("search", branch, () -> {
+            List<Long> ids = searchIndex.search(userId, query, byCategory ? category : null,
+                    byPeriod ? startDate : null, byPeriod ? endDate : null, before, limit + 1);
+            return ids.isEmpty() ? List.of() : repository.findViewsByIdIn(userId, ids);
+        });
+        return toPage(rows, limit, last -> ExpenseCursor.encodeId(last.id()));
+    }
+
+    // n самых крупных расходов (по сумме, при равенстве - новые id первыми), фильтры - как у filterExpenses.
+    // Без периода порядок и лимит отдаются базе (индекс по сумме), с периодом - строки периода идут потоком
+    // по индексу даты через кучу на n элементов: память O(n), вся выборка не сортируется
+    @Transactional(readOnly = true)
+    public List<ExpenseView> getTop(long userId, String category, LocalDate startDate, LocalDate endDate, int n) {
+        FilterBranch branch = FilterBranch.of(category, startDate, endDate);
+        return metrics.timeQuery("top", branch, () -> switch (branch) {
+            case CATEGORY_PERIOD ->
+                    top(repository.streamViewsByCategoryAndPeriod(userId, category, startDate, endDate), n);
+            case CATEGORY -> repository.findTopByCategory(userId, category, PageRequest.of(0, n));
+            case PERIOD -> top(repository.streamViewsByPeriod(userId, startDate, endDate), n);
+            case ALL -> repository.findTop(userId, PageRequest.of(0, n));
+        });
+    }
+
+    private static final Comparator<ExpenseView> BY_AMOUNT =
+            Comparator.comparingDouble(ExpenseView::amount).thenComparing(ExpenseView::id);
+
+    // в куче n наибольших из просмотренных, на вершине - наименьший из них
+    private static List<ExpenseView> top(Stream<ExpenseView> rows, int n) {
+        PriorityQueue<ExpenseView> heap = new PriorityQueue<>(n + 1, BY_AMOUNT);
+        try (rows) {
+            rows.forEach(row -> {
+                if (heap.size() < n) {
+                    heap.add(row);
+                } else if (BY_AMOUNT.compare(row, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(row);
+                }
+            });
         }
+        List<ExpenseView> result = new ArrayList<>(heap);
+        result.sort(BY_AMOUNT.reversed());
+        return result;
+    }
+
+    // rows - на одну строку больше страницы, если есть следующая; cursor - токен по последней строке страницы
+    private static ExpensePage toPage(List<ExpenseView> rows, int limit, Function<ExpenseView, String> cursor) {
+        if (rows.size() <= limit) {
+            return new ExpensePage(rows, null);
+        }
+        List<ExpenseView> items = rows.subList(0, limit);
+        return new ExpensePage(items, cursor.apply(items.get(limit - 1)));
+    }
+
+    // ========== АНАЛИТИКА ==========
 
-        return analytics;
+    // Сумма расходов по категориям
+    public Map<String, Double> getAnalyticsByCategory(long userId) {
+        return analytics.getSumsByCategory(userId);
     }
 
     // Общая сумма всех расходов
-    public Double getTotalAmount() {
-        return getAll().stream()
-                .mapToDouble(Expense::getAmount)
-                .sum();
+    public Double getTotalAmount(long userId) {
+        return analytics.getTotal(userId);
+    }
+
+    // Суммы по категориям, общая сумма и средний расход в день одним снимком
+    public AnalyticsSummary getAnalyticsSummary(long userId) {
+        return analytics.getSummary(userId);
     }
 
     // Сумма за период
-    public Double getTotalByPeriod(LocalDate startDate, LocalDate endDate) {
-        return getByPeriod(startDate, endDate).stream()
-                .mapToDouble(Expense::getAmount)
-                .sum();
+    public Double getTotalByPeriod(long userId, LocalDate startDate, LocalDate endDate) {
+        return analytics.getSumsByCategoryBetween(userId, startDate, endDate)
+                .map(sums -> sums.values().stream().mapToDouble(Double::doubleValue).sum())
+                .orElseGet(() -> rollups.getTotalByPeriod(userId, startDate, endDate));
     }
 
-    // Средний расход в день
-    public Double getAveragePerDay() {
-        List<Expense> allExpenses = getAll();
-        if (allExpenses.isEmpty()) return 0.0;
-
-        // Находим разницу между самой ранней и поздней датой
-        Optional<LocalDate> minDate = allExpenses.stream()
-                .map(Expense::getDate)
-                .min(LocalDate::compareTo);
-        Optional<LocalDate> maxDate = allExpenses.stream()
-                .map(Expense::getDate)
-                .max(LocalDate::compareTo);
-
-        if (minDate.isPresent() && maxDate.isPresent()) {
-            long daysBetween = java.time.temporal.ChronoUnit.DAYS.between(minDate.get(), maxDate.get()) + 1;
-            return getTotalAmount() / daysBetween;
-        }
+    // Суммы по категориям за последние 30 дней
+    public Map<String, Double> getRecentAnalytics(long userId) {
+        LocalDate today = LocalDate.now();
+        LocalDate thirtyDaysAgo = today.minusDays(30);
+        return analytics.getSumsByCategoryBetween(userId, thirtyDaysAgo, today)
+                .orElseGet(() -> rollups.getPeriodAnalytics(userId, thirtyDaysAgo, today).byCategory());
+    }
 
-        return getTotalAmount();
+    // Итоги за период с разбивкой по месяцам и дням
+    public PeriodAnalytics getAnalyticsByPeriod(long userId, LocalDate startDate, LocalDate endDate) {
+        return rollups.getPeriodAnalytics(userId, startDate, endDate);
+    }
+
+    // Средний расход в день
+    public Double getAveragePerDay(long userId) {
+        return analytics.getAveragePerDay(userId);
     }
 
     // Получить все категории
-    public List<String> getAllCategories() {
-        return repository.findDistinctCategories();
+    public List<String> getAllCategories(long userId) {
+        return repository.findDistinctCategories(userId);
     }
 
     // Получить расходы за последние 30 дней
-    public List<Expense> getRecentExpenses() {
+    public List<ExpenseView> getRecentExpenses(long userId) {
         LocalDate thirtyDaysAgo = LocalDate.now().minusDays(30);
-        return repository.findRecentExpenses(thirtyDaysAgo);
+        return repository.findRecentViews(userId, thirtyDaysAgo);
+    }
+
+    // копия сущности: managed-объект может измениться при merge в той же сессии
+    static Expense snapshot(Expense expense) {
+        Expense copy = new Expense(expense.getTitle(), expense.getAmount(), expense.getDate(),
+                expense.getCategory(), expense.getComment());
+        copy.setId(expense.getId());
+        copy.setUserId(expense.getUserId());
+        return copy;
     }
 }
\ No newline at end of file
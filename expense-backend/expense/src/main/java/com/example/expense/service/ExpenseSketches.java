@@ -0,0 +1,239 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AmountDistribution;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.model.Expense;
+import com.example.expense.repository.ExpenseRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// распределение сумм по категориям и месяцам: на каждую пару (категория, месяц) - скетч квантилей
+// и счетчик разных названий, обновляются на каждой записи. Память на пару ограничена и не зависит
+// от числа расходов, период и категории собираются сложением скетчей.
+// Вычитать скетчи не умеют: после удаления или изменения пара помечается устаревшей
+// и пересчитывается из базы при следующем чтении (один месяц одной категории).
+// Пересчет не ставится, пока у пользователя есть запись между коммитом и onSaved: база ее уже видит,
+// и onSaved добавил бы ее второй раз.
+// Пары хранятся отдельно по пользователям, чтение перебирает только пары своего пользователя
+@Component
+public class ExpenseSketches implements ExpenseChangeListener {
+
+    private record Key(String category, YearMonth month) {
+    }
+
+    private static final class Bucket {
+        final QuantileSketch amounts;
+        final DistinctCounter titles = new DistinctCounter();
+        boolean stale;
+        // растет на каждом изменении: пересчет, за время которого пара менялась, не устанавливается
+        long version;
+
+        Bucket(int quantileK) {
+            amounts = new QuantileSketch(quantileK);
+        }
+
+        void add(String title, double amount) {
+            amounts.add(amount);
+            titles.add(title);
+            version++;
+        }
+
+        void merge(Bucket other) {
+            amounts.merge(other.amounts);
+            titles.merge(other.titles);
+        }
+
+        AmountDistribution distribution() {
+            return new AmountDistribution(amounts.count(), amounts.quantile(0.5), amounts.quantile(0.9),
+                    amounts.quantile(0.99), titles.estimate());
+        }
+    }
+
+    // пары одного пользователя; дальше все под synchronized (shard)
+    private static final class Shard {
+        final Map<Key, Bucket> buckets = new HashMap<>();
+        // записи между writeStarted и writeCompleted
+        int writing;
+        // сколько записей начиналось всего: пересчет, за время которого началась запись, не устанавливается
+        long started;
+    }
+
+    private final ExpenseRepository repository;
+    private final int quantileK;
+    private final ConcurrentHashMap<Long, Shard> shards = new ConcurrentHashMap<>();
+
+    public ExpenseSketches(ExpenseRepository repository,
+                           @Value("${expense.sketches.quantile-k:200}") int quantileK) {
+        this.repository = repository;
+        this.quantileK = quantileK;
+    }
+
+    @Override
+    public void onSaved(Expense previous, Expense saved) {
+        Shard shard = shards.computeIfAbsent(saved.getUserId(), id -> new Shard());
+        synchronized (shard) {
+            if (previous != null) {
+                markStale(shard, previous);
+            }
+            add(shard, saved);
+        }
+    }
+
+    @Override
+    public void onDeleted(Expense deleted) {
+        Shard shard = shards.get(deleted.getUserId());
+        if (shard != null) {
+            synchronized (shard) {
+                markStale(shard, deleted);
+            }
+        }
+    }
+
+    @Override
+    public void onSavedAll(List<Expense> saved) {
+        for (Expense expense : saved) {
+            Shard shard = shards.computeIfAbsent(expense.getUserId(), id -> new Shard());
+            synchronized (shard) {
+                add(shard, expense);
+            }
+        }
+    }
+
+    @Override
+    public void writeStarted(long userId) {
+        Shard shard = shards.computeIfAbsent(userId, id -> new Shard());
+        synchronized (shard) {
+            shard.writing++;
+            shard.started++;
+        }
+    }
+
+    @Override
+    public void writeCompleted(long userId) {
+        Shard shard = shards.get(userId);
+        if (shard != null) {
+            synchronized (shard) {
+                // после reset счетчик начинается заново
+                if (shard.writing > 0) {
+                    shard.writing--;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        shards.clear();
+    }
+
+    // по категориям за период; период округляется до целых месяцев, null - без границы
+    public Map<String, AmountDistribution> getByCategory(long userId, LocalDate startDate, LocalDate endDate) {
+        YearMonth from = startDate != null ? YearMonth.from(startDate) : null;
+        YearMonth to = endDate != null ? YearMonth.from(endDate) : null;
+        return collect(userId,
+                key -> (from == null || !key.month().isBefore(from)) && (to == null || !key.month().isAfter(to)),
+                Key::category);
+    }
+
+    // по месяцам ("2025-12") для одной категории или для всех (category == null)
+    public Map<String, AmountDistribution> getByMonth(long userId, String category) {
+        return collect(userId, key -> category == null || key.category().equals(category),
+                key -> key.month().toString());
+    }
+
+    private Map<String, AmountDistribution> collect(long userId, Predicate<Key> filter, Function<Key, String> group) {
+        Shard shard = shards.get(userId);
+        if (shard == null) {
+            return Map.of();
+        }
+        refreshStale(userId, shard, filter);
+        Map<String, Bucket> merged = new TreeMap<>();
+        synchronized (shard) {
+            shard.buckets.forEach((key, bucket) -> {
+                if (filter.test(key)) {
+                    merged.computeIfAbsent(group.apply(key), g -> new Bucket(quantileK)).merge(bucket);
+                }
+            });
+        }
+        Map<String, AmountDistribution> result = new LinkedHashMap<>();
+        merged.forEach((name, bucket) -> result.put(name, bucket.distribution()));
+        return result;
+    }
+
+    // база читается без блокировки, записи в это время продолжают обновлять старые скетчи.
+    // Пока запись пользователя между коммитом и onSaved, пары остаются устаревшими до следующего чтения
+    private void refreshStale(long userId, Shard shard, Predicate<Key> filter) {
+        Map<Key, Long> stale = new HashMap<>();
+        long started;
+        synchronized (shard) {
+            if (shard.writing > 0) {
+                return;
+            }
+            started = shard.started;
+            shard.buckets.forEach((key, bucket) -> {
+                if (bucket.stale && filter.test(key)) {
+                    stale.put(key, bucket.version);
+                }
+            });
+        }
+        stale.forEach((key, version) -> {
+            Bucket rebuilt = new Bucket(quantileK);
+            load(userId, key).forEach(row -> rebuilt.add(row.title(), row.amount()));
+            rebuilt.version = version;
+            synchronized (shard) {
+                Bucket current = shard.buckets.get(key);
+                // иначе остается устаревшей и пересчитается при следующем чтении
+                if (current != null && current.version == version && shard.started == started) {
+                    if (rebuilt.amounts.count() == 0) {
+                        shard.buckets.remove(key);
+                    } else {
+                        shard.buckets.put(key, rebuilt);
+                    }
+                }
+            }
+        });
+    }
+
+    private List<ExpenseView> load(long userId, Key key) {
+        LocalDate start = key.month().atDay(1);
+        LocalDate end = key.month().atEndOfMonth();
+        List<ExpenseView> rows = new ArrayList<>(
+                repository.findViewsByCategoryAndPeriod(userId, key.category(), start, end));
+        if (ExpenseAggregates.NO_CATEGORY.equals(key.category())) {
+            rows.addAll(repository.findViewsWithoutCategoryByPeriod(userId, start, end));
+        }
+        return rows;
+    }
+
+    // расходы без даты в месяц не попадают
+    private void add(Shard shard, Expense expense) {
+        Key key = key(expense);
+        if (key != null) {
+            shard.buckets.computeIfAbsent(key, k -> new Bucket(quantileK)).add(expense.getTitle(), expense.getAmount());
+        }
+    }
+
+    private static void markStale(Shard shard, Expense expense) {
+        Key key = key(expense);
+        Bucket bucket = key != null ? shard.buckets.get(key) : null;
+        if (bucket != null) {
+            bucket.stale = true;
+            bucket.version++;
+        }
+    }
+
+    private static Key key(Expense expense) {
+        if (expense.getDate() == null) {
+            return null;
+        }
+        String category = expense.getCategory() != null ? expense.getCategory() : ExpenseAggregates.NO_CATEGORY;
+        return new Key(category, YearMonth.from(expense.getDate()));
+    }
+}
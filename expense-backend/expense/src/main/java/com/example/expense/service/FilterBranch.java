@@ -0,0 +1,26 @@
+package com.example.expense.service;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+// ветка фильтра GET /expenses, /expenses/filter: какие параметры заданы
+public enum FilterBranch {
+    CATEGORY_PERIOD, CATEGORY, PERIOD, ALL;
+
+    public static FilterBranch of(String category, LocalDate startDate, LocalDate endDate) {
+        if (category != null && startDate != null && endDate != null) {
+            return CATEGORY_PERIOD;
+        } else if (category != null && startDate == null && endDate == null) {
+            return CATEGORY;
+        } else if (category == null && startDate != null && endDate != null) {
+            return PERIOD;
+        } else {
+            return ALL;
+        }
+    }
+
+    // значение тега в метриках
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.expense.service;
+
+// когда журнал сбрасывается на диск (fsync)
+public enum FsyncPolicy {
+    // перед ответом каждой записи; одновременные записи могут разделить один fsync
+    PER_WRITE,
+    // перед ответом, но fsync делает фоновый поток раз в group-commit-ms сразу для всех ожидающих
+    GROUP,
+    // в фоне раз в fsync-interval-ms, без ожидания: при сбое питания теряется последний интервал
+    INTERVAL
+}
@@ -0,0 +1,136 @@
+package com.example.expense.service;
+
+import java.util.Arrays;
+
+// приближенные квантили (KLL): значения лежат по уровням, у значения на уровне h вес 2^h.
+// Переполненный уровень сортируется, и каждое второе значение уходит на уровень выше - память O(k log(n/k)),
+// ошибка ранга порядка 1/k. Скетчи складываются (merge), поэтому месяцы объединяются в любой период.
+// Пока значений меньше k, ответ точный. Не потокобезопасен
+public final class QuantileSketch {
+
+    private final int k;
+    private double[][] levels = new double[1][8];
+    private int[] sizes = new int[1];
+    private int[] capacities = {0};
+    private int retained;
+    private int totalCapacity;
+    private long count;
+    // с какой позиции брать каждое второе значение: чередуем, чтобы не смещать квантили в одну сторону
+    private boolean oddOffset;
+
+    public QuantileSketch(int k) {
+        this.k = k;
+        updateCapacities();
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public void add(double value) {
+        append(0, value);
+        count++;
+        compressIfNeeded();
+    }
+
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels.length; h++) {
+            if (h == levels.length) {
+                addLevel();
+            }
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        compressIfNeeded();
+    }
+
+    // q от 0 до 1; NaN, если значений нет
+    public double quantile(double q) {
+        if (retained == 0) {
+            return Double.NaN;
+        }
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        Integer[] order = new Integer[retained];
+        int n = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                weights[n] = 1L << h;
+                order[n] = n;
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        // первое значение, на котором накопленный вес достигает q от общего
+        double target = q * count;
+        long cumulative = 0;
+        for (int i : order) {
+            cumulative += weights[i];
+            if (cumulative >= target) {
+                return values[i];
+            }
+        }
+        return values[order[retained - 1]];
+    }
+
+    private void addLevel() {
+        levels = Arrays.copyOf(levels, levels.length + 1);
+        levels[levels.length - 1] = new double[8];
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        updateCapacities();
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], sizes[level] * 2);
+        }
+        levels[level][sizes[level]++] = value;
+        retained++;
+    }
+
+    // верхний уровень вмещает k, каждый ниже - 2/3 от следующего, но не меньше 2
+    private void updateCapacities() {
+        capacities = new int[levels.length];
+        totalCapacity = 0;
+        for (int h = 0; h < levels.length; h++) {
+            int depth = levels.length - 1 - h;
+            capacities[h] = Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+            totalCapacity += capacities[h];
+        }
+    }
+
+    private void compressIfNeeded() {
+        while (retained > totalCapacity) {
+            // сумма размеров больше суммы емкостей - хотя бы один уровень заполнен
+            for (int h = 0; h < levels.length; h++) {
+                if (sizes[h] >= capacities[h]) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compact(int level) {
+        if (level + 1 == levels.length) {
+            addLevel();
+        }
+        double[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        // при нечетном числе последнее значение остается на месте, общий вес не меняется
+        int even = size & ~1;
+        for (int i = oddOffset ? 1 : 0; i < even; i += 2) {
+            append(level + 1, items[i]);
+        }
+        oddOffset = !oddOffset;
+        if (even < size) {
+            items[0] = items[size - 1];
+        }
+        sizes[level] = size - even;
+        retained -= even;
+    }
+}
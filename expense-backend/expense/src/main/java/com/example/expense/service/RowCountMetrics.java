@@ -0,0 +1,30 @@
+package com.example.expense.service;
+
+import com.example.expense.repository.ExpenseRepository;
+import com.example.expense.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+// число строк в таблицах, считается при каждом чтении метрик (scrape)
+@Component
+public class RowCountMetrics implements MeterBinder {
+    private final ExpenseRepository expenseRepository;
+    private final UserRepository userRepository;
+
+    public RowCountMetrics(ExpenseRepository expenseRepository, UserRepository userRepository) {
+        this.expenseRepository = expenseRepository;
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("expense.table.rows", expenseRepository, ExpenseRepository::count)
+                .tag("table", "expense")
+                .register(registry);
+        Gauge.builder("expense.table.rows", userRepository, UserRepository::count)
+                .tag("table", "users")
+                .register(registry);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.expense.service;
+
+import com.example.expense.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// сессии входа по токену: проверка токена не ходит в базу.
+// Сессия живет не дольше ttl и истекает после idle-timeout без запросов.
+// У пользователя не больше max-per-user сессий: новый вход вытесняет его самую старую.
+// Общей блокировки нет: место занимается счетчиком, вход блокирует только запись своего пользователя
+@Component
+public class SessionStore {
+    private static final String BEARER = "Bearer ";
+    private static final int TOKEN_BYTES = 32;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    private final long ttlMillis;
+    private final long idleMillis;
+    private final int maxSessions;
+    private final int maxPerUser;
+    private final LongSupplier clock;
+    // число сессий в sessions: место занимается до вставки и освобождается при удалении
+    private final AtomicInteger count = new AtomicInteger();
+    // токены пользователя от старых к новым; очередь меняется только внутри compute по его id.
+    // Вышедшие и истекшие токены убираются отсюда при следующем входе пользователя или в sweep
+    private final ConcurrentHashMap<Long, ArrayDeque<String>> tokensByUser = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SessionStore(@Value("${expense.session.ttl:12h}") Duration ttl,
+                        @Value("${expense.session.idle-timeout:30m}") Duration idleTimeout,
+                        @Value("${expense.session.max-sessions:500000}") int maxSessions,
+                        @Value("${expense.session.max-per-user:10}") int maxPerUser) {
+        this(ttl, idleTimeout, maxSessions, maxPerUser, System::currentTimeMillis);
+    }
+
+    SessionStore(Duration ttl, Duration idleTimeout, int maxSessions, int maxPerUser, LongSupplier clock) {
+        this.ttlMillis = ttl.toMillis();
+        this.idleMillis = idleTimeout.toMillis();
+        this.maxSessions = maxSessions;
+        this.maxPerUser = maxPerUser;
+        this.clock = clock;
+    }
+
+    // токен из заголовка "Authorization: Bearer <token>"
+    public static String bearer(String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER)) {
+            return null;
+        }
+        return authorization.substring(BEARER.length()).trim();
+    }
+
+    // ограничение памяти: сначала освобождаются вышедшие и истекшие сессии самого пользователя,
+    // если места все равно нет - IllegalStateException (AuthController отвечает 503).
+    // Чужие истекшие сессии убирает только sweep: вход не перебирает все сессии
+    public String create(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = encoder.encodeToString(bytes);
+        long now = clock.getAsLong();
+        Session session = new Session(user.getId(), user.getUsername(), now);
+        tokensByUser.compute(user.getId(), (id, tokens) -> {
+            ArrayDeque<String> result = tokens != null ? tokens : new ArrayDeque<>();
+            result.removeIf(old -> {
+                Session current = sessions.get(old);
+                if (current != null && isExpired(current, now)) {
+                    remove(old, current);
+                    return true;
+                }
+                return current == null;
+            });
+            while (result.size() >= maxPerUser) {
+                remove(result.removeFirst());
+            }
+            if (!reserve()) {
+                throw new IllegalStateException("слишком много активных сессий, попробуйте позже");
+            }
+            sessions.put(token, session);
+            result.addLast(token);
+            return result;
+        });
+        return token;
+    }
+
+    public Optional<Session> resolve(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return Optional.empty();
+        }
+        long now = clock.getAsLong();
+        if (isExpired(session, now)) {
+            remove(token, session);
+            return Optional.empty();
+        }
+        session.lastAccess = now;
+        return Optional.of(session);
+    }
+
+    public void invalidate(String token) {
+        if (token != null) {
+            remove(token);
+        }
+    }
+
+    // фоновая очистка сессий, к которым больше не обращаются; входы при этом не ждут
+    @Scheduled(fixedDelayString = "${expense.session.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = clock.getAsLong();
+        sessions.forEach((token, session) -> {
+            if (isExpired(session, now)) {
+                remove(token, session);
+            }
+        });
+        for (Long userId : tokensByUser.keySet()) {
+            tokensByUser.computeIfPresent(userId, (id, tokens) -> {
+                tokens.removeIf(token -> !sessions.containsKey(token));
+                return tokens.isEmpty() ? null : tokens;
+            });
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    // занять место под сессию; при переполнении счетчик возвращается
+    private boolean reserve() {
+        if (count.incrementAndGet() <= maxSessions) {
+            return true;
+        }
+        count.decrementAndGet();
+        return false;
+    }
+
+    private void remove(String token) {
+        if (sessions.remove(token) != null) {
+            count.decrementAndGet();
+        }
+    }
+
+    private void remove(String token, Session session) {
+        if (sessions.remove(token, session)) {
+            count.decrementAndGet();
+        }
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.createdAt >= ttlMillis || now - session.lastAccess >= idleMillis;
+    }
+
+    public static final class Session {
+        private final Long userId;
+        private final String username;
+        private final long createdAt;
+        private volatile long lastAccess;
+
+        Session(Long userId, String username, long createdAt) {
+            this.userId = userId;
+            this.username = username;
+            this.createdAt = createdAt;
+            this.lastAccess = createdAt;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+    }
+}
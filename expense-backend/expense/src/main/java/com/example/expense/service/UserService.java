@@ -3,18 +3,23 @@ package com.example.expense.service;
 import com.example.expense.model.User;
 import com.example.expense.repository.UserRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 @Service
 public class UserService {
     private final UserRepository userRepository;
+    // есть только в режиме хранения wal
+    private final Optional<DurableExpenseStore> durableStore;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, Optional<DurableExpenseStore> durableStore) {
         this.userRepository = userRepository;
+        this.durableStore = durableStore;
     }
 
-    // регистрация пользователя
+    // регистрация пользователя; в режиме wal пользователь попадает в журнал до коммита
+    @Transactional
     public User register(User user) {
         // Проверяем, существует ли пользователь
         if (userRepository.existsByUsername(user.getUsername())) {
@@ -22,7 +27,9 @@ public class UserService {
         }
 
         // Сохраняем пользователя (пароль без шифрования)
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        durableStore.ifPresent(store -> store.onUserRegistered(saved));
+        return saved;
     }
 
     // авторизация
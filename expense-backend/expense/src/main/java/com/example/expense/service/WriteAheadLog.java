@@ -0,0 +1,344 @@
+package com.example.expense.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// журнал упреждающей записи: сегменты фиксированного размера, отображенные в память (mmap).
+// Запись: [int длина payload][int crc32c(seq + payload)][long seq][payload], нулевая длина - конец сегмента.
+// Номера записей (seq) идут подряд, файл сегмента называется по номеру первой записи
+public class WriteAheadLog implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final int HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    // дольше ждать fsync в режиме GROUP нельзя: ожидающий держит транзакцию и блокировки строк
+    private static final long SYNC_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @FunctionalInterface
+    public interface RecordHandler {
+        void accept(long seq, ByteBuffer payload);
+    }
+
+    private final Path dir;
+    private final int segmentSize;
+    private final FsyncPolicy policy;
+    // период фонового fsync для GROUP и INTERVAL
+    private final long flushIntervalMillis;
+
+    // запись в сегмент и смена сегмента
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // один fsync за раз: кто пришел позже, часто уже покрыт чужим fsync
+    private final ReentrantLock syncLock = new ReentrantLock();
+    // ожидание фонового fsync в режиме GROUP
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition synced = waitLock.newCondition();
+    private final AtomicLong syncedSeq = new AtomicLong();
+    // первая ошибка fsync: после нее неизвестно, что из записанного на диске, поэтому журнал больше не пишет
+    private volatile IOException syncError;
+    private volatile boolean closed;
+    private ScheduledExecutorService flusher;
+
+    private MappedByteBuffer segment;
+    private int writePosition;
+    private long lastSeq;
+
+    public WriteAheadLog(Path dir, int segmentSize, FsyncPolicy policy, Duration flushInterval) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.policy = policy;
+        this.flushIntervalMillis = Math.max(1, flushInterval.toMillis());
+    }
+
+    // читает все сегменты, отдает записи с номером больше afterSeq и открывает новый сегмент для записи.
+    // Чтение останавливается на первой битой записи (оборванный хвост при сбое) или на разрыве номеров,
+    // сегменты после этого места переименовываются в *.corrupt
+    public long recover(long afterSeq, RecordHandler handler) throws IOException {
+        Files.createDirectories(dir);
+        List<Path> segments = listSegments();
+        long last = afterSeq;
+        int i = 0;
+        for (; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            long firstSeq = firstSeq(path);
+            if (firstSeq > last + 1) {
+                log.warn("Разрыв в журнале перед {}: ожидалась запись {}", path.getFileName(), last + 1);
+                break;
+            }
+            last = Math.max(last, readSegment(path, firstSeq, afterSeq, handler));
+        }
+        for (; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            Files.move(path, path.resolveSibling(path.getFileName() + ".corrupt"));
+        }
+
+        appendLock.lock();
+        try {
+            lastSeq = last;
+            syncedSeq.set(last);
+            openSegment(last + 1);
+        } finally {
+            appendLock.unlock();
+        }
+        startFlusher();
+        return last;
+    }
+
+    // последний номер из прочитанных в сегменте; номера подряд начиная с firstSeq
+    private long readSegment(Path path, long firstSeq, long afterSeq, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long expected = firstSeq;
+            int position = 0;
+            while (position + HEADER <= buffer.limit()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + HEADER + length > buffer.limit()) {
+                    break;
+                }
+                int checksum = buffer.getInt(position + Integer.BYTES);
+                long seq = buffer.getLong(position + 2 * Integer.BYTES);
+                CRC32C crc = new CRC32C();
+                crc.update(buffer.slice(position + 2 * Integer.BYTES, Long.BYTES + length));
+                if ((int) crc.getValue() != checksum || seq != expected) {
+                    log.warn("Битая запись {} в {}, хвост сегмента пропущен", expected, path.getFileName());
+                    break;
+                }
+                if (seq > afterSeq) {
+                    handler.accept(seq, buffer.slice(position + HEADER, length).asReadOnlyBuffer());
+                }
+                expected++;
+                position += HEADER + length;
+            }
+            return expected - 1;
+        }
+    }
+
+    public long append(byte[] payload) {
+        int size = HEADER + payload.length;
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("запись больше сегмента журнала: " + size + " байт");
+        }
+        appendLock.lock();
+        try {
+            checkWritable();
+            if (writePosition + size > segmentSize) {
+                roll();
+            }
+            long seq = lastSeq + 1;
+            int position = writePosition;
+            segment.putLong(position + 2 * Integer.BYTES, seq);
+            segment.put(position + HEADER, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(segment.slice(position + 2 * Integer.BYTES, Long.BYTES + payload.length));
+            segment.putInt(position + Integer.BYTES, (int) crc.getValue());
+            // длина пишется последней: пока она 0, при чтении запись считается отсутствующей
+            segment.putInt(position, payload.length);
+            writePosition += size;
+            lastSeq = seq;
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // дождаться, пока запись seq станет устойчивой в соответствии с политикой.
+    // IllegalStateException - fsync не удался, не дождались его или журнал закрыт: транзакция должна откатиться
+    public void commit(long seq) {
+        switch (policy) {
+            case PER_WRITE -> sync(seq);
+            case GROUP -> awaitSynced(seq);
+            case INTERVAL -> {
+            }
+        }
+    }
+
+    public void sync(long seq) {
+        if (syncedSeq.get() >= seq) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (syncedSeq.get() >= seq) {
+                return;
+            }
+            MappedByteBuffer buffer;
+            long upTo;
+            appendLock.lock();
+            try {
+                buffer = segment;
+                upTo = lastSeq;
+            } finally {
+                appendLock.unlock();
+            }
+            checkWritable();
+            // предыдущие сегменты уже сброшены при смене сегмента
+            try {
+                buffer.force();
+            } catch (UncheckedIOException e) {
+                syncError = e.getCause();
+                throw new IllegalStateException("fsync журнала не удался", e.getCause());
+            }
+            syncedSeq.accumulateAndGet(upTo, Math::max);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    public long lastSeq() {
+        appendLock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // удалить сегменты, все записи которых не новее seq (они уже есть в снимке)
+    public void deleteUpTo(long seq) throws IOException {
+        List<Path> segments = listSegments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSeq(segments.get(i + 1)) - 1 > seq) {
+                break;
+            }
+            Files.delete(segments.get(i));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        appendLock.lock();
+        try {
+            closed = true;
+            if (segment != null && syncError == null) {
+                segment.force();
+                syncedSeq.accumulateAndGet(lastSeq, Math::max);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        signalSynced();
+    }
+
+    private void awaitSynced(long seq) {
+        waitLock.lock();
+        try {
+            long remaining = SYNC_TIMEOUT_NANOS;
+            while (syncedSeq.get() < seq) {
+                checkWritable();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("fsync журнала не выполнен за "
+                            + TimeUnit.NANOSECONDS.toSeconds(SYNC_TIMEOUT_NANOS) + " с");
+                }
+                remaining = synced.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("ожидание fsync журнала прервано", e);
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    // ошибку видят ожидающие в awaitSynced, здесь ее только пишем в лог
+    private void flush() {
+        try {
+            sync(lastSeq());
+        } catch (RuntimeException e) {
+            log.error("fsync журнала не удался", e);
+        }
+        signalSynced();
+    }
+
+    private void checkWritable() {
+        if (syncError != null) {
+            throw new IllegalStateException("журнал недоступен после ошибки fsync", syncError);
+        }
+        if (closed) {
+            throw new IllegalStateException("журнал закрыт");
+        }
+    }
+
+    private void signalSynced() {
+        waitLock.lock();
+        try {
+            synced.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private void startFlusher() {
+        if (policy == FsyncPolicy.PER_WRITE || flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void roll() throws IOException {
+        try {
+            segment.force();
+        } catch (UncheckedIOException e) {
+            syncError = e.getCause();
+            throw new IllegalStateException("fsync журнала не удался", e.getCause());
+        }
+        syncedSeq.accumulateAndGet(lastSeq, Math::max);
+        openSegment(lastSeq + 1);
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        Path path = dir.resolve(String.format("%s%020d%s", PREFIX, firstSeq, SUFFIX));
+        // сегмент с этим номером мог остаться от оборванной записи и не содержит целых записей
+        Files.deleteIfExists(path);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        writePosition = 0;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long firstSeq(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
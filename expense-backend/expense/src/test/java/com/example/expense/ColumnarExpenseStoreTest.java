@@ -0,0 +1,145 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AnalyticsSummary;
+import com.example.expense.model.Expense;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarExpenseStoreTest {
+
+    private static final long USER_ID = 1L;
+
+    private final ColumnarExpenseStore store = new ColumnarExpenseStore();
+
+    @Test
+    void analytics_shouldMatchSavedRows() {
+        // Arrange
+        store.onSaved(null, expense(1L, 100.0, LocalDate.of(2025, 12, 1), "Еда"));
+        store.onSaved(null, expense(2L, 50.0, LocalDate.of(2025, 12, 10), null));
+        store.onSaved(null, expense(3L, 30.0, LocalDate.of(2025, 12, 10), "Еда"));
+
+        // Act
+        Map<String, Double> byCategory = store.getSumsByCategory(USER_ID);
+
+        // Assert
+        assertEquals(130.0, byCategory.get("Еда"), 0.001);
+        assertEquals(50.0, byCategory.get("Без категории"), 0.001);
+        assertEquals(180.0, store.getTotal(USER_ID), 0.001);
+        assertEquals(18.0, store.getAveragePerDay(USER_ID), 0.001);
+    }
+
+    @Test
+    void summary_shouldMatchSeparateQueries() {
+        // Arrange
+        store.onSaved(null, expense(1L, 100.0, LocalDate.of(2025, 12, 1), "Еда"));
+        store.onSaved(null, expense(2L, 50.0, LocalDate.of(2025, 12, 10), null));
+        store.onSaved(null, expense(3L, 30.0, null, "Еда"));
+
+        // Act
+        AnalyticsSummary summary = store.getSummary(USER_ID);
+
+        // Assert
+        assertEquals(store.getSumsByCategory(USER_ID), summary.byCategory());
+        assertEquals(store.getTotal(USER_ID), summary.total(), 0.001);
+        assertEquals(store.getAveragePerDay(USER_ID), summary.averagePerDay(), 0.001);
+    }
+
+    @Test
+    void sumsBetween_shouldFilterByDay() {
+        // Arrange
+        store.onSaved(null, expense(1L, 100.0, LocalDate.of(2025, 11, 30), "Еда"));
+        store.onSaved(null, expense(2L, 40.0, LocalDate.of(2025, 12, 1), "Еда"));
+
+        // Act
+        Map<String, Double> december = store.getSumsByCategoryBetween(USER_ID,
+                LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 31)).orElseThrow();
+
+        // Assert
+        assertEquals(Map.of("Еда", 40.0), december);
+    }
+
+    @Test
+    void updateAndDelete_shouldReplaceRows() {
+        // Arrange
+        Expense original = expense(1L, 100.0, LocalDate.of(2025, 12, 1), "Еда");
+        store.onSaved(null, original);
+        store.onSaved(null, expense(2L, 10.0, LocalDate.of(2025, 12, 2), "Транспорт"));
+
+        // Act
+        store.onSaved(original, expense(1L, 70.0, LocalDate.of(2025, 12, 1), "Еда"));
+        store.onDeleted(expense(2L, 10.0, LocalDate.of(2025, 12, 2), "Транспорт"));
+
+        // Assert
+        assertEquals(1, store.size(USER_ID));
+        assertEquals(Map.of("Еда", 70.0), store.getSumsByCategory(USER_ID));
+    }
+
+    @Test
+    void manyRows_shouldSpanSeveralSegments() {
+        // Arrange
+        int rows = 200_000;
+        for (long id = 1; id <= rows; id++) {
+            store.onSaved(null, expense(id, 1.0, LocalDate.of(2025, 1, 1).plusDays(id % 365), "Еда"));
+        }
+
+        // Act
+        store.onDeleted(expense(5L, 1.0, null, "Еда"));
+
+        // Assert
+        assertEquals(rows - 1, store.size(USER_ID));
+        assertEquals(rows - 1, store.getTotal(USER_ID), 0.001);
+    }
+
+    @Test
+    void manyDeletes_shouldRemoveExactlyDeletedRows() {
+        // Arrange: сумма расхода равна его id
+        int rows = 100_000;
+        double expected = 0.0;
+        for (long id = 1; id <= rows; id++) {
+            store.onSaved(null, expense(id, id, LocalDate.of(2025, 1, 1), "Еда"));
+            expected += id;
+        }
+
+        // Act: удаляем каждый третий, повторное удаление ничего не меняет; последняя строка переехала на место id 3
+        for (long id = 3; id <= rows; id += 3) {
+            store.onDeleted(expense(id, id, null, "Еда"));
+            expected -= id;
+        }
+        store.onDeleted(expense(3L, 3.0, null, "Еда"));
+        store.onSaved(expense((long) rows, rows, LocalDate.of(2025, 1, 1), "Еда"),
+                expense((long) rows, 0.5, LocalDate.of(2025, 1, 1), "Еда"));
+        expected -= rows - 0.5;
+
+        // Assert
+        assertEquals(rows - rows / 3, store.size(USER_ID));
+        assertEquals(expected, store.getTotal(USER_ID), 0.001);
+    }
+
+    @Test
+    void analytics_shouldBeSeparatePerUser() {
+        // Arrange
+        store.onSaved(null, expense(1L, 100.0, LocalDate.of(2025, 12, 1), "Еда"));
+        Expense other = expense(2L, 40.0, LocalDate.of(2025, 12, 1), "Еда");
+        other.setUserId(2L);
+        store.onSaved(null, other);
+
+        // Act
+        store.onDeleted(other);
+
+        // Assert
+        assertEquals(Map.of("Еда", 100.0), store.getSumsByCategory(USER_ID));
+        assertEquals(0, store.size(2L));
+        assertEquals(0.0, store.getTotal(3L), 0.001);
+    }
+
+    private static Expense expense(Long id, double amount, LocalDate date, String category) {
+        Expense expense = new Expense("x", amount, date, category, null);
+        expense.setId(id);
+        expense.setUserId(USER_ID);
+        return expense;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.expense.service;
+
+import com.example.expense.ExpenseApplication;
+import com.example.expense.model.Expense;
+import com.example.expense.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// режим wal: после перезапуска пользователи и их расходы восстанавливаются из снимка или журнала,
+// и новый пользователь не получает id (а с ним и расходы) старого
+class DurableExpenseStoreRestartTest {
+
+    @TempDir
+    Path walDir;
+
+    @Test
+    void restart_fromSnapshot_shouldKeepUsersAndOwnership() {
+        // Arrange
+        long aliceId = firstRun("snapshot");
+
+        // Act & Assert
+        assertRestored(aliceId, "snapshot");
+    }
+
+    @Test
+    void restart_fromLogOnly_shouldKeepUsersAndOwnership() throws IOException {
+        // Arrange: без снимков все восстанавливается из журнала
+        long aliceId = firstRun("log");
+        try (Stream<Path> files = Files.list(walDir)) {
+            for (Path snapshot : files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).toList()) {
+                Files.delete(snapshot);
+            }
+        }
+
+        // Act & Assert
+        assertRestored(aliceId, "log");
+    }
+
+    private long firstRun(String db) {
+        try (ConfigurableApplicationContext context = start(db + "-before", walDir)) {
+            User alice = context.getBean(UserService.class).register(new User("alice", "secret", null));
+            context.getBean(ExpenseService.class)
+                    .save(alice.getId(), new Expense("Кофе", 200.0, LocalDate.of(2025, 12, 1), "Еда", null));
+            return alice.getId();
+        }
+    }
+
+    private void assertRestored(long aliceId, String db) {
+        try (ConfigurableApplicationContext context = start(db + "-after", walDir)) {
+            UserService users = context.getBean(UserService.class);
+            ExpenseService expenses = context.getBean(ExpenseService.class);
+
+            User bob = users.register(new User("bob", "secret", null));
+
+            assertEquals(aliceId, (long) users.login("alice", "secret").getId());
+            assertNotEquals(aliceId, (long) bob.getId());
+            assertTrue(expenses.getAll(bob.getId()).isEmpty());
+            assertEquals(1, expenses.getAll(aliceId).size());
+            assertThrows(RuntimeException.class, () -> users.register(new User("alice", "other", null)));
+        }
+    }
+
+    @Test
+    void restart_snapshotTakenDuringOpenTransaction_shouldReplayItsRecords() throws IOException {
+        // Arrange: записи транзакции уже в журнале, снимок снимается до ее коммита
+        Path live = walDir.resolve("live");
+        Path crashed = walDir.resolve("crashed");
+        long aliceId;
+        try (ConfigurableApplicationContext context = start("open-tx-before", live)) {
+            UserService users = context.getBean(UserService.class);
+            ExpenseService expenses = context.getBean(ExpenseService.class);
+            DurableExpenseStore store = context.getBean(DurableExpenseStore.class);
+            users.register(new User("bob", "secret", null));
+
+            aliceId = new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).execute(status -> {
+                User alice = users.register(new User("alice", "secret", null));
+                expenses.save(alice.getId(), new Expense("Кофе", 200.0, LocalDate.of(2025, 12, 1), "Еда", null));
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        store.snapshot();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).join();
+                return alice.getId();
+            });
+
+            // сбой сразу после коммита: на диске только этот снимок и журнал, снимка при остановке нет
+            Files.createDirectories(crashed);
+            try (Stream<Path> files = Files.list(live)) {
+                for (Path file : files.toList()) {
+                    Files.copy(file, crashed.resolve(file.getFileName()));
+                }
+            }
+        }
+
+        // Act & Assert
+        try (ConfigurableApplicationContext context = start("open-tx-after", crashed)) {
+            UserService users = context.getBean(UserService.class);
+            assertEquals(aliceId, (long) users.login("alice", "secret").getId());
+            assertNotNull(users.login("bob", "secret"));
+            assertEquals(1, context.getBean(ExpenseService.class).getAll(aliceId).size());
+        }
+    }
+
+    // у каждого запуска своя база в памяти: все, что видно после перезапуска, пришло с диска
+    private ConfigurableApplicationContext start(String db, Path dir) {
+        return new SpringApplicationBuilder(ExpenseApplication.class)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:" + db,
+                        "expense.storage.mode=wal",
+                        "expense.wal.dir=" + dir,
+                        "expense.wal.segment-size=1MB",
+                        "server.port=0",
+                        "management.server.port=-1")
+                .run();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.ExpenseChanges;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseChangeLogTest {
+
+    private static final long USER_ID = 1L;
+
+    private ExpenseChangeLog changeLog;
+
+    @BeforeEach
+    void setUp() {
+        changeLog = new ExpenseChangeLog(new ExpenseDataVersion(), 3, 100);
+    }
+
+    private static Expense expense(Long id, String title) {
+        Expense expense = new Expense(title, 100.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        expense.setId(id);
+        expense.setUserId(USER_ID);
+        return expense;
+    }
+
+    @Test
+    void since_shouldReturnLatestStateOfEachChangedExpenseAndTombstones() {
+        // Arrange
+        changeLog.onSaved(null, expense(1L, "Обед"));
+        String cursor = changeLog.cursor(USER_ID);
+        changeLog.onSaved(null, expense(2L, "Кофе"));
+        changeLog.onSaved(expense(2L, "Кофе"), expense(2L, "Кофе с собой"));
+        changeLog.onDeleted(expense(1L, "Обед"));
+
+        // Act
+        ExpenseChanges changes = changeLog.since(USER_ID, cursor, 100).orElseThrow();
+
+        // Assert
+        assertEquals(List.of("Кофе с собой"), changes.changed().stream().map(ExpenseView::title).toList());
+        assertEquals(List.of(1L), changes.deleted());
+        assertFalse(changes.hasMore());
+        assertEquals(changeLog.cursor(USER_ID), changes.cursor());
+        assertEquals(Optional.of(new ExpenseChanges(changes.cursor(), List.of(), List.of(), false)),
+                changeLog.since(USER_ID, changes.cursor(), 100));
+    }
+
+    @Test
+    void since_overLimit_shouldContinueFromReturnedCursor() {
+        // Arrange
+        String cursor = changeLog.cursor(USER_ID);
+        changeLog.onSavedAll(List.of(expense(1L, "Обед"), expense(2L, "Кофе"), expense(3L, "Такси")));
+
+        // Act
+        ExpenseChanges first = changeLog.since(USER_ID, cursor, 2).orElseThrow();
+        ExpenseChanges second = changeLog.since(USER_ID, first.cursor(), 2).orElseThrow();
+
+        // Assert
+        assertTrue(first.hasMore());
+        assertEquals(List.of(1L, 2L), first.changed().stream().map(ExpenseView::id).toList());
+        assertFalse(second.hasMore());
+        assertEquals(List.of(3L), second.changed().stream().map(ExpenseView::id).toList());
+    }
+
+    @Test
+    void since_cursorOlderThanRetainedLog_shouldRequireResync() {
+        // Arrange
+        String cursor = changeLog.cursor(USER_ID);
+        changeLog.onSaved(null, expense(1L, "Обед"));
+        String afterFirst = changeLog.cursor(USER_ID);
+
+        // Act: в журнале помещаются 3 изменения, первое выбрасывается
+        for (long id = 2; id <= 4; id++) {
+            changeLog.onSaved(null, expense(id, "Кофе"));
+        }
+
+        // Assert
+        assertTrue(changeLog.since(USER_ID, cursor, 100).isEmpty());
+        assertEquals(3, changeLog.since(USER_ID, afterFirst, 100).orElseThrow().changed().size());
+    }
+
+    @Test
+    void since_overTotalLimit_shouldDropOldestChangesOfAnyUser() {
+        // Arrange: всего помещаются 4 изменения, по 3 на пользователя
+        changeLog = new ExpenseChangeLog(new ExpenseDataVersion(), 3, 4);
+        String cursor = changeLog.cursor(USER_ID);
+        changeLog.onSaved(null, expense(1L, "Обед"));
+        changeLog.onSaved(null, expense(2L, "Кофе"));
+        String afterOwn = changeLog.cursor(USER_ID);
+        String otherCursor = changeLog.cursor(2L);
+
+        // Act: изменения другого пользователя вытесняют самое старое изменение первого
+        for (long id = 3; id <= 5; id++) {
+            Expense other = expense(id, "Такси");
+            other.setUserId(2L);
+            changeLog.onSaved(null, other);
+        }
+
+        // Assert
+        assertTrue(changeLog.since(USER_ID, cursor, 100).isEmpty());
+        assertEquals(List.of(), changeLog.since(USER_ID, afterOwn, 100).orElseThrow().changed());
+        assertEquals(3, changeLog.since(2L, otherCursor, 100).orElseThrow().changed().size());
+    }
+
+    @Test
+    void since_shouldNotShowOtherUsersChanges() {
+        // Arrange
+        String cursor = changeLog.cursor(USER_ID);
+        Expense other = expense(2L, "Кофе");
+        other.setUserId(2L);
+
+        // Act
+        changeLog.onSaved(null, other);
+
+        // Assert
+        assertEquals(cursor, changeLog.cursor(USER_ID));
+        assertEquals(List.of(), changeLog.since(USER_ID, cursor, 100).orElseThrow().changed());
+    }
+
+    @Test
+    void since_withoutCursorOrFromAnotherRun_shouldRequireResync() {
+        // Arrange
+        ExpenseChangeLog previousRun = new ExpenseChangeLog(new ExpenseDataVersion() {
+            @Override
+            public String epoch() {
+                return "old";
+            }
+        }, 3, 100);
+
+        // Act & Assert
+        assertTrue(changeLog.since(USER_ID, null, 100).isEmpty());
+        assertTrue(changeLog.since(USER_ID, previousRun.cursor(USER_ID), 100).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> changeLog.since(USER_ID, "abc", 100));
+    }
+}
@@ -1,20 +1,46 @@
 package com.example.expense.controller;
 
+import com.example.expense.dto.AmountDistribution;
+import com.example.expense.dto.Dashboard;
+import com.example.expense.dto.ExpenseColumns;
+import com.example.expense.dto.ExpensePage;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.dto.PeriodAnalytics;
 import com.example.expense.model.Expense;
+import com.example.expense.service.ExpenseDashboardService;
+import com.example.expense.service.ExpenseDataVersion;
+import com.example.expense.service.ExpenseGroupCommitWriter;
 import com.example.expense.service.ExpenseService;
+import com.example.expense.service.ExpenseSketches;
+import com.example.expense.service.SessionStore;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -22,23 +48,83 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @WebMvcTest(ExpenseController.class)
 class ExpenseControllerTest {
 
+    private static final long USER_ID = 1L;
+
+    private static final String BEARER = "Bearer token-1";
+
     @Autowired
     private MockMvc mockMvc;
 
     @MockBean
     private ExpenseService service;
 
+    @MockBean
+    private ExpenseDataVersion dataVersion;
+
+    @MockBean
+    private ExpenseDashboardService dashboardService;
+
+    @MockBean
+    private ExpenseSketches sketches;
+
+    @MockBean
+    private SessionStore sessions;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @BeforeEach
+    void signIn() {
+        SessionStore.Session session = mock(SessionStore.Session.class);
+        when(session.getUserId()).thenReturn(USER_ID);
+        when(sessions.resolve("token-1")).thenReturn(Optional.of(session));
+    }
+
+    @Test
+    void getAll_withoutToken_shouldReturnUnauthorized() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/expenses"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string(HttpHeaders.WWW_AUTHENTICATE, "Bearer"));
+        mockMvc.perform(get("/expenses").header(HttpHeaders.AUTHORIZATION, "Bearer unknown"))
+                .andExpect(status().isUnauthorized());
+        verify(service, never()).getPage(anyLong(), any(), any(), any(), any(), anyInt());
+    }
+
     @Test
     void getAll_shouldReturnList() throws Exception {
         // Arrange
-        when(service.getAll()).thenReturn(List.of(new Expense()));
+        when(service.getPage(eq(USER_ID), isNull(), isNull(), isNull(), isNull(), anyInt()))
+                .thenReturn(new ExpensePage(List.of(view()), null));
 
         // Act & Assert
-        mockMvc.perform(get("/expenses"))
-                .andExpect(status().isOk());
+        mockMvc.perform(get("/expenses").header(HttpHeaders.AUTHORIZATION, BEARER))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isArray())
+                .andExpect(header().doesNotExist(ExpenseController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void getAll_withMorePages_shouldReturnNextCursorAndCapLimit() throws Exception {
+        // Arrange
+        when(service.getPage(eq(USER_ID), isNull(), isNull(), isNull(), eq("abc"), eq(500)))
+                .thenReturn(new ExpensePage(List.of(view()), "next"));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses").header(HttpHeaders.AUTHORIZATION, BEARER).param("cursor", "abc").param("limit", "100000"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ExpenseController.NEXT_CURSOR_HEADER, "next"));
+    }
+
+    @Test
+    void getAll_withBrokenCursor_shouldReturnBadRequest() throws Exception {
+        // Arrange
+        when(service.getPage(eq(USER_ID), any(), any(), any(), any(), anyInt()))
+                .thenThrow(new IllegalArgumentException("некорректный cursor"));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses").header(HttpHeaders.AUTHORIZATION, BEARER).param("cursor", "???"))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -46,10 +132,10 @@ class ExpenseControllerTest {
         // Arrange
         Expense expense = new Expense("Юбка", 1500.0, LocalDate.now(), "Покупки", null);
 
-        when(service.save(any(Expense.class))).thenReturn(expense);
+        when(service.save(eq(USER_ID), any(Expense.class))).thenReturn(expense);
 
         // Act & Assert
-        mockMvc.perform(post("/expenses")
+        mockMvc.perform(post("/expenses").header(HttpHeaders.AUTHORIZATION, BEARER)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(expense)))
                 .andExpect(status().isOk())
@@ -60,28 +146,40 @@ class ExpenseControllerTest {
     @Test
     void deleteExpense_shouldReturnOk() throws Exception {
         // Act & Assert
-        mockMvc.perform(delete("/expenses/1"))
+        mockMvc.perform(delete("/expenses/1").header(HttpHeaders.AUTHORIZATION, BEARER))
                 .andExpect(status().isOk());
+        verify(service).delete(USER_ID, 1L);
     }
 
     @Test
     void analyticsByCategory_shouldReturnMap() throws Exception {
         // Arrange
-        when(service.getAnalyticsByCategory()).thenReturn(Map.of("Еда", 300.0));
+        when(service.getAnalyticsByCategory(USER_ID)).thenReturn(Map.of("Еда", 300.0));
 
         // Act & Assert
-        mockMvc.perform(get("/expenses/analytics/category"))
+        mockMvc.perform(get("/expenses/analytics/category").header(HttpHeaders.AUTHORIZATION, BEARER))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.Еда").value(300.0));
     }
 
+    @Test
+    void recentAnalytics_shouldReturnMap() throws Exception {
+        // Arrange
+        when(service.getRecentAnalytics(USER_ID)).thenReturn(Map.of("Еда", 120.0));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/analytics/recent").header(HttpHeaders.AUTHORIZATION, BEARER))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.Еда").value(120.0));
+    }
+
     @Test
     void getRecentExpenses_shouldReturnList() throws Exception {
         // Arrange
-        when(service.getRecentExpenses()).thenReturn(List.of(new Expense()));
+        when(service.getRecentExpenses(USER_ID)).thenReturn(List.of(view()));
 
         // Act & Assert
-        mockMvc.perform(get("/expenses/recent"))
+        mockMvc.perform(get("/expenses/recent").header(HttpHeaders.AUTHORIZATION, BEARER))
                 .andExpect(status().isOk());
     }
 
@@ -89,10 +187,10 @@ class ExpenseControllerTest {
     void getExpenseByCategory_shouldReturnFilteredList() throws Exception {
         // Arrange
         String category = "Еда";
-        when(service.getByCategory(category)).thenReturn(List.of(new Expense()));
+        when(service.getByCategory(USER_ID, category)).thenReturn(List.of(new Expense()));
 
         // Act & Assert
-        mockMvc.perform(get("/expenses/category/{category}", category))
+        mockMvc.perform(get("/expenses/category/{category}", category).header(HttpHeaders.AUTHORIZATION, BEARER))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray());
     }
@@ -101,10 +199,10 @@ class ExpenseControllerTest {
     void getExpenseByDate_shouldReturnList() throws Exception {
         // Arrange
         String date = "2025-12-28";
-        when(service.getByDate(any(LocalDate.class))).thenReturn(List.of(new Expense()));
+        when(service.getByDate(eq(USER_ID), any(LocalDate.class))).thenReturn(List.of(new Expense()));
 
         // Act & Assert
-        mockMvc.perform(get("/expenses/date/{date}", date))
+        mockMvc.perform(get("/expenses/date/{date}", date).header(HttpHeaders.AUTHORIZATION, BEARER))
                 .andExpect(status().isOk());
     }
 
@@ -113,11 +211,11 @@ class ExpenseControllerTest {
         // Arrange
         String startDate = "2025-12-01";
         String endDate = "2025-12-31";
-        when(service.getByPeriod(any(LocalDate.class), any(LocalDate.class)))
+        when(service.getByPeriod(eq(USER_ID), any(LocalDate.class), any(LocalDate.class)))
                 .thenReturn(List.of(new Expense()));
 
         // Act & Assert
-        mockMvc.perform(get("/expenses/period")
+        mockMvc.perform(get("/expenses/period").header(HttpHeaders.AUTHORIZATION, BEARER)
                         .param("startDate", startDate)
                         .param("endDate", endDate))
                 .andExpect(status().isOk());
@@ -126,10 +224,11 @@ class ExpenseControllerTest {
     @Test
     void filterExpenses_shouldReturnFilteredList() throws Exception {
         // Arrange
-        when(service.filterExpenses(any(), any(), any())).thenReturn(List.of(new Expense()));
+        when(service.getPage(eq(USER_ID), eq("Еда"), any(LocalDate.class), any(LocalDate.class), isNull(), anyInt()))
+                .thenReturn(new ExpensePage(List.of(view()), null));
 
         // Act & Assert
-        mockMvc.perform(get("/expenses/filter")
+        mockMvc.perform(get("/expenses/filter").header(HttpHeaders.AUTHORIZATION, BEARER)
                         .param("category", "Еда")
                         .param("startDate", "2025-12-01")
                         .param("endDate", "2025-12-31"))
@@ -139,10 +238,10 @@ class ExpenseControllerTest {
     @Test
     void getTotalAmount_shouldReturnNumber() throws Exception {
         // Arrange
-        when(service.getTotalAmount()).thenReturn(1500.0);
+        when(service.getTotalAmount(USER_ID)).thenReturn(1500.0);
 
         // Act & Assert
-        mockMvc.perform(get("/expenses/analytics/total"))
+        mockMvc.perform(get("/expenses/analytics/total").header(HttpHeaders.AUTHORIZATION, BEARER))
                 .andExpect(status().isOk())
                 .andExpect(content().string("1500.0"));
     }
@@ -150,26 +249,188 @@ class ExpenseControllerTest {
     @Test
     void getAllCategories_shouldReturnList() throws Exception {
         // Arrange
-        when(service.getAllCategories()).thenReturn(List.of("Еда", "Транспорт"));
+        when(service.getAllCategories(USER_ID)).thenReturn(List.of("Еда", "Транспорт"));
 
         // Act & Assert
-        mockMvc.perform(get("/expenses/categories"))
+        mockMvc.perform(get("/expenses/categories").header(HttpHeaders.AUTHORIZATION, BEARER))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$[0]").value("Еда"))
                 .andExpect(jsonPath("$[1]").value("Транспорт"));
     }
 
+    @Test
+    void createExpense_groupCommitFailure_shouldMapLikeDirectSave() {
+        // Arrange: ошибки пачки приходят из join() обернутыми в CompletionException
+        ExpenseGroupCommitWriter writer = mock(ExpenseGroupCommitWriter.class);
+        ExpenseController controller = new ExpenseController(service, dashboardService, sketches,
+                Optional.of(writer), 100, 500);
+        Expense expense = new Expense("Юбка", 1500.0, LocalDate.now(), "Покупки", null);
+        when(writer.submit(eq(USER_ID), any(Expense.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalArgumentException("некорректный расход")))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("прием расходов остановлен")));
+
+        // Act & Assert
+        assertEquals(HttpStatus.BAD_REQUEST, controller.create(USER_ID, expense).getStatusCode());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, controller.create(USER_ID, expense).getStatusCode());
+    }
+
     @Test
     void createExpense_withInvalidData_shouldReturnOk() throws Exception {
         // Arrange - пустой expense
         Expense invalidExpense = new Expense();
 
-        when(service.save(any(Expense.class))).thenReturn(invalidExpense);
+        when(service.save(eq(USER_ID), any(Expense.class))).thenReturn(invalidExpense);
 
         // Act & Assert
-        mockMvc.perform(post("/expenses")
+        mockMvc.perform(post("/expenses").header(HttpHeaders.AUTHORIZATION, BEARER)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(invalidExpense)))
                 .andExpect(status().isOk());
     }
-}
\ No newline at end of file
+
+    @Test
+    void analyticsByPeriod_shouldReturnTotalsAndBuckets() throws Exception {
+        // Arrange
+        LocalDate start = LocalDate.of(2025, 1, 1);
+        LocalDate end = LocalDate.of(2025, 12, 31);
+        PeriodAnalytics analytics = new PeriodAnalytics(start, end, 500.0, 2, Map.of("Еда", 500.0), List.of(
+                new PeriodAnalytics.Bucket(start, PeriodAnalytics.Granularity.MONTH, 500.0, 2, Map.of("Еда", 500.0))));
+        when(service.getAnalyticsByPeriod(USER_ID, start, end)).thenReturn(analytics);
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/analytics/period").header(HttpHeaders.AUTHORIZATION, BEARER)
+                        .param("startDate", "2025-01-01")
+                        .param("endDate", "2025-12-31"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(500.0))
+                .andExpect(jsonPath("$.buckets[0].granularity").value("MONTH"));
+    }
+
+    @Test
+    void analyticsByPeriod_withReversedDates_shouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/expenses/analytics/period").header(HttpHeaders.AUTHORIZATION, BEARER)
+                        .param("startDate", "2025-12-31")
+                        .param("endDate", "2025-01-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static ExpenseView view() {
+        return new ExpenseView(1L, "Обед", 500.0, LocalDate.of(2025, 12, 28), "Еда", null);
+    }
+
+    @Test
+    void getCategories_withMatchingETag_shouldReturn304WithoutCallingService() throws Exception {
+        // Arrange
+        when(dataVersion.tag(USER_ID)).thenReturn("e-1");
+        when(service.getAllCategories(USER_ID)).thenReturn(List.of("Еда"));
+        String etag = mockMvc.perform(get("/expenses/categories").header(HttpHeaders.AUTHORIZATION, BEARER))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/categories").header(HttpHeaders.AUTHORIZATION, BEARER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        verify(service, times(1)).getAllCategories(USER_ID);
+    }
+
+    @Test
+    void getCategories_afterWrite_shouldReturnNewBody() throws Exception {
+        // Arrange
+        when(dataVersion.tag(USER_ID)).thenReturn("e-1");
+        when(service.getAllCategories(USER_ID)).thenReturn(List.of("Еда"));
+        String etag = mockMvc.perform(get("/expenses/categories").header(HttpHeaders.AUTHORIZATION, BEARER))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        when(dataVersion.tag(USER_ID)).thenReturn("e-2");
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/categories").header(HttpHeaders.AUTHORIZATION, BEARER).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)));
+    }
+
+    @Test
+    void search_shouldPassQueryAndFilters() throws Exception {
+        // Arrange
+        when(service.search(eq(USER_ID), eq("обе"), eq("Еда"), isNull(), isNull(), isNull(), eq(100)))
+                .thenReturn(new ExpensePage(List.of(view()), "next"));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/search").header(HttpHeaders.AUTHORIZATION, BEARER).param("q", "обе").param("category", "Еда"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].title").value("Обед"))
+                .andExpect(header().string(ExpenseController.NEXT_CURSOR_HEADER, "next"));
+    }
+
+    @Test
+    void getTop_shouldPassFiltersAndCapN() throws Exception {
+        // Arrange
+        when(service.getTop(USER_ID, "Еда", LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 31), 500))
+                .thenReturn(List.of(view()));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/top").header(HttpHeaders.AUTHORIZATION, BEARER).param("category", "Еда")
+                        .param("startDate", "2025-12-01").param("endDate", "2025-12-31").param("n", "100000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].title").value("Обед"));
+    }
+
+    @Test
+    void getDashboard_shouldReturnAllWidgets() throws Exception {
+        // Arrange
+        when(dashboardService.getDashboard(USER_ID)).thenReturn(new Dashboard("e-1", Map.of("Еда", 500.0), 500.0,
+                List.of("Еда"), List.of(view()), 500.0));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/dashboard").header(HttpHeaders.AUTHORIZATION, BEARER))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.byCategory.Еда").value(500.0))
+                .andExpect(jsonPath("$.categories[0]").value("Еда"))
+                .andExpect(jsonPath("$.recent[0].title").value("Обед"))
+                .andExpect(jsonPath("$.averagePerDay").value(500.0));
+    }
+
+    @Test
+    void getDistribution_shouldReturnQuantilesByCategory() throws Exception {
+        // Arrange
+        when(sketches.getByCategory(USER_ID, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 31)))
+                .thenReturn(Map.of("Еда", new AmountDistribution(3, 500.0, 900.0, 990.0, 2)));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/analytics/distribution").header(HttpHeaders.AUTHORIZATION, BEARER)
+                        .param("startDate", "2025-12-01").param("endDate", "2025-12-31"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.Еда.median").value(500.0))
+                .andExpect(jsonPath("$.Еда.p99").value(990.0))
+                .andExpect(jsonPath("$.Еда.distinctTitles").value(2));
+        mockMvc.perform(get("/expenses/analytics/distribution").header(HttpHeaders.AUTHORIZATION, BEARER)
+                        .param("startDate", "2025-12-31").param("endDate", "2025-12-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getAll_withColumnarAccept_shouldReturnColumns() throws Exception {
+        // Arrange
+        when(service.getPage(eq(USER_ID), isNull(), isNull(), isNull(), isNull(), anyInt()))
+                .thenReturn(new ExpensePage(List.of(view()), null));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses").header(HttpHeaders.AUTHORIZATION, BEARER).accept(ExpenseColumns.MEDIA_TYPE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ExpenseColumns.MEDIA_TYPE))
+                .andExpect(jsonPath("$.size").value(1))
+                .andExpect(jsonPath("$.title[0]").value("Обед"))
+                .andExpect(jsonPath("$.amount[0]").value(500.0));
+    }
+
+    @Test
+    void analyticsByCategory_withCborAccept_shouldReturnCbor() throws Exception {
+        // Arrange
+        when(service.getAnalyticsByCategory(USER_ID)).thenReturn(Map.of("Еда", 500.0));
+
+        // Act & Assert
+        mockMvc.perform(get("/expenses/analytics/category").header(HttpHeaders.AUTHORIZATION, BEARER).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AnalyticsSummary;
+import com.example.expense.dto.Dashboard;
+import com.example.expense.dto.ExpenseView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseDashboardServiceTest {
+
+    private static final long USER_ID = 1L;
+
+    @Mock
+    private ExpenseService service;
+
+    private ExpenseDataVersion dataVersion;
+
+    private ExpenseDashboardService dashboardService;
+
+    @BeforeEach
+    void setUp() {
+        dataVersion = new ExpenseDataVersion();
+        dashboardService = new ExpenseDashboardService(service, dataVersion, 2, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dashboardService.stop();
+    }
+
+    @Test
+    void getDashboard_shouldCombineAnalyticsAndRecentExpenses() {
+        // Arrange
+        ExpenseView recent = new ExpenseView(1L, "Обед", 500.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        when(service.getRecentExpenses(USER_ID)).thenReturn(List.of(recent));
+        when(service.getAnalyticsSummary(USER_ID)).thenReturn(new AnalyticsSummary(
+                Map.of("Транспорт", 300.0, "Еда", 500.0, ExpenseAggregates.NO_CATEGORY, 50.0), 850.0, 85.0));
+
+        // Act
+        Dashboard dashboard = dashboardService.getDashboard(USER_ID);
+
+        // Assert
+        assertEquals(dataVersion.tag(USER_ID), dashboard.version());
+        assertEquals(850.0, dashboard.total(), 0.001);
+        assertEquals(85.0, dashboard.averagePerDay(), 0.001);
+        assertEquals(List.of("Еда", "Транспорт"), dashboard.categories());
+        assertEquals(List.of(recent), dashboard.recent());
+        verify(service, never()).getAllCategories(USER_ID);
+    }
+
+    @Test
+    void getDashboard_whenWriteHappensDuringCollection_shouldCollectAgain() {
+        // Arrange: первая сборка видит запись посередине
+        when(service.getRecentExpenses(USER_ID)).thenReturn(List.of());
+        when(service.getAnalyticsSummary(USER_ID))
+                .thenAnswer(invocation -> {
+                    dataVersion.increment(USER_ID);
+                    return new AnalyticsSummary(Map.of(), 0.0, 0.0);
+                })
+                .thenReturn(new AnalyticsSummary(Map.of("Еда", 500.0), 500.0, 500.0));
+
+        // Act
+        Dashboard dashboard = dashboardService.getDashboard(USER_ID);
+
+        // Assert
+        assertEquals(dataVersion.tag(USER_ID), dashboard.version());
+        assertEquals(500.0, dashboard.total(), 0.001);
+        verify(service, times(2)).getAnalyticsSummary(USER_ID);
+    }
+}
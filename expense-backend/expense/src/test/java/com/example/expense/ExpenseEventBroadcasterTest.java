@@ -0,0 +1,269 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseEventBroadcasterTest {
+
+    private static final long USER_ID = 1L;
+
+    private ExpenseAggregates aggregates;
+
+    private ExpenseEventBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        aggregates = new ExpenseAggregates();
+        broadcaster = new ExpenseEventBroadcaster(aggregates, 4, 2, Duration.ofMinutes(1), 2, Duration.ofSeconds(5), 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.stop();
+    }
+
+    @Test
+    void subscribe_shouldSendCurrentTotalsThenChanges() throws Exception {
+        // Arrange
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe(USER_ID, () -> emitter);
+        await(() -> emitter.events.contains("totals"));
+        Expense lunch = expense(1L, "Обед");
+
+        // Act
+        aggregates.onSaved(null, lunch);
+        broadcaster.onSaved(null, lunch);
+        broadcaster.afterChanges();
+
+        // Assert
+        await(() -> emitter.events.size() == 3);
+        assertEquals(List.of("totals", "created", "totals"), emitter.events);
+    }
+
+    @Test
+    void onSaved_shouldReachOnlyOwnerSubscribers() throws Exception {
+        // Arrange
+        RecordingEmitter owner = new RecordingEmitter();
+        RecordingEmitter other = new RecordingEmitter();
+        broadcaster.subscribe(USER_ID, () -> owner);
+        broadcaster.subscribe(2L, () -> other);
+        await(() -> owner.events.contains("totals") && other.events.contains("totals"));
+
+        // Act
+        broadcaster.onSaved(null, expense(1L, "Обед"));
+        broadcaster.onDeleted(expense(1L, "Обед"));
+
+        // Assert
+        await(() -> owner.events.size() == 3);
+        assertEquals(List.of("totals", "created", "deleted"), owner.events);
+        assertEquals(List.of("totals"), other.events);
+    }
+
+    @Test
+    void slowSubscriber_shouldGetResyncInsteadOfOverflowingBuffer() throws Exception {
+        // Arrange: первая отправка висит, пока клиент "не читает"
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.gate = new CountDownLatch(1);
+        broadcaster.subscribe(USER_ID, () -> emitter);
+        await(() -> emitter.events.contains("totals"));
+
+        // Act
+        for (long id = 1; id <= 10; id++) {
+            broadcaster.onSaved(null, expense(id, "Кофе"));
+        }
+        emitter.gate.countDown();
+
+        // Assert
+        await(() -> emitter.events.contains("resync"));
+        assertEquals(List.of("totals", "resync"), emitter.events);
+    }
+
+    @Test
+    void failedSend_shouldDropSubscriber() throws Exception {
+        // Arrange
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.failure = new IOException("соединение закрыто");
+
+        // Act
+        broadcaster.subscribe(USER_ID, () -> emitter);
+
+        // Assert
+        await(() -> broadcaster.subscriberCount() == 0);
+    }
+
+    @Test
+    void stalledSend_shouldDropSubscriberAndKeepServingOthers() throws Exception {
+        // Arrange: один поток отправки, и он завис на клиенте, который не читает
+        broadcaster.stop();
+        broadcaster = new ExpenseEventBroadcaster(aggregates, 4, 2, Duration.ofMinutes(1), 1, Duration.ofMillis(50), 2);
+        RecordingEmitter stalled = new RecordingEmitter();
+        stalled.gate = new CountDownLatch(1);
+        RecordingEmitter other = new RecordingEmitter();
+        broadcaster.subscribe(USER_ID, () -> stalled);
+        await(() -> stalled.events.contains("totals"));
+        broadcaster.subscribe(2L, () -> other);
+        Thread.sleep(100);
+
+        // Act
+        broadcaster.dropStalledSubscribers();
+
+        // Assert
+        await(() -> other.events.contains("totals"));
+        assertEquals(1, broadcaster.subscriberCount());
+        stalled.gate.countDown();
+    }
+
+    @Test
+    void afterChanges_whenSenderRejects_shouldNotFailWrite() throws Exception {
+        // Arrange
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe(USER_ID, () -> emitter);
+        await(() -> emitter.events.contains("totals"));
+        broadcaster.onSaved(null, expense(1L, "Обед"));
+        broadcaster.stop();
+
+        // Act & Assert
+        assertDoesNotThrow(() -> broadcaster.afterChanges());
+    }
+
+    @Test
+    void heartbeat_shouldSendCommentToIdleSubscriber() throws Exception {
+        // Arrange
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe(USER_ID, () -> emitter);
+        await(() -> emitter.events.contains("totals"));
+
+        // Act
+        broadcaster.heartbeat();
+
+        // Assert
+        await(() -> emitter.events.contains("heartbeat"));
+    }
+
+    @Test
+    void subscribe_overLimit_shouldBeRejected() {
+        // Arrange
+        broadcaster.subscribe(USER_ID, RecordingEmitter::new);
+        broadcaster.subscribe(USER_ID, RecordingEmitter::new);
+
+        // Act & Assert
+        assertThrows(RejectedExecutionException.class, () -> broadcaster.subscribe(USER_ID, RecordingEmitter::new));
+    }
+
+    @Test
+    void subscribe_concurrently_shouldNotExceedLimit() throws Exception {
+        // Arrange: все подписки стартуют одновременно
+        broadcaster.stop();
+        broadcaster = new ExpenseEventBroadcaster(aggregates, 4, 3, Duration.ofMinutes(1), 2, Duration.ofSeconds(5), 4);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    broadcaster.subscribe(USER_ID, RecordingEmitter::new);
+                    accepted.incrementAndGet();
+                } catch (RejectedExecutionException | InterruptedException ignored) {
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        // Act
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        assertEquals(3, accepted.get());
+        assertEquals(3, broadcaster.subscriberCount());
+    }
+
+    @Test
+    void stalledSends_shouldNotGrowSenderPoolPastMaximum() throws Exception {
+        // Arrange: один поток отправки, максимум два; зависают три подписчика подряд
+        broadcaster.stop();
+        broadcaster = new ExpenseEventBroadcaster(aggregates, 4, 4, Duration.ofMinutes(1), 1, Duration.ofMillis(50), 2);
+        List<RecordingEmitter> stalled = new ArrayList<>();
+        for (long userId = 1; userId <= 3; userId++) {
+            RecordingEmitter emitter = new RecordingEmitter();
+            emitter.gate = new CountDownLatch(1);
+            stalled.add(emitter);
+            broadcaster.subscribe(userId, () -> emitter);
+        }
+        await(() -> stalled.get(0).events.contains("totals"));
+        Thread.sleep(100);
+
+        // Act
+        broadcaster.dropStalledSubscribers();
+        await(() -> stalled.get(1).events.contains("totals"));
+        Thread.sleep(100);
+        broadcaster.dropStalledSubscribers();
+
+        // Assert: оба зависших отключены, запасной поток только один, третий ждет в очереди
+        assertEquals(1, broadcaster.subscriberCount());
+        assertEquals(2, broadcaster.senderPoolSize());
+        stalled.forEach(emitter -> emitter.gate.countDown());
+    }
+
+    private static Expense expense(Long id, String title) {
+        Expense expense = new Expense(title, 100.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        expense.setId(id);
+        expense.setUserId(USER_ID);
+        return expense;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "не дождались события");
+            Thread.sleep(10);
+        }
+    }
+
+    // запоминает имена отправленных событий; текст события SseEmitter: "event:<имя>\ndata:..." или ":<комментарий>"
+    private static class RecordingEmitter extends SseEmitter {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        volatile CountDownLatch gate;
+        volatile IOException failure;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            String text = builder.build().stream()
+                    .map(ResponseBodyEmitter.DataWithMediaType::getData)
+                    .filter(String.class::isInstance)
+                    .map(String.class::cast)
+                    .findFirst().orElse("");
+            events.add(text.startsWith(":") ? "heartbeat" : text.substring("event:".length(), text.indexOf('\n')));
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
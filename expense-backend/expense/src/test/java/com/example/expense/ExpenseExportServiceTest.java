@@ -0,0 +1,79 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+import com.example.expense.repository.ExpenseRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseExportServiceTest {
+
+    private static final long USER_ID = 1L;
+
+    @Mock
+    private ExpenseRepository repository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private ExpenseExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new ExpenseExportService(repository, entityManager, new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    void exportCsv_shouldEscapeAndDetachEveryRow() throws Exception {
+        // Arrange
+        Expense expense = new Expense("Кофе, большой", 200.0, LocalDate.of(2025, 12, 27), "Еда", "сказал \"вкусно\"");
+        expense.setId(1L);
+        when(repository.streamByCategory(USER_ID, "Еда")).thenReturn(Stream.of(expense));
+        StringWriter out = new StringWriter();
+
+        // Act
+        long count = exportService.export(USER_ID, "Еда", null, null, ExportFormat.CSV, out);
+
+        // Assert
+        assertEquals(1, count);
+        assertEquals("id,title,amount,date,category,comment\n" +
+                "1,\"Кофе, большой\",200.0,2025-12-27,Еда,\"сказал \"\"вкусно\"\"\"\n", out.toString());
+        verify(entityManager).detach(expense);
+    }
+
+    @Test
+    void exportNdjson_shouldWriteOneObjectPerLine() throws Exception {
+        // Arrange
+        when(repository.streamAll(USER_ID)).thenReturn(Stream.of(
+                new Expense("A", 1.0, LocalDate.of(2025, 1, 1), null, null),
+                new Expense("B", 2.0, LocalDate.of(2025, 1, 2), null, null)));
+        StringWriter out = new StringWriter();
+
+        // Act
+        long count = exportService.export(USER_ID, null, null, null, ExportFormat.NDJSON, out);
+
+        // Assert
+        assertEquals(2, count);
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"title\":\"A\""));
+        assertTrue(lines[1].contains("\"title\":\"B\""));
+    }
+
+    @Test
+    void fromParam_unknownFormat_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> ExportFormat.fromParam("xml"));
+    }
+}
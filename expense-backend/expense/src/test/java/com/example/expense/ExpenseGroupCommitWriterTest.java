@@ -0,0 +1,115 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseGroupCommitWriterTest {
+
+    private static final long USER_ID = 1L;
+
+    @Mock
+    private ExpenseIngestService ingestService;
+
+    private ExpenseGroupCommitWriter writer;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.stop();
+    }
+
+    // insertAll присваивает id, как persist; строки с названием "bad" валят всю транзакцию
+    private void insertAssignsIds() {
+        doAnswer(invocation -> {
+            List<Expense> expenses = invocation.getArgument(0);
+            if (expenses.stream().anyMatch(expense -> "bad".equals(expense.getTitle()))) {
+                expenses.forEach(expense -> expense.setId(ids.incrementAndGet()));
+                throw new IllegalStateException("constraint violation");
+            }
+            expenses.forEach(expense -> expense.setId(ids.incrementAndGet()));
+            return null;
+        }).when(ingestService).insertAll(anyList());
+    }
+
+    @Test
+    void submit_shouldWriteQueuedExpensesAsOneBatch() {
+        // Arrange: linger большой, пачка закрывается по max-batch
+        writer = new ExpenseGroupCommitWriter(ingestService, 100, 3, Duration.ofSeconds(5));
+        insertAssignsIds();
+
+        // Act
+        CompletableFuture<Expense> first = writer.submit(USER_ID, new Expense("A", 10.0, null, "Еда", null));
+        CompletableFuture<Expense> second = writer.submit(USER_ID, new Expense("B", 20.0, null, "Еда", null));
+        CompletableFuture<Expense> third = writer.submit(USER_ID, new Expense("C", 30.0, null, "Еда", null));
+        writer.start();
+
+        // Assert
+        assertNotNull(first.join().getId());
+        assertNotNull(second.join().getId());
+        assertNotNull(third.join().getDate());
+        assertEquals(USER_ID, (long) third.join().getUserId());
+        verify(ingestService, times(1)).insertAll(anyList());
+    }
+
+    @Test
+    void submit_badRowShouldFailOnlyItsCaller() {
+        // Arrange
+        writer = new ExpenseGroupCommitWriter(ingestService, 100, 2, Duration.ofSeconds(5));
+        insertAssignsIds();
+
+        // Act
+        CompletableFuture<Expense> good = writer.submit(USER_ID, new Expense("A", 10.0, null, "Еда", null));
+        CompletableFuture<Expense> bad = writer.submit(USER_ID, new Expense("bad", 20.0, null, "Еда", null));
+        writer.start();
+
+        // Assert: пачка откатилась, потом каждая строка записана отдельно
+        assertNotNull(good.join().getId());
+        assertThrows(CompletionException.class, bad::join);
+        verify(ingestService, times(3)).insertAll(anyList());
+    }
+
+    @Test
+    void submit_fullQueueShouldBeRejected() {
+        // Arrange: поток записи не запущен, очередь на один элемент
+        writer = new ExpenseGroupCommitWriter(ingestService, 1, 10, Duration.ZERO);
+        writer.submit(USER_ID, new Expense("A", 10.0, null, "Еда", null));
+
+        // Act & Assert
+        assertThrows(RejectedExecutionException.class,
+                () -> writer.submit(USER_ID, new Expense("B", 20.0, null, "Еда", null)));
+    }
+
+    @Test
+    void stop_shouldFailQueuedWritesAndRejectNewOnes() throws InterruptedException {
+        // Arrange: поток записи не запущен, запись осталась в очереди
+        writer = new ExpenseGroupCommitWriter(ingestService, 10, 10, Duration.ZERO);
+        CompletableFuture<Expense> queued = writer.submit(USER_ID, new Expense("A", 10.0, null, "Еда", null));
+
+        // Act
+        writer.stop();
+
+        // Assert: ожидающий не зависает, новые записи получают 503
+        CompletionException failure = assertThrows(CompletionException.class, queued::join);
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertThrows(IllegalStateException.class,
+                () -> writer.submit(USER_ID, new Expense("B", 20.0, null, "Еда", null)));
+        verify(ingestService, never()).insertAll(anyList());
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.BatchResult;
+import com.example.expense.model.Expense;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseIngestServiceTest {
+
+    private static final long USER_ID = 1L;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ExpenseRollups rollups;
+
+    @Mock
+    private ExpenseChangeListener listener;
+
+    private ExpenseIngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        ingestService = new ExpenseIngestService(entityManager, transactionManager, rollups, List.of(listener),
+                new ExpenseDataVersion(), new ObjectMapper().findAndRegisterModules(), 2);
+    }
+
+    @Test
+    void ingestNdjson_shouldInsertInChunksAndReportInvalidItems() throws Exception {
+        // Arrange
+        String body = """
+                {"title":"A","amount":10,"date":"2025-12-01","category":"Еда"}
+                {"title":"","amount":5}
+                {"title":"B","amount":20}
+                {"title":"C","amount":30,"date":"2025-12-03"}
+                """;
+
+        // Act
+        BatchResult result = ingestService.ingest(USER_ID, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert
+        assertEquals(4, result.received());
+        assertEquals(3, result.inserted());
+        assertEquals(1, result.errors().size());
+        assertEquals(1, result.errors().get(0).index());
+        verify(entityManager, times(3)).persist(any(Expense.class));
+        verify(entityManager, times(2)).flush();
+        verify(rollups, times(2)).addAll(anyList());
+        verify(listener, times(2)).onSavedAll(anyList());
+        verify(entityManager, times(3)).persist(argThat((Expense expense) -> expense.getUserId() == USER_ID));
+    }
+
+    @Test
+    void ingestJsonArray_shouldBeAccepted() throws Exception {
+        // Arrange
+        String body = "[{\"title\":\"A\",\"amount\":10},{\"title\":\"B\",\"amount\":-1}]";
+
+        // Act
+        BatchResult result = ingestService.ingest(USER_ID, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert
+        assertEquals(2, result.received());
+        assertEquals(1, result.inserted());
+        assertEquals(1, result.errors().get(0).index());
+    }
+
+    @Test
+    void ingest_listenerFailsAfterCommit_shouldNotReportCommittedRowsAsFailed() throws Exception {
+        // Arrange: транзакция прошла, слушатель падает уже после коммита
+        doThrow(new IllegalStateException("listener down")).when(listener).onSavedAll(anyList());
+        String body = "[{\"title\":\"A\",\"amount\":10},{\"title\":\"B\",\"amount\":20}]";
+
+        // Act
+        BatchResult result = ingestService.ingest(USER_ID, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert
+        assertEquals(2, result.inserted());
+        assertTrue(result.errors().isEmpty());
+        verify(entityManager, times(2)).persist(any(Expense.class));
+        verify(listener).afterChanges();
+    }
+
+    @Test
+    void ingest_chunkFails_shouldRetryItemsOneByOneAndReportOnlyBadOnes() throws Exception {
+        // Arrange: строка "B" не вставляется ни в пачке, ни отдельно
+        doAnswer(invocation -> {
+            Expense expense = invocation.getArgument(0);
+            if (expense.getTitle().equals("B")) {
+                throw new IllegalStateException("constraint violation");
+            }
+            expense.setId(1L);
+            return null;
+        }).when(entityManager).persist(any(Expense.class));
+        String body = "[{\"title\":\"A\",\"amount\":10},{\"title\":\"B\",\"amount\":20}]";
+
+        // Act
+        BatchResult result = ingestService.ingest(USER_ID, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert: пачка откатилась, A вставлена своей транзакцией, ошибка только у B
+        assertEquals(1, result.inserted());
+        assertEquals(1, result.errors().size());
+        assertEquals(1, result.errors().get(0).index());
+        verify(transactionManager, times(2)).rollback(any());
+        verify(listener).onSavedAll(argThat(saved -> saved.size() == 1 && saved.get(0).getTitle().equals("A")));
+    }
+
+    @Test
+    void insertAll_commitFailsAfterJournal_shouldUndoJournalRecords() {
+        // Arrange: журнал пишется внутри транзакции, сам коммит падает
+        ExpenseChangeListener journal = mock(ExpenseChangeListener.class);
+        when(journal.writesBeforeCommit()).thenReturn(true);
+        ingestService = new ExpenseIngestService(entityManager, transactionManager, rollups, List.of(listener, journal),
+                new ExpenseDataVersion(), new ObjectMapper().findAndRegisterModules(), 2);
+        doThrow(new IllegalStateException("commit failed")).when(transactionManager).commit(any());
+        List<Expense> expenses = List.of(new Expense("A", 10.0, LocalDate.now(), "Еда", null),
+                new Expense("B", 20.0, LocalDate.now(), "Еда", null));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> ingestService.insertAll(expenses));
+        verify(journal).onSavedAll(expenses);
+        verify(journal, times(2)).onDeleted(any(Expense.class));
+        verify(listener, never()).onSavedAll(anyList());
+    }
+
+    @Test
+    void validate_shouldDefaultDateLikeSave() {
+        // Arrange
+        Expense expense = new Expense("Кофе", 200.0, null, null, null);
+
+        // Act
+        String error = ExpenseIngestService.validate(expense);
+
+        // Assert
+        assertNull(error);
+        assertEquals(LocalDate.now(), expense.getDate());
+    }
+}
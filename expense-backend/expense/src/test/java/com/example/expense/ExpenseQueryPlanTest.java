@@ -0,0 +1,217 @@
+package com.example.expense.repository;
+
+import com.example.expense.model.Expense;
+import jakarta.persistence.EntityManager;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// каждый finder репозиториев прогоняется через EXPLAIN в H2:
+// если в плане есть tableScan, значит запросу не хватает индекса.
+// все запросы ограничены пользователем и идут по индексам, начинающимся с user_id;
+// сознательно без индекса работают только findAll и sumByDateAndCategory (пересчет по всей таблице)
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.example.expense.repository.ExpenseQueryPlanTest$SqlCapture")
+class ExpenseQueryPlanTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 12, 1);
+
+    private static final long USER_ID = 1L;
+
+    @Autowired
+    private ExpenseRepository repository;
+
+    @Autowired
+    private ExpenseDailyRollupRepository dailyRepository;
+
+    @Autowired
+    private ExpenseMonthlyRollupRepository monthlyRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void seed() {
+        for (int i = 0; i < 200; i++) {
+            Expense expense = new Expense("Расход " + i, i, DAY.minusDays(i), i % 2 == 0 ? "Еда" : "Транспорт", null);
+            expense.setUserId(i % 4 < 2 ? USER_ID : 2L);
+            repository.save(expense);
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    void findByUserId_shouldUseIndex() {
+        assertUsesIndex(() -> repository.findByUserId(USER_ID));
+        assertUsesIndex(() -> consume(repository.streamAll(USER_ID)));
+        assertUsesIndex(() -> repository.findDistinctCategories(USER_ID));
+    }
+
+    @Test
+    void userAggregates_shouldUseIndex() {
+        assertUsesIndex(() -> repository.sumByCategory(USER_ID));
+        assertUsesIndex(() -> repository.sumAmount(USER_ID));
+        assertUsesIndex(() -> repository.findDateRange(USER_ID));
+    }
+
+    @Test
+    void findByCategory_shouldUseIndex() {
+        assertUsesIndex(() -> repository.findByUserIdAndCategory(USER_ID, "Еда"));
+    }
+
+    @Test
+    void findByDate_shouldUseIndex() {
+        assertUsesIndex(() -> repository.findByUserIdAndDate(USER_ID, DAY));
+    }
+
+    @Test
+    void findByDateBetween_shouldUseIndex() {
+        assertUsesIndex(() -> repository.findByUserIdAndDateBetween(USER_ID, DAY.minusDays(30), DAY));
+    }
+
+    @Test
+    void findByCategoryAndDateBetween_shouldUseIndex() {
+        assertUsesIndex(() -> repository.findByUserIdAndCategoryAndDateBetween(USER_ID, "Еда", DAY.minusDays(30), DAY));
+    }
+
+    @Test
+    void findRecentExpenses_shouldUseIndex() {
+        assertUsesIndex(() -> repository.findRecentExpenses(USER_ID, DAY.minusDays(30)));
+        assertUsesIndex(() -> repository.findRecentViews(USER_ID, DAY.minusDays(30)));
+    }
+
+    @Test
+    void keysetPages_shouldUseIndex() {
+        PageRequest page = PageRequest.of(0, 20);
+        assertUsesIndex(() -> repository.findPage(USER_ID, DAY, 100L, page));
+        assertUsesIndex(() -> repository.findPageByCategory(USER_ID, "Еда", DAY, 100L, page));
+        assertUsesIndex(() -> repository.findPageByPeriod(USER_ID, DAY.minusDays(30), DAY, DAY, 100L, page));
+        assertUsesIndex(() -> repository.findPageByCategoryAndPeriod(USER_ID, "Еда", DAY.minusDays(30), DAY,
+                DAY, 100L, page));
+    }
+
+    @Test
+    void filteredStreams_shouldUseIndex() {
+        assertUsesIndex(() -> consume(repository.streamByCategory(USER_ID, "Еда")));
+        assertUsesIndex(() -> consume(repository.streamByPeriod(USER_ID, DAY.minusDays(30), DAY)));
+        assertUsesIndex(() -> consume(repository.streamByCategoryAndPeriod(USER_ID, "Еда", DAY.minusDays(30),
+                DAY)));
+    }
+
+    @Test
+    void topFinders_shouldUseIndex() {
+        PageRequest top = PageRequest.of(0, 20);
+        assertUsesIndex(() -> repository.findTop(USER_ID, top));
+        assertUsesIndex(() -> repository.findTopByCategory(USER_ID, "Еда", top));
+        assertUsesIndex(() -> consume(repository.streamViewsByPeriod(USER_ID, DAY.minusDays(30), DAY)));
+        assertUsesIndex(() -> consume(repository.streamViewsByCategoryAndPeriod(USER_ID, "Еда", DAY.minusDays(30),
+                DAY)));
+    }
+
+    @Test
+    void sketchRebuildFinders_shouldUseIndex() {
+        assertUsesIndex(() -> repository.findViewsByCategoryAndPeriod(USER_ID, "Еда", DAY.withDayOfMonth(1), DAY));
+        assertUsesIndex(() -> repository.findViewsWithoutCategoryByPeriod(USER_ID, DAY.withDayOfMonth(1), DAY));
+    }
+
+    @Test
+    void rollupFinders_shouldUseIndex() {
+        assertUsesIndex(() -> dailyRepository.findByUserIdAndBucketDayBetweenOrderByBucketDay(USER_ID,
+                DAY.minusDays(30), DAY));
+        assertUsesIndex(() -> monthlyRepository.findByUserIdAndBucketMonthBetweenOrderByBucketMonth(USER_ID,
+                DAY.minusYears(1), DAY));
+    }
+
+    private void assertUsesIndex(Runnable finder) {
+        SqlCapture.clear();
+        finder.run();
+        List<String> statements = SqlCapture.selects();
+        assertFalse(statements.isEmpty(), "запрос не был выполнен");
+
+        for (String sql : statements) {
+            String plan = String.valueOf(entityManager.createNativeQuery("EXPLAIN " + withLiterals(sql)).getSingleResult());
+            assertFalse(plan.contains("tableScan"), "полный проход по таблице:\n" + plan);
+        }
+    }
+
+    private static void consume(Stream<?> stream) {
+        try (stream) {
+            stream.forEach(row -> { });
+        }
+    }
+
+    private static final Pattern COLUMN = Pattern.compile("\\w+\\.(\\w+)");
+
+    // EXPLAIN в H2 не выполняется без значений параметров, поэтому вместо каждого "?"
+    // подставляем литерал подходящего типа по ближайшей колонке слева
+    static String withLiterals(String sql) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c != '?') {
+                result.append(c);
+                continue;
+            }
+
+            String before = sql.substring(0, i).toLowerCase(Locale.ROOT).trim();
+            if (before.endsWith("first") || before.endsWith("offset") || before.endsWith("limit")) {
+                result.append("20");
+                continue;
+            }
+
+            String column = "";
+            Matcher matcher = COLUMN.matcher(before);
+            while (matcher.find()) {
+                column = matcher.group(1);
+            }
+            if (column.contains("date") || column.contains("day") || column.contains("month")) {
+                result.append("DATE '2025-12-01'");
+            } else if (column.equals("category")) {
+                result.append("'Еда'");
+            } else {
+                result.append("100");
+            }
+        }
+        return result.toString();
+    }
+
+    // Hibernate отдает сюда каждый SQL перед выполнением
+    public static class SqlCapture implements StatementInspector {
+        private static final List<String> STATEMENTS = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            synchronized (STATEMENTS) {
+                STATEMENTS.add(sql);
+            }
+            return sql;
+        }
+
+        static void clear() {
+            synchronized (STATEMENTS) {
+                STATEMENTS.clear();
+            }
+        }
+
+        static List<String> selects() {
+            synchronized (STATEMENTS) {
+                return STATEMENTS.stream()
+                        .filter(sql -> sql.trim().toLowerCase(Locale.ROOT).startsWith("select"))
+                        .toList();
+            }
+        }
+    }
+}
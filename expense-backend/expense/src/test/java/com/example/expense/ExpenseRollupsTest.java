@@ -0,0 +1,132 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.PeriodAnalytics;
+import com.example.expense.model.Expense;
+import com.example.expense.model.ExpenseDailyRollup;
+import com.example.expense.model.ExpenseMonthlyRollup;
+import com.example.expense.repository.ExpenseDailyRollupRepository;
+import com.example.expense.repository.ExpenseMonthlyRollupRepository;
+import com.example.expense.repository.ExpenseRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseRollupsTest {
+
+    private static final long USER_ID = 1L;
+
+    @Mock
+    private ExpenseDailyRollupRepository dailyRepository;
+
+    @Mock
+    private ExpenseMonthlyRollupRepository monthlyRepository;
+
+    @Mock
+    private ExpenseRepository expenseRepository;
+
+    @Mock
+    private JdbcTemplate jdbc;
+
+    @InjectMocks
+    private ExpenseRollups rollups;
+
+    @Test
+    void periodAnalytics_shouldUseMonthsForWholeMonthsAndDaysForEdges() {
+        // Arrange
+        LocalDate start = LocalDate.of(2024, 1, 15);
+        LocalDate end = LocalDate.of(2025, 3, 10);
+        when(dailyRepository.findByUserIdAndBucketDayBetweenOrderByBucketDay(USER_ID, start, LocalDate.of(2024, 1, 31)))
+                .thenReturn(List.of(new ExpenseDailyRollup(USER_ID, LocalDate.of(2024, 1, 20), "Еда", 100.0, 1)));
+        when(monthlyRepository.findByUserIdAndBucketMonthBetweenOrderByBucketMonth(USER_ID,
+                LocalDate.of(2024, 2, 1), LocalDate.of(2025, 2, 1)))
+                .thenReturn(List.of(
+                        new ExpenseMonthlyRollup(USER_ID, LocalDate.of(2024, 2, 1), "Еда", 300.0, 3),
+                        new ExpenseMonthlyRollup(USER_ID, LocalDate.of(2024, 2, 1), "Транспорт", 50.0, 1)));
+        when(dailyRepository.findByUserIdAndBucketDayBetweenOrderByBucketDay(USER_ID, LocalDate.of(2025, 3, 1), end))
+                .thenReturn(List.of(new ExpenseDailyRollup(USER_ID, LocalDate.of(2025, 3, 5), "Транспорт", 25.0, 1)));
+
+        // Act
+        PeriodAnalytics analytics = rollups.getPeriodAnalytics(USER_ID, start, end);
+
+        // Assert
+        assertEquals(475.0, analytics.total(), 0.001);
+        assertEquals(6, analytics.count());
+        assertEquals(400.0, analytics.byCategory().get("Еда"), 0.001);
+        assertEquals(3, analytics.buckets().size());
+        assertEquals(PeriodAnalytics.Granularity.MONTH, analytics.buckets().get(1).granularity());
+    }
+
+    @Test
+    void periodAnalytics_insideOneMonth_shouldUseOnlyDays() {
+        // Arrange
+        LocalDate start = LocalDate.of(2025, 3, 2);
+        LocalDate end = LocalDate.of(2025, 3, 20);
+        when(dailyRepository.findByUserIdAndBucketDayBetweenOrderByBucketDay(USER_ID, start, end)).thenReturn(List.of());
+
+        // Act
+        PeriodAnalytics analytics = rollups.getPeriodAnalytics(USER_ID, start, end);
+
+        // Assert
+        assertEquals(0.0, analytics.total(), 0.001);
+        verifyNoInteractions(monthlyRepository);
+    }
+
+    @Test
+    void add_newDay_shouldInsertRows() {
+        // Arrange
+        when(dailyRepository.increment(any(), any(), any(), anyDouble(), anyLong())).thenReturn(0);
+        when(monthlyRepository.increment(any(), any(), any(), anyDouble(), anyLong())).thenReturn(0);
+        Expense expense = new Expense("Обед", 500.0, LocalDate.of(2025, 3, 2), null, null);
+        expense.setUserId(USER_ID);
+
+        // Act
+        rollups.add(expense);
+
+        // Assert
+        verify(jdbc).update(startsWith("INSERT INTO expense_daily_rollup"), eq(USER_ID), any(), eq("Без категории"),
+                eq(500.0), eq(1L));
+        verify(jdbc).update(startsWith("INSERT INTO expense_monthly_rollup"), eq(USER_ID), any(), eq("Без категории"),
+                eq(500.0), eq(1L));
+    }
+
+    @Test
+    void add_concurrentFirstWrite_shouldIncrementRowInsertedByOtherTransaction() {
+        // Arrange
+        LocalDate day = LocalDate.of(2025, 3, 2);
+        when(dailyRepository.increment(USER_ID, day, "Еда", 500.0, 1)).thenReturn(0, 1);
+        when(monthlyRepository.increment(any(), any(), any(), anyDouble(), anyLong())).thenReturn(1);
+        when(jdbc.update(startsWith("INSERT INTO expense_daily_rollup"), any(), any(), any(), any(), any()))
+                .thenThrow(new DuplicateKeyException("uk_expense_daily_rollup"));
+        Expense expense = new Expense("Обед", 500.0, day, "Еда", null);
+        expense.setUserId(USER_ID);
+
+        // Act
+        rollups.add(expense);
+
+        // Assert
+        verify(dailyRepository, times(2)).increment(USER_ID, day, "Еда", 500.0, 1);
+        verify(dailyRepository, never()).save(any(ExpenseDailyRollup.class));
+    }
+
+    @Test
+    void add_withoutOwner_shouldSkipRollups() {
+        // Act
+        rollups.add(new Expense("Обед", 500.0, LocalDate.of(2025, 3, 2), null, null));
+
+        // Assert
+        verifyNoInteractions(dailyRepository, monthlyRepository);
+    }
+}
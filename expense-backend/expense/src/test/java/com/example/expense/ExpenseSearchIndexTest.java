@@ -0,0 +1,158 @@
+package com.example.expense.service;
+
+import com.example.expense.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseSearchIndexTest {
+
+    private static final long USER_ID = 1L;
+
+    private ExpenseSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ExpenseSearchIndex();
+    }
+
+    @Test
+    void search_shouldMatchPrefixesInTitleAndComment() {
+        // Arrange
+        index.onSaved(null, expense(1L, "Обед", "кофе с собой", "Еда", LocalDate.of(2025, 12, 1)));
+        index.onSaved(null, expense(2L, "Кофе", null, "Еда", LocalDate.of(2025, 12, 2)));
+        index.onSaved(null, expense(3L, "Ёлка", null, "Праздники", LocalDate.of(2025, 12, 3)));
+
+        // Act & Assert
+        assertEquals(List.of(2L, 1L), search("коф"));
+        assertEquals(List.of(1L), search("обе КОФЕ"));
+        assertEquals(List.of(3L), search("елк"));
+        assertEquals(List.of(), search("обед такси"));
+    }
+
+    @Test
+    void search_shouldApplyCategoryAndPeriodFilters() {
+        // Arrange
+        index.onSaved(null, expense(1L, "Кофе", null, "Еда", LocalDate.of(2025, 11, 30)));
+        index.onSaved(null, expense(2L, "Кофе", null, "Еда", LocalDate.of(2025, 12, 2)));
+        index.onSaved(null, expense(3L, "Кофе", null, "Подарки", LocalDate.of(2025, 12, 3)));
+
+        // Act
+        List<Long> ids = index.search(USER_ID, "кофе", "Еда", LocalDate.of(2025, 12, 1),
+                LocalDate.of(2025, 12, 31), Long.MAX_VALUE, 10);
+
+        // Assert
+        assertEquals(List.of(2L), ids);
+        assertEquals(List.of(), index.search(USER_ID, "кофе", "Такси", null, null, Long.MAX_VALUE, 10));
+    }
+
+    @Test
+    void onSavedAndDeleted_shouldKeepIndexInSync() {
+        // Arrange
+        Expense before = expense(1L, "Обед", null, "Еда", LocalDate.of(2025, 12, 1));
+        Expense after = expense(1L, "Ужин", null, "Еда", LocalDate.of(2025, 12, 1));
+        index.onSaved(null, before);
+
+        // Act
+        index.onSaved(before, after);
+
+        // Assert
+        assertEquals(List.of(), search("обед"));
+        assertEquals(List.of(1L), search("ужин"));
+
+        // Act
+        index.onDeleted(after);
+
+        // Assert
+        assertEquals(List.of(), search("ужин"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void search_shouldPageFromNewestToOldestAcrossBlocks() {
+        // Arrange: больше одного блока списка id, часть id с пропусками
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= 1000; id += 3) {
+            index.onSaved(null, expense(id, "Такси", null, "Транспорт", LocalDate.of(2025, 12, 1)));
+            expected.add(0, id);
+        }
+
+        // Act
+        List<Long> first = index.search(USER_ID, "такси", null, null, null, Long.MAX_VALUE, 200);
+        List<Long> second = index.search(USER_ID, "такси", null, null, null, first.get(first.size() - 1), 200);
+
+        // Assert
+        assertEquals(expected.subList(0, 200), first);
+        assertEquals(expected.subList(200, expected.size()), second);
+    }
+
+    @Test
+    void postingList_editsInsideBlocks_shouldMatchSortedSet() {
+        // Arrange: несколько полных блоков, потом вставки и удаления в середине (деление и удаление блоков)
+        ExpenseSearchIndex.PostingList list = new ExpenseSearchIndex.PostingList();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long id = 0; id < 1000; id += 2) {
+            list.add(id);
+            expected.add(id);
+        }
+        Random random = new Random(42);
+
+        // Act
+        for (int i = 0; i < 5000; i++) {
+            long id = random.nextInt(1100);
+            if (random.nextBoolean()) {
+                list.add(id);
+                expected.add(id);
+            } else {
+                list.remove(id);
+                expected.remove(id);
+            }
+        }
+        list.add(5000);
+        expected.add(5000L);
+
+        // Assert
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), list.toArray());
+        assertEquals(expected.size(), list.size());
+        for (long id = 0; id < 1100; id++) {
+            assertEquals(expected.contains(id), list.contains(id));
+        }
+    }
+
+    @Test
+    void search_shouldReturnOnlyOwnExpenses() {
+        // Arrange
+        index.onSaved(null, expense(1L, "Кофе", null, "Еда", LocalDate.of(2025, 12, 1)));
+        Expense other = expense(2L, "Кофе", null, "Еда", LocalDate.of(2025, 12, 2));
+        other.setUserId(2L);
+        index.onSaved(null, other);
+
+        // Act & Assert
+        assertEquals(List.of(1L), search("кофе"));
+        assertEquals(List.of(2L), index.search(2L, "кофе", null, null, null, Long.MAX_VALUE, 10));
+    }
+
+    @Test
+    void search_withBlankQuery_shouldThrow() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> search(" ,. "));
+    }
+
+    private List<Long> search(String query) {
+        return index.search(USER_ID, query, null, null, null, Long.MAX_VALUE, 10);
+    }
+
+    private static Expense expense(Long id, String title, String comment, String category, LocalDate date) {
+        Expense expense = new Expense(title, 100.0, date, category, comment);
+        expense.setId(id);
+        expense.setUserId(USER_ID);
+        return expense;
+    }
+}
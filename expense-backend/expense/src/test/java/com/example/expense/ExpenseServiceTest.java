@@ -1,12 +1,22 @@
 package com.example.expense.service;
 
+import com.example.expense.dto.CategoryTotal;
+import com.example.expense.dto.DateRange;
+import com.example.expense.dto.ExpensePage;
+import com.example.expense.dto.ExpenseView;
 import com.example.expense.model.Expense;
 import com.example.expense.repository.ExpenseRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -15,42 +25,69 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class ExpenseServiceTest {
 
+    private static final long USER_ID = 1L;
+
     @Mock
     private ExpenseRepository repository;
 
-    @InjectMocks
+    @Mock
+    private ExpenseRollups rollups;
+
+    private ExpenseAggregates aggregates;
+
+    private ExpenseSearchIndex searchIndex;
+
+    private SimpleMeterRegistry registry;
+
+    private ExpenseDataVersion dataVersion;
+
     private ExpenseService service;
 
+    @BeforeEach
+    void setUp() {
+        aggregates = new ExpenseAggregates();
+        searchIndex = new ExpenseSearchIndex();
+        registry = new SimpleMeterRegistry();
+        dataVersion = new ExpenseDataVersion();
+        service = new ExpenseService(repository, aggregates, rollups, searchIndex,
+                List.of(aggregates, searchIndex), new ExpenseMetrics(registry), dataVersion);
+    }
+
     @Test
     void save_shouldSetTodayDateIfNull() {
         // Arrange
-        Expense expense = new Expense("Юбка", 1500.0, null, "Покупки", null);
+        Expense expense = expense("Юбка", 1500.0, null, "Покупки", null);
         when(repository.save(any(Expense.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // Act
-        Expense saved = service.save(expense);
+        Expense saved = service.save(USER_ID, expense);
 
         // Assert
         assertNotNull(saved.getDate());
         assertEquals(LocalDate.now(), saved.getDate());
         verify(repository).save(expense);
+        verify(rollups).add(any(Expense.class));
     }
 
     @Test
     void getTotalAmount_shouldReturnCorrectSum() {
         // Arrange
         when(repository.findAll()).thenReturn(List.of(
-                new Expense("A", 100.0, LocalDate.now(), "X", null),
-                new Expense("B", 200.0, LocalDate.now(), "Y", null)
+                expense("A", 100.0, LocalDate.now(), "X", null),
+                expense("B", 200.0, LocalDate.now(), "Y", null)
         ));
 
+        service.rebuild();
+
         // Act
-        Double total = service.getTotalAmount();
+        Double total = service.getTotalAmount(USER_ID);
 
         // Assert
         assertEquals(300.0, total);
@@ -62,15 +99,15 @@ class ExpenseServiceTest {
         // Arrange
         String category = "Покупки";
         List<Expense> expected = List.of(new Expense());
-        when(repository.findByCategory(category)).thenReturn(expected);
+        when(repository.findByUserIdAndCategory(USER_ID, category)).thenReturn(expected);
 
         // Act
-        List<Expense> result = service.filterExpenses(category, null, null);
+        List<Expense> result = service.filterExpenses(USER_ID, category, null, null);
 
         // Assert
         assertEquals(1, result.size());
         assertEquals(expected, result);
-        verify(repository).findByCategory(category);
+        verify(repository).findByUserIdAndCategory(USER_ID, category);
     }
 
     @Test
@@ -78,26 +115,61 @@ class ExpenseServiceTest {
         // Arrange
         LocalDate start = LocalDate.now().minusDays(5);
         LocalDate end = LocalDate.now();
-        when(repository.findByDateBetween(start, end)).thenReturn(List.of(new Expense()));
+        when(repository.findByUserIdAndDateBetween(USER_ID, start, end)).thenReturn(List.of(new Expense()));
 
         // Act
-        List<Expense> result = service.filterExpenses(null, start, end);
+        List<Expense> result = service.filterExpenses(USER_ID, null, start, end);
 
         // Assert
         assertEquals(1, result.size());
     }
 
+    @Test
+    void filterExpenses_shouldTagMetricsByBranch() {
+        // Arrange
+        LocalDate start = LocalDate.now().minusDays(5);
+        LocalDate end = LocalDate.now();
+        when(repository.findByUserIdAndDateBetween(USER_ID, start, end)).thenReturn(List.of(new Expense(), new Expense()));
+
+        // Act
+        service.filterExpenses(USER_ID, null, start, end);
+
+        // Assert
+        assertEquals(1, registry.get("expense.query").tags("operation", "filter", "branch", "period").timer().count());
+        assertEquals(2.0, registry.get("expense.query.rows").tags("branch", "period").summary().totalAmount());
+        assertNull(registry.find("expense.query").tags("branch", "category").timer());
+    }
+
+    @Test
+    void filterExpenses_queryFails_shouldStillRecordTimerWithOutcome() {
+        // Arrange
+        LocalDate start = LocalDate.now().minusDays(5);
+        LocalDate end = LocalDate.now();
+        when(repository.findByUserIdAndDateBetween(USER_ID, start, end))
+                .thenThrow(new IllegalStateException("connection refused"));
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> service.filterExpenses(USER_ID, null, start, end));
+
+        // Assert
+        assertEquals(1, registry.get("expense.query")
+                .tags("branch", "period", "outcome", "error", "exception", "IllegalStateException").timer().count());
+        assertNull(registry.find("expense.query.rows").tags("branch", "period").summary());
+    }
+
     @Test
     void analyticsByCategory_shouldGroupCorrectly() {
         // Arrange
         when(repository.findAll()).thenReturn(List.of(
-                new Expense("A", 100.0, LocalDate.now(), "Еда", null),
-                new Expense("B", 200.0, LocalDate.now(), "Еда", null),
-                new Expense("C", 50.0, LocalDate.now(), null, null)
+                expense("A", 100.0, LocalDate.now(), "Еда", null),
+                expense("B", 200.0, LocalDate.now(), "Еда", null),
+                expense("C", 50.0, LocalDate.now(), null, null)
         ));
 
+        service.rebuild();
+
         // Act
-        Map<String, Double> analytics = service.getAnalyticsByCategory();
+        Map<String, Double> analytics = service.getAnalyticsByCategory(USER_ID);
 
         // Assert
         assertEquals(2, analytics.size());
@@ -108,14 +180,15 @@ class ExpenseServiceTest {
     @Test
     void getRecentExpenses_shouldCallRepository() {
         // Arrange
-        when(repository.findRecentExpenses(any(LocalDate.class))).thenReturn(List.of(new Expense()));
+        when(repository.findRecentViews(eq(USER_ID), any(LocalDate.class)))
+                .thenReturn(List.of(new ExpenseView(1L, "A", 10.0, LocalDate.now(), null, null)));
 
         // Act
-        List<Expense> result = service.getRecentExpenses();
+        List<ExpenseView> result = service.getRecentExpenses(USER_ID);
 
         // Assert
         assertFalse(result.isEmpty());
-        verify(repository).findRecentExpenses(any(LocalDate.class));
+        verify(repository).findRecentViews(eq(USER_ID), any(LocalDate.class));
     }
 
     @Test
@@ -123,31 +196,31 @@ class ExpenseServiceTest {
         // Arrange
         String category = "Еда";
         List<Expense> expected = List.of(
-                new Expense("Обед", 500.0, LocalDate.now(), "Еда", null)
+                expense("Обед", 500.0, LocalDate.now(), "Еда", null)
         );
-        when(repository.findByCategory(category)).thenReturn(expected);
+        when(repository.findByUserIdAndCategory(USER_ID, category)).thenReturn(expected);
 
         // Act
-        List<Expense> result = service.getByCategory(category);
+        List<Expense> result = service.getByCategory(USER_ID, category);
 
         // Assert
         assertEquals(1, result.size());
         assertEquals("Обед", result.get(0).getTitle());
-        verify(repository).findByCategory(category);
+        verify(repository).findByUserIdAndCategory(USER_ID, category);
     }
 
     @Test
     void getByDate_shouldReturnExpensesForSpecificDate() {
         // Arrange
         LocalDate date = LocalDate.of(2025, 12, 28);
-        when(repository.findByDate(date)).thenReturn(List.of(new Expense()));
+        when(repository.findByUserIdAndDate(USER_ID, date)).thenReturn(List.of(new Expense()));
 
         // Act
-        List<Expense> result = service.getByDate(date);
+        List<Expense> result = service.getByDate(USER_ID, date);
 
         // Assert
         assertFalse(result.isEmpty());
-        verify(repository).findByDate(date);
+        verify(repository).findByUserIdAndDate(USER_ID, date);
     }
 
     @Test
@@ -155,14 +228,14 @@ class ExpenseServiceTest {
         // Arrange
         LocalDate start = LocalDate.now().minusDays(7);
         LocalDate end = LocalDate.now();
-        when(repository.findByDateBetween(start, end)).thenReturn(List.of(new Expense()));
+        when(repository.findByUserIdAndDateBetween(USER_ID, start, end)).thenReturn(List.of(new Expense()));
 
         // Act
-        List<Expense> result = service.getByPeriod(start, end);
+        List<Expense> result = service.getByPeriod(USER_ID, start, end);
 
         // Assert
         assertFalse(result.isEmpty());
-        verify(repository).findByDateBetween(start, end);
+        verify(repository).findByUserIdAndDateBetween(USER_ID, start, end);
     }
 
     @Test
@@ -171,29 +244,29 @@ class ExpenseServiceTest {
         String category = "Транспорт";
         LocalDate start = LocalDate.now().minusDays(30);
         LocalDate end = LocalDate.now();
-        when(repository.findByCategoryAndDateBetween(category, start, end))
+        when(repository.findByUserIdAndCategoryAndDateBetween(USER_ID, category, start, end))
                 .thenReturn(List.of(new Expense()));
 
         // Act
-        List<Expense> result = service.getByCategoryAndPeriod(category, start, end);
+        List<Expense> result = service.getByCategoryAndPeriod(USER_ID, category, start, end);
 
         // Assert
         assertFalse(result.isEmpty());
-        verify(repository).findByCategoryAndDateBetween(category, start, end);
+        verify(repository).findByUserIdAndCategoryAndDateBetween(USER_ID, category, start, end);
     }
 
     @Test
     void getAllCategories_shouldReturnUniqueCategories() {
         // Arrange
-        when(repository.findDistinctCategories()).thenReturn(List.of("Еда", "Транспорт"));
+        when(repository.findDistinctCategories(USER_ID)).thenReturn(List.of("Еда", "Транспорт"));
 
         // Act
-        List<String> categories = service.getAllCategories();
+        List<String> categories = service.getAllCategories(USER_ID);
 
         // Assert
         assertEquals(2, categories.size());
         assertTrue(categories.contains("Еда"));
-        verify(repository).findDistinctCategories();
+        verify(repository).findDistinctCategories(USER_ID);
     }
 
     @Test
@@ -201,27 +274,25 @@ class ExpenseServiceTest {
         // Arrange
         LocalDate start = LocalDate.now().minusDays(5);
         LocalDate end = LocalDate.now();
-        List<Expense> expenses = List.of(
-                new Expense("A", 100.0, start, "Food", null),
-                new Expense("B", 200.0, end, "Food", null)
-        );
-        when(repository.findByDateBetween(start, end)).thenReturn(expenses);
+        when(rollups.getTotalByPeriod(USER_ID, start, end)).thenReturn(300.0);
 
         // Act
-        Double total = service.getTotalByPeriod(start, end);
+        Double total = service.getTotalByPeriod(USER_ID, start, end);
 
         // Assert
         assertEquals(300.0, total);
-        verify(repository).findByDateBetween(start, end);
+        verify(rollups).getTotalByPeriod(USER_ID, start, end);
+        verify(repository, never()).findByUserIdAndDateBetween(USER_ID, start, end);
     }
 
     @Test
     void getAveragePerDay_withEmptyList_shouldReturnZero() {
         // Arrange
         when(repository.findAll()).thenReturn(List.of());
+        service.rebuild();
 
         // Act
-        Double average = service.getAveragePerDay();
+        Double average = service.getAveragePerDay(USER_ID);
 
         // Assert
         assertEquals(0.0, average, 0.001);
@@ -231,13 +302,361 @@ class ExpenseServiceTest {
     void getAveragePerDay_withSingleExpense_shouldReturnAmount() {
         // Arrange
         LocalDate date = LocalDate.of(2025, 12, 28);
-        Expense expense = new Expense("Test", 100.0, date, "Test", null);
+        Expense expense = expense("Test", 100.0, date, "Test", null);
         when(repository.findAll()).thenReturn(List.of(expense));
+        service.rebuild();
 
         // Act
-        Double average = service.getAveragePerDay();
+        Double average = service.getAveragePerDay(USER_ID);
 
         // Assert
         assertEquals(100.0, average, 0.001);
     }
-}
\ No newline at end of file
+
+    @Test
+    void save_shouldUpdateAggregatesWithoutFindAll() {
+        // Arrange
+        when(repository.save(any(Expense.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        service.save(USER_ID, expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null));
+        service.save(USER_ID, expense("B", 50.0, LocalDate.of(2025, 12, 10), "Еда", null));
+
+        // Assert
+        assertEquals(150.0, service.getTotalAmount(USER_ID));
+        assertEquals(150.0, service.getAnalyticsByCategory(USER_ID).get("Еда"));
+        assertEquals(15.0, service.getAveragePerDay(USER_ID), 0.001);
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    void saveAndDelete_shouldIncrementDataVersion() {
+        // Arrange
+        Expense stored = expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        stored.setId(1L);
+        when(repository.save(any(Expense.class))).thenReturn(stored);
+        when(repository.findById(1L)).thenReturn(Optional.of(stored));
+        String before = dataVersion.tag(USER_ID);
+
+        // Act
+        service.save(USER_ID, expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null));
+        service.delete(USER_ID, 1L);
+        service.delete(USER_ID, 2L);
+
+        // Assert: удаление несуществующего расхода версию не меняет
+        assertEquals(2, dataVersion.current(USER_ID));
+        assertNotEquals(before, dataVersion.tag(USER_ID));
+    }
+
+    @Test
+    void save_withJournal_shouldWriteItBeforeCommitAndOtherListeners() {
+        // Arrange: журнал в списке последним, но вызывается первым и один раз
+        ExpenseChangeListener other = mock(ExpenseChangeListener.class);
+        ExpenseChangeListener journal = mock(ExpenseChangeListener.class);
+        when(journal.writesBeforeCommit()).thenReturn(true);
+        service = new ExpenseService(repository, aggregates, rollups, searchIndex,
+                List.of(other, journal), new ExpenseMetrics(registry), dataVersion);
+        when(repository.save(any(Expense.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        service.save(USER_ID, expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null));
+
+        // Assert: строка записана и заблокирована flush-ем до записи в журнал
+        InOrder order = inOrder(repository, journal, other);
+        order.verify(repository).save(any(Expense.class));
+        order.verify(repository).flush();
+        order.verify(journal).onSaved(isNull(), any(Expense.class));
+        order.verify(other).onSaved(isNull(), any(Expense.class));
+        verify(journal, times(1)).onSaved(any(), any());
+    }
+
+    @Test
+    void save_commitFailsAfterJournal_shouldUndoJournalRecord() {
+        // Arrange
+        ExpenseChangeListener journal = mock(ExpenseChangeListener.class);
+        when(journal.writesBeforeCommit()).thenReturn(true);
+        service = new ExpenseService(repository, aggregates, rollups, searchIndex,
+                List.of(journal), new ExpenseMetrics(registry), dataVersion);
+        Expense stored = expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        stored.setId(1L);
+        when(repository.save(any(Expense.class))).thenReturn(stored);
+
+        // Act: транзакция откатывается уже после записи в журнал
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.save(USER_ID, expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert: новый расход в журнале отменен удалением, после-коммитные действия не выполнялись
+        verify(journal).onSaved(isNull(), argThat(expense -> expense.getId() == 1L));
+        verify(journal).onDeleted(argThat(expense -> expense.getId() == 1L));
+        assertEquals(0, dataVersion.current(USER_ID));
+    }
+
+    @Test
+    void save_inTransaction_shouldMarkWriteUntilListenersRan() {
+        // Arrange
+        ExpenseChangeListener listener = mock(ExpenseChangeListener.class);
+        service = new ExpenseService(repository, aggregates, rollups, searchIndex,
+                List.of(listener), new ExpenseMetrics(registry), dataVersion);
+        when(repository.save(any(Expense.class))).thenAnswer(invocation -> {
+            Expense saved = invocation.getArgument(0);
+            saved.setId(1L);
+            return saved;
+        });
+
+        // Act
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.save(USER_ID, expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null));
+            verify(listener).writeStarted(USER_ID);
+            verify(listener, never()).onSaved(any(), any());
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+            synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert: между writeStarted и writeCompleted слушатель получил саму запись
+        InOrder order = inOrder(listener);
+        order.verify(listener).writeStarted(USER_ID);
+        order.verify(listener).onSaved(isNull(), any(Expense.class));
+        order.verify(listener).writeCompleted(USER_ID);
+    }
+
+    @Test
+    void save_existingExpense_shouldReplaceOldValues() {
+        // Arrange
+        Expense stored = expense("A", 100.0, LocalDate.now(), "Еда", null);
+        stored.setId(1L);
+        when(repository.findAll()).thenReturn(List.of(stored));
+        service.rebuild();
+
+        Expense updated = expense("A", 40.0, LocalDate.now(), "Транспорт", null);
+        updated.setId(1L);
+        when(repository.findById(1L)).thenReturn(Optional.of(stored));
+        when(repository.save(any(Expense.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        service.save(USER_ID, updated);
+
+        // Assert
+        assertEquals(40.0, service.getTotalAmount(USER_ID));
+        assertNull(service.getAnalyticsByCategory(USER_ID).get("Еда"));
+        assertEquals(40.0, service.getAnalyticsByCategory(USER_ID).get("Транспорт"));
+    }
+
+    @Test
+    void delete_shouldSubtractFromAggregates() {
+        // Arrange
+        Expense first = expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        first.setId(1L);
+        Expense second = expense("B", 30.0, LocalDate.of(2025, 12, 5), "Еда", null);
+        second.setId(2L);
+        when(repository.findAll()).thenReturn(List.of(first, second));
+        service.rebuild();
+        when(repository.findById(2L)).thenReturn(Optional.of(second));
+
+        // Act
+        service.delete(USER_ID, 2L);
+
+        // Assert
+        assertEquals(100.0, service.getTotalAmount(USER_ID));
+        assertEquals(LocalDate.of(2025, 12, 1), aggregates.getMaxDate(USER_ID));
+        verify(repository).deleteById(2L);
+        verify(rollups).remove(any(Expense.class));
+    }
+
+    @Test
+    void getPage_shouldReturnCursorWhenMoreRowsExist() {
+        // Arrange
+        ExpenseView first = new ExpenseView(3L, "A", 10.0, LocalDate.of(2025, 12, 3), "Еда", null);
+        ExpenseView second = new ExpenseView(2L, "B", 20.0, LocalDate.of(2025, 12, 2), "Еда", null);
+        ExpenseView third = new ExpenseView(1L, "C", 30.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        when(repository.findPageByCategory(eq(USER_ID), eq("Еда"), any(LocalDate.class), anyLong(),
+                any(Pageable.class)))
+                .thenReturn(List.of(first, second, third));
+
+        // Act
+        ExpensePage page = service.getPage(USER_ID, "Еда", null, null, null, 2);
+
+        // Assert
+        assertEquals(2, page.items().size());
+        assertEquals(new ExpenseCursor(LocalDate.of(2025, 12, 2), 2L), ExpenseCursor.decode(page.nextCursor()));
+    }
+
+    @Test
+    void getPage_lastPage_shouldNotReturnCursor() {
+        // Arrange
+        ExpenseCursor cursor = new ExpenseCursor(LocalDate.of(2025, 12, 2), 2L);
+        when(repository.findPage(eq(USER_ID), eq(cursor.date()), eq(cursor.id()), any(Pageable.class)))
+                .thenReturn(List.of(new ExpenseView(1L, "A", 10.0, LocalDate.of(2025, 12, 1), null, null)));
+
+        // Act
+        ExpensePage page = service.getPage(USER_ID, null, null, null, cursor.encode(), 2);
+
+        // Assert
+        assertEquals(1, page.items().size());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void search_shouldReadOnlyFoundRowsFromRepository() {
+        // Arrange
+        Expense lunch = expense("Обед в кафе", 500.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        lunch.setId(1L);
+        Expense taxi = expense("Такси", 300.0, LocalDate.of(2025, 12, 1), "Транспорт", "до кафе");
+        taxi.setId(2L);
+        searchIndex.onSaved(null, lunch);
+        searchIndex.onSaved(null, taxi);
+        ExpenseView found = new ExpenseView(1L, "Обед в кафе", 500.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        when(repository.findViewsByIdIn(USER_ID, List.of(1L))).thenReturn(List.of(found));
+
+        // Act
+        ExpensePage page = service.search(USER_ID, "каф", "Еда", null, null, null, 10);
+
+        // Assert
+        assertEquals(List.of(found), page.items());
+        assertNull(page.nextCursor());
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    void search_pageEndingOnUndatedRow_shouldReturnUsableCursor() {
+        // Arrange: у найденных расходов нет даты
+        Expense older = expense("Кофе", 200.0, null, "Еда", null);
+        older.setId(1L);
+        Expense newer = expense("Кофе с собой", 250.0, null, "Еда", null);
+        newer.setId(2L);
+        searchIndex.onSaved(null, older);
+        searchIndex.onSaved(null, newer);
+        ExpenseView newerView = new ExpenseView(2L, "Кофе с собой", 250.0, null, "Еда", null);
+        ExpenseView olderView = new ExpenseView(1L, "Кофе", 200.0, null, "Еда", null);
+        when(repository.findViewsByIdIn(USER_ID, List.of(2L, 1L))).thenReturn(List.of(newerView, olderView));
+        when(repository.findViewsByIdIn(USER_ID, List.of(1L))).thenReturn(List.of(olderView));
+
+        // Act
+        ExpensePage first = service.search(USER_ID, "кофе", null, null, null, null, 1);
+        ExpensePage second = service.search(USER_ID, "кофе", null, null, null, first.nextCursor(), 1);
+
+        // Assert
+        assertEquals(List.of(newerView), first.items());
+        assertEquals(List.of(olderView), second.items());
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void getTop_withPeriod_shouldKeepLargestRowsFromStream() {
+        // Arrange
+        LocalDate start = LocalDate.of(2025, 12, 1);
+        LocalDate end = LocalDate.of(2025, 12, 31);
+        List<ExpenseView> rows = List.of(
+                new ExpenseView(1L, "Кофе", 200.0, start, "Еда", null),
+                new ExpenseView(2L, "Ноутбук", 90000.0, start, "Техника", null),
+                new ExpenseView(3L, "Такси", 700.0, end, "Транспорт", null),
+                new ExpenseView(4L, "Обед", 700.0, end, "Еда", null),
+                new ExpenseView(5L, "Хлеб", 60.0, end, "Еда", null));
+        when(repository.streamViewsByPeriod(USER_ID, start, end)).thenReturn(rows.stream());
+
+        // Act
+        List<ExpenseView> top = service.getTop(USER_ID, null, start, end, 3);
+
+        // Assert: при равной сумме новый id первым
+        assertEquals(List.of(2L, 4L, 3L), top.stream().map(ExpenseView::id).toList());
+    }
+
+    @Test
+    void getTop_withoutPeriod_shouldLimitInDatabase() {
+        // Arrange
+        ExpenseView laptop = new ExpenseView(2L, "Ноутбук", 90000.0, LocalDate.of(2025, 12, 1), "Техника", null);
+        when(repository.findTopByCategory(eq(USER_ID), eq("Техника"), any(Pageable.class))).thenReturn(List.of(laptop));
+
+        // Act
+        List<ExpenseView> top = service.getTop(USER_ID, "Техника", null, null, 20);
+
+        // Assert
+        assertEquals(List.of(laptop), top);
+        verify(repository).findTopByCategory(USER_ID, "Техника", PageRequest.of(0, 20));
+    }
+
+    @Test
+    void analyticsFromDatabase_shouldUseAggregateQueries() {
+        // Arrange
+        service = new ExpenseService(repository, new DatabaseExpenseAnalytics(repository), rollups, searchIndex,
+                List.of(), new ExpenseMetrics(registry), dataVersion);
+        when(repository.sumByCategory(USER_ID)).thenReturn(List.of(
+                new CategoryTotal("Еда", 300.0, 2L),
+                new CategoryTotal(null, 50.0, 1L)));
+        when(repository.sumAmount(USER_ID)).thenReturn(350.0);
+        when(repository.findDateRange(USER_ID)).thenReturn(new DateRange(LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 7)));
+
+        // Act
+        Map<String, Double> analytics = service.getAnalyticsByCategory(USER_ID);
+        Double average = service.getAveragePerDay(USER_ID);
+
+        // Assert
+        assertEquals(300.0, analytics.get("Еда"));
+        assertEquals(50.0, analytics.get("Без категории"));
+        assertEquals(50.0, average, 0.001);
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    void save_otherUsersExpense_shouldThrowAndKeepIt() {
+        // Arrange
+        Expense stored = expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        stored.setId(1L);
+        stored.setUserId(2L);
+        when(repository.findById(1L)).thenReturn(Optional.of(stored));
+        Expense updated = expense("B", 1.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        updated.setId(1L);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> service.save(USER_ID, updated));
+        verify(repository, never()).save(any(Expense.class));
+    }
+
+    @Test
+    void delete_otherUsersExpense_shouldDoNothing() {
+        // Arrange
+        Expense stored = expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        stored.setId(1L);
+        stored.setUserId(2L);
+        when(repository.findById(1L)).thenReturn(Optional.of(stored));
+
+        // Act
+        service.delete(USER_ID, 1L);
+
+        // Assert
+        verify(repository, never()).deleteById(anyLong());
+        assertEquals(0, dataVersion.current(2L));
+    }
+
+    @Test
+    void rebuild_shouldKeepAggregatesPerUserAndSkipOwnerless() {
+        // Arrange
+        Expense other = expense("B", 200.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        other.setUserId(2L);
+        Expense ownerless = new Expense("C", 50.0, LocalDate.of(2025, 12, 1), "Еда", null);
+        when(repository.findAll()).thenReturn(List.of(
+                expense("A", 100.0, LocalDate.of(2025, 12, 1), "Еда", null), other, ownerless));
+
+        // Act
+        service.rebuild();
+
+        // Assert
+        assertEquals(100.0, service.getTotalAmount(USER_ID));
+        assertEquals(200.0, service.getTotalAmount(2L));
+    }
+
+    private static Expense expense(String title, Double amount, LocalDate date, String category, String comment) {
+        Expense expense = new Expense(title, amount, date, category, comment);
+        expense.setUserId(USER_ID);
+        return expense;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.expense.service;
+
+import com.example.expense.dto.AmountDistribution;
+import com.example.expense.dto.ExpenseView;
+import com.example.expense.model.Expense;
+import com.example.expense.repository.ExpenseRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ExpenseSketchesTest {
+
+    private static final long USER_ID = 1L;
+
+    private static Expense expense(Long id, String title, double amount, LocalDate date, String category) {
+        Expense expense = new Expense(title, amount, date, category, null);
+        expense.setId(id);
+        expense.setUserId(USER_ID);
+        return expense;
+    }
+
+    @Test
+    void quantileSketch_shouldStayCloseToExactQuantilesWithBoundedMemory() {
+        // Arrange: две половины в разных скетчах, потом складываем
+        Random random = new Random(42);
+        double[] amounts = new double[200_000];
+        QuantileSketch first = new QuantileSketch(200);
+        QuantileSketch second = new QuantileSketch(200);
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = Math.exp(random.nextGaussian() + 6);
+            (i % 2 == 0 ? first : second).add(amounts[i]);
+        }
+        Arrays.sort(amounts);
+
+        // Act
+        first.merge(second);
+
+        // Assert: ошибка ранга не больше 1%
+        assertEquals(amounts.length, first.count());
+        for (double q : new double[]{0.5, 0.9, 0.99}) {
+            int rank = Arrays.binarySearch(amounts, first.quantile(q));
+            assertEquals(q, (double) rank / amounts.length, 0.01, "q=" + q);
+        }
+    }
+
+    @Test
+    void distinctCounter_shouldEstimateDistinctTitles() {
+        // Arrange
+        DistinctCounter small = new DistinctCounter();
+        DistinctCounter large = new DistinctCounter();
+
+        // Act
+        for (int repeat = 0; repeat < 3; repeat++) {
+            small.add("Обед");
+            small.add("обед ");
+            small.add("Кофе");
+        }
+        for (int i = 0; i < 100_000; i++) {
+            large.add("Покупка " + i);
+        }
+
+        // Assert
+        assertEquals(2, small.estimate());
+        assertEquals(100_000, large.estimate(), 100_000 * 0.05);
+    }
+
+    @Test
+    void getByCategory_shouldMergeMonthsAndRebuildBucketAfterDelete() {
+        // Arrange
+        ExpenseRepository repository = mock(ExpenseRepository.class);
+        ExpenseSketches sketches = new ExpenseSketches(repository, 200);
+        LocalDate december = LocalDate.of(2025, 12, 5);
+        sketches.onSaved(null, expense(1L, "Обед", 100.0, december, "Еда"));
+        sketches.onSaved(null, expense(2L, "Ужин", 300.0, december, "Еда"));
+        sketches.onSaved(null, expense(3L, "Обед", 200.0, LocalDate.of(2026, 1, 10), "Еда"));
+        sketches.onSaved(null, expense(4L, "Такси", 50.0, december, null));
+        when(repository.findViewsByCategoryAndPeriod(USER_ID, "Еда", LocalDate.of(2025, 12, 1),
+                LocalDate.of(2025, 12, 31)))
+                .thenReturn(List.of(new ExpenseView(1L, "Обед", 100.0, december, "Еда", null)));
+
+        // Act
+        sketches.onDeleted(expense(2L, "Ужин", 300.0, december, "Еда"));
+        Map<String, AmountDistribution> byCategory = sketches.getByCategory(USER_ID, null, null);
+        Map<String, AmountDistribution> byMonth = sketches.getByMonth(USER_ID, "Еда");
+
+        // Assert
+        assertEquals(new AmountDistribution(2, 100.0, 200.0, 200.0, 1), byCategory.get("Еда"));
+        assertEquals(1, byCategory.get(ExpenseAggregates.NO_CATEGORY).count());
+        assertEquals(List.of("2025-12", "2026-01"), List.copyOf(byMonth.keySet()));
+        assertEquals(1, sketches.getByCategory(USER_ID, LocalDate.of(2026, 1, 31), null).get("Еда").count());
+        verify(repository, times(1)).findViewsByCategoryAndPeriod(anyLong(), any(), any(), any());
+        assertEquals(Map.of(), sketches.getByCategory(2L, null, null));
+    }
+
+    @Test
+    void getByCategory_whileWriteBetweenCommitAndListener_shouldNotCountItTwice() {
+        // Arrange: пара устарела; новая строка уже закоммичена, а onSaved для нее еще не пришел
+        ExpenseRepository repository = mock(ExpenseRepository.class);
+        ExpenseSketches sketches = new ExpenseSketches(repository, 200);
+        LocalDate december = LocalDate.of(2025, 12, 5);
+        sketches.onSaved(null, expense(1L, "Обед", 100.0, december, "Еда"));
+        sketches.onSaved(null, expense(2L, "Ужин", 300.0, december, "Еда"));
+        sketches.onDeleted(expense(2L, "Ужин", 300.0, december, "Еда"));
+        sketches.writeStarted(USER_ID);
+        when(repository.findViewsByCategoryAndPeriod(USER_ID, "Еда", LocalDate.of(2025, 12, 1),
+                LocalDate.of(2025, 12, 31)))
+                .thenReturn(List.of(new ExpenseView(1L, "Обед", 100.0, december, "Еда", null),
+                        new ExpenseView(3L, "Кофе", 150.0, december, "Еда", null)));
+
+        // Act
+        sketches.getByCategory(USER_ID, null, null);
+        sketches.onSaved(null, expense(3L, "Кофе", 150.0, december, "Еда"));
+        sketches.writeCompleted(USER_ID);
+        Map<String, AmountDistribution> byCategory = sketches.getByCategory(USER_ID, null, null);
+
+        // Assert: пересчет прошел только после onSaved, строка учтена один раз
+        assertEquals(2, byCategory.get("Еда").count());
+        verify(repository, times(1)).findViewsByCategoryAndPeriod(anyLong(), any(), any(), any());
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.expense.service;
+
+import com.example.expense.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStoreTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private SessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new SessionStore(Duration.ofHours(12), Duration.ofMinutes(30), 2, 2, now::get);
+    }
+
+    private static User user(long id, String username) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        return user;
+    }
+
+    @Test
+    void resolve_shouldReturnSessionForToken() {
+        // Arrange
+        String anna = store.create(user(1L, "anna"));
+        String boris = store.create(user(2L, "boris"));
+
+        // Act
+        Optional<SessionStore.Session> session = store.resolve(SessionStore.bearer("Bearer " + boris));
+
+        // Assert
+        assertNotEquals(anna, boris);
+        assertTrue(session.isPresent());
+        assertEquals(Long.valueOf(2L), session.get().getUserId());
+        assertEquals("boris", session.get().getUsername());
+        assertTrue(store.resolve("unknown").isEmpty());
+        assertTrue(store.resolve(SessionStore.bearer(null)).isEmpty());
+    }
+
+    @Test
+    void resolve_shouldExpireIdleSessionButKeepActiveOne() {
+        // Arrange
+        String active = store.create(user(1L, "anna"));
+        String idle = store.create(user(2L, "boris"));
+
+        // Act
+        now.addAndGet(Duration.ofMinutes(20).toMillis());
+        store.resolve(active);
+        now.addAndGet(Duration.ofMinutes(20).toMillis());
+
+        // Assert
+        assertTrue(store.resolve(active).isPresent());
+        assertTrue(store.resolve(idle).isEmpty());
+    }
+
+    @Test
+    void sweep_shouldRemoveExpiredSessionsAndFreeCapacity() {
+        // Arrange
+        store.create(user(1L, "anna"));
+        store.create(user(2L, "boris"));
+        assertThrows(IllegalStateException.class, () -> store.create(user(3L, "vera")));
+
+        // Act
+        now.addAndGet(Duration.ofHours(1).toMillis());
+        store.sweep();
+
+        // Assert
+        assertEquals(0, store.size());
+        assertNotNull(store.create(user(3L, "vera")));
+    }
+
+    @Test
+    void create_overPerUserLimit_shouldEvictOwnOldestSession() {
+        // Arrange
+        store = new SessionStore(Duration.ofHours(12), Duration.ofMinutes(30), 10, 2, now::get);
+        String first = store.create(user(1L, "anna"));
+        String second = store.create(user(1L, "anna"));
+        String other = store.create(user(2L, "boris"));
+
+        // Act
+        String third = store.create(user(1L, "anna"));
+
+        // Assert
+        assertTrue(store.resolve(first).isEmpty());
+        assertTrue(store.resolve(second).isPresent());
+        assertTrue(store.resolve(third).isPresent());
+        assertTrue(store.resolve(other).isPresent());
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void create_whenFull_shouldDropOwnExpiredSessionsFirst() {
+        // Arrange
+        store.create(user(1L, "anna"));
+        now.addAndGet(Duration.ofMinutes(20).toMillis());
+        String active = store.create(user(2L, "boris"));
+        now.addAndGet(Duration.ofMinutes(15).toMillis());
+
+        // Act
+        String token = store.create(user(1L, "anna"));
+
+        // Assert
+        assertNotNull(token);
+        assertTrue(store.resolve(active).isPresent());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void create_whenFullOfOthersExpiredSessions_shouldWaitForSweep() {
+        // Arrange: чужие истекшие сессии вход не перебирает
+        store.create(user(1L, "anna"));
+        store.create(user(2L, "boris"));
+        now.addAndGet(Duration.ofHours(1).toMillis());
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> store.create(user(3L, "vera")));
+        store.sweep();
+        assertNotNull(store.create(user(3L, "vera")));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void create_concurrently_shouldNotExceedCapacity() throws Exception {
+        // Arrange
+        store = new SessionStore(Duration.ofHours(12), Duration.ofMinutes(30), 5, 2, now::get);
+        AtomicInteger rejected = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            long userId = id;
+            threads.add(new Thread(() -> {
+                try {
+                    store.create(user(userId, "user" + userId));
+                } catch (IllegalStateException e) {
+                    rejected.incrementAndGet();
+                }
+            }));
+        }
+
+        // Act
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        assertEquals(5, store.size());
+        assertEquals(15, rejected.get());
+    }
+
+    @Test
+    void invalidate_shouldLogOut() {
+        // Arrange
+        String token = store.create(user(1L, "anna"));
+
+        // Act
+        store.invalidate(token);
+
+        // Assert
+        assertTrue(store.resolve(token).isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.expense.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    private WriteAheadLog open(int segmentSize) {
+        return new WriteAheadLog(dir, segmentSize, FsyncPolicy.PER_WRITE, Duration.ofMillis(1));
+    }
+
+    private List<String> replay(WriteAheadLog wal, long afterSeq) throws IOException {
+        List<String> records = new ArrayList<>();
+        wal.recover(afterSeq, (seq, payload) -> {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            records.add(seq + ":" + new String(bytes, StandardCharsets.UTF_8));
+        });
+        return records;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    @Test
+    void recover_shouldReplayRecordsAfterGivenSeq() throws IOException {
+        // Arrange
+        WriteAheadLog wal = open(1 << 16);
+        replay(wal, 0);
+        for (String value : List.of("a", "b", "c")) {
+            wal.commit(wal.append(value.getBytes(StandardCharsets.UTF_8)));
+        }
+        wal.close();
+
+        // Act
+        WriteAheadLog reopened = open(1 << 16);
+        List<String> tail = replay(reopened, 1);
+
+        // Assert
+        assertEquals(List.of("2:b", "3:c"), tail);
+        assertEquals(3, reopened.lastSeq());
+        assertEquals(4, reopened.append("d".getBytes(StandardCharsets.UTF_8)));
+        reopened.close();
+    }
+
+    @Test
+    void recover_shouldStopAtTornRecord() throws IOException {
+        // Arrange
+        WriteAheadLog wal = open(1 << 16);
+        replay(wal, 0);
+        wal.append("first".getBytes(StandardCharsets.UTF_8));
+        wal.append("second".getBytes(StandardCharsets.UTF_8));
+        wal.close();
+        // портим payload второй записи: заголовок 16 байт + "first"
+        try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), 16 + 5 + 16);
+        }
+
+        // Act
+        WriteAheadLog reopened = open(1 << 16);
+        List<String> records = replay(reopened, 0);
+        reopened.append("again".getBytes(StandardCharsets.UTF_8));
+        reopened.close();
+
+        // Assert
+        assertEquals(List.of("1:first"), records);
+        assertEquals(List.of("1:first", "2:again"), replay(open(1 << 16), 0));
+    }
+
+    @Test
+    void appendAfterClose_shouldBeRejected() throws IOException {
+        // Arrange: в режиме GROUP фоновый fsync после close уже не работает
+        WriteAheadLog wal = new WriteAheadLog(dir, 1 << 16, FsyncPolicy.GROUP, Duration.ofMillis(1));
+        wal.recover(0, (seq, payload) -> {
+        });
+        long seq = wal.append("a".getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        wal.close();
+
+        // Assert: то, что успели записать, устойчиво; новые записи не принимаются, а не зависают
+        assertDoesNotThrow(() -> wal.commit(seq));
+        assertThrows(IllegalStateException.class, () -> wal.append("b".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void deleteUpTo_shouldRemoveOnlyFullyCoveredSegments() throws IOException {
+        // Arrange: в сегмент помещаются две записи по 8 байт
+        WriteAheadLog wal = open(2 * (16 + 8));
+        replay(wal, 0);
+        for (int i = 1; i <= 5; i++) {
+            wal.append(String.format("record-%d", i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Act
+        wal.deleteUpTo(3);
+        wal.close();
+
+        // Assert: сегмент 1-2 удален, сегмент 3-4 нужен для записи 4
+        assertEquals(2, segments().size());
+        assertEquals(List.of("4:record-4", "5:record-5"), replay(open(2 * (16 + 8)), 3));
+    }
+}